@@ -0,0 +1,78 @@
+package todo;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * CategoryRegistry interns category names and numbers them, shared by every task
+ * A task keeps the id of its category instead of its own copy of the name, so
+ * a million tasks in ten categories hold ten strings between them
+ *
+ * Each spelling gets its own id, and every id also has a key: the id of its
+ * lower-cased spelling. Indexes and counters group by key to ignore case with
+ * integer comparisons. Id 0 is the null category, which is its own key, so
+ * tasks without a category are kept apart from those in "".
+ * Names are never unregistered, there are only ever a handful of categories.
+ */
+public final class CategoryRegistry {
+    private static final ConcurrentHashMap<String, Integer> ids = new ConcurrentHashMap<>();
+    // Replaced on growth and published before the id is, so a reader holding an id can always look it up
+    private static volatile String[] names = new String[16];
+    private static volatile int[] keys = new int[16];
+    private static int count = 1;
+    
+    private CategoryRegistry() {
+    }
+    
+    // The id of a category name, registering it the first time it is seen
+    public static int idOf(String name) {
+        if (name == null) {
+            return 0;
+        }
+        Integer id = ids.get(name);
+        return id != null ? id : register(name);
+    }
+    
+    public static String nameOf(int id) {
+        return names[id];
+    }
+    
+    // The case-insensitive key of a category id
+    public static int keyOf(int id) {
+        return keys[id];
+    }
+    
+    // The case-insensitive key of a category name, or -1 if no spelling of it was ever registered
+    public static int find(String name) {
+        if (name == null) {
+            return keys[0];
+        }
+        Integer id = ids.get(name);
+        if (id == null) {
+            id = ids.get(name.toLowerCase(Locale.ROOT));
+        }
+        return id != null ? keys[id] : -1;
+    }
+    
+    private static synchronized int register(String name) {
+        Integer existing = ids.get(name);
+        if (existing != null) {
+            return existing;
+        }
+        String folded = name.toLowerCase(Locale.ROOT);
+        int key = folded.equals(name) ? count : idOf(folded);
+        int id = count++;
+        String[] newNames = names;
+        int[] newKeys = keys;
+        if (id == newNames.length) {
+            newNames = Arrays.copyOf(newNames, id * 2);
+            newKeys = Arrays.copyOf(newKeys, id * 2);
+        }
+        newNames[id] = name;
+        newKeys[id] = key;
+        keys = newKeys;
+        names = newNames;
+        ids.put(name, id);
+        return id;
+    }
+}
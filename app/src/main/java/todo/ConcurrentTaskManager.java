@@ -0,0 +1,574 @@
+package todo;
+
+import java.io.*;
+import java.time.LocalDate;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * ConcurrentTaskManager is a TaskManager that can be shared between threads
+ * Changes are serialized by the write side of a StampedLock, lookups share the
+ * read side, and the running counts and point lookups are read optimistically
+ * without locking
+ *
+ * Changed tasks are replaced rather than modified, so a Task or list handed
+ * to a reader is a consistent snapshot that later changes never touch. Tasks
+ * are decoded and indexed in the background, a batch per hold of the write
+ * lock, so opening a large file stays as quick as for a TaskManager. A point
+ * lookup that gets ahead of it decodes just its own task; only a read that
+ * needs every task or the indexes finishes the rest itself.
+ *
+ * Queries and exports run over a copy of the task list taken under the read
+ * lock and shared until the next change, so long scans and slow clients
+ * never keep changes waiting.
+ */
+public class ConcurrentTaskManager extends TaskManager {
+    // Tasks decoded and indexed per hold of the write lock by the background preparation
+    private static final int PREPARE_BATCH = 1024;
+    
+    private final StampedLock lock = new StampedLock();
+    // Set once every task is decoded and indexed, checked before taking a shared read lock
+    private volatile boolean shared;
+    private final Thread preparer;
+    private volatile boolean closing;
+    // Copy of the tasks that queries and exports read outside the lock, dropped by every change
+    private volatile List<Task> frozen;
+    
+    public ConcurrentTaskManager() {
+        this("tasks.dat");
+    }
+    
+    public ConcurrentTaskManager(String dataFile) {
+        this(dataFile, 50, 1000);
+    }
+    
+    public ConcurrentTaskManager(String dataFile, long flushDelayMillis, int maxBatchSize) {
+        super(dataFile, flushDelayMillis, maxBatchSize);
+        long stamp = lock.writeLock();
+        try {
+            replaceOnChange();
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+        preparer = new Thread(new Runnable() {
+            public void run() {
+                prepare();
+            }
+        }, "ConcurrentTaskManager-prepare");
+        preparer.setDaemon(true);
+        preparer.start();
+    }
+    
+    // Decode and index every task a batch at a time, letting changes and reads in between batches
+    private void prepare() {
+        while (!shared && !closing) {
+            long stamp = lock.writeLock();
+            try {
+                if (prepareStep(PREPARE_BATCH)) {
+                    shared = true;
+                }
+            } finally {
+                unlockChange(stamp);
+            }
+            // Give waiting changes and reads their turn before the next batch
+            Thread.yield();
+        }
+    }
+    
+    // The shorter addTask calls this one, so it is locked once
+    @Override
+    public Task addTask(String title, String description, String priority, String dueDate, String category,
+                        boolean completed) {
+        long stamp = changeLock();
+        try {
+            return super.addTask(title, description, priority, dueDate, category, completed);
+        } finally {
+            unlockChange(stamp);
+        }
+    }
+    
+    // Imports are parsed and validated outside the lock, only adding each chunk is locked
+    @Override
+    void addAll(List<Task> drafts) {
+        long stamp = changeLock();
+        try {
+            super.addAll(drafts);
+        } finally {
+            unlockChange(stamp);
+        }
+    }
+    
+    @Override
+    void recordImport(List<Task> added) {
+        long stamp = lock.writeLock();
+        try {
+            super.recordImport(added);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+    
+    @Override
+    public boolean removeTask(int id) {
+        long stamp = changeLock();
+        try {
+            return super.removeTask(id);
+        } finally {
+            unlockChange(stamp);
+        }
+    }
+    
+    @Override
+    public boolean toggleTaskCompletion(int id) {
+        long stamp = changeLock();
+        try {
+            return super.toggleTaskCompletion(id);
+        } finally {
+            unlockChange(stamp);
+        }
+    }
+    
+    @Override
+    public boolean updateTask(int id, String title, String description, String priority, String dueDate, String category) {
+        long stamp = changeLock();
+        try {
+            return super.updateTask(id, title, description, priority, dueDate, category);
+        } finally {
+            unlockChange(stamp);
+        }
+    }
+    
+    @Override
+    public void clearAllTasks() {
+        long stamp = changeLock();
+        try {
+            super.clearAllTasks();
+        } finally {
+            unlockChange(stamp);
+        }
+    }
+    
+    @Override
+    public boolean undo() {
+        long stamp = changeLock();
+        try {
+            return super.undo();
+        } finally {
+            unlockChange(stamp);
+        }
+    }
+    
+    @Override
+    public boolean redo() {
+        long stamp = changeLock();
+        try {
+            return super.redo();
+        } finally {
+            unlockChange(stamp);
+        }
+    }
+    
+    @Override
+    public boolean canUndo() {
+        long stamp = lock.readLock();
+        try {
+            return super.canUndo();
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+    
+    @Override
+    public boolean canRedo() {
+        long stamp = lock.readLock();
+        try {
+            return super.canRedo();
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+    
+    @Override
+    public ArrayList<Task> getAllTasks() {
+        long stamp = sharedReadLock();
+        try {
+            return super.getAllTasks();
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+    
+    // Pages in id order are read by position, the others scan the tasks or an index bucket
+    @Override
+    public TaskPage getPage(TaskSort sort, TaskFilter filter, String cursor, int pageSize) {
+        long stamp = sharedReadLock();
+        try {
+            return super.getPage(sort, filter, cursor, pageSize);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+    
+    @Override
+    public ArrayList<Task> getTasksByStatus(boolean completed) {
+        long stamp = sharedReadLock();
+        try {
+            return super.getTasksByStatus(completed);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+    
+    @Override
+    public ArrayList<Task> getTasksByCategory(String category) {
+        long stamp = sharedReadLock();
+        try {
+            return super.getTasksByCategory(category);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+    
+    @Override
+    public ArrayList<Task> getTasksByPriority(String priority) {
+        long stamp = sharedReadLock();
+        try {
+            return super.getTasksByPriority(priority);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+    
+    @Override
+    public ArrayList<Task> getOverdueTasks() {
+        long stamp = sharedReadLock();
+        try {
+            return super.getOverdueTasks();
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+    
+    @Override
+    public ArrayList<Task> getTasksDueToday() {
+        long stamp = sharedReadLock();
+        try {
+            return super.getTasksDueToday();
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+    
+    @Override
+    public ArrayList<Task> getTasksDueWithin(int days) {
+        long stamp = sharedReadLock();
+        try {
+            return super.getTasksDueWithin(days);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+    
+    @Override
+    public ArrayList<Task> getTasksDueBetween(LocalDate from, LocalDate to) {
+        long stamp = sharedReadLock();
+        try {
+            return super.getTasksDueBetween(from, to);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+    
+    @Override
+    public ArrayList<Task> searchTasks(String searchTerm) {
+        long stamp = sharedReadLock();
+        try {
+            return super.searchTasks(searchTerm);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+    
+    // Point lookups read without locking, and lock only if a change raced them or their task is still to be decoded
+    @Override
+    public Task getTaskById(int id) {
+        long stamp = lock.tryOptimisticRead();
+        try {
+            Task task = peekTaskById(id);
+            boolean present = task != null || hasTask(id);
+            if (lock.validate(stamp) && (task != null || !present)) {
+                return task;
+            }
+        } catch (RuntimeException e) {
+            // Read halfway through a change, locking below sorts it out
+        }
+        stamp = lock.readLock();
+        try {
+            Task task = peekTaskById(id);
+            if (task != null || !hasTask(id)) {
+                return task;
+            }
+        } finally {
+            lock.unlockRead(stamp);
+        }
+        stamp = lock.writeLock();
+        try {
+            return super.getTaskById(id);
+        } finally {
+            unlockChange(stamp);
+        }
+    }
+    
+    @Override
+    public void setArchivePolicy(TaskArchive.Policy policy) {
+        long stamp = lock.writeLock();
+        try {
+            super.setArchivePolicy(policy);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+    
+    @Override
+    public TaskArchive.Policy getArchivePolicy() {
+        long stamp = lock.readLock();
+        try {
+            return super.getArchivePolicy();
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+    
+    @Override
+    public int archiveCompleted() {
+        long stamp = changeLock();
+        try {
+            return super.archiveCompleted();
+        } finally {
+            unlockChange(stamp);
+        }
+    }
+    
+    // The archive guards itself, only the check against the live set needs the lock
+    @Override
+    ArrayList<Task> withoutLive(ArrayList<Task> archived) {
+        long stamp = lock.readLock();
+        try {
+            return super.withoutLive(archived);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+    
+    @Override
+    public Task getTaskAt(int index) {
+        long stamp = lock.tryOptimisticRead();
+        try {
+            Task task = peekTaskAt(index);
+            if (lock.validate(stamp) && task != null) {
+                return task;
+            }
+        } catch (RuntimeException e) {
+            // Read halfway through a change, or past the end, locking below sorts it out
+        }
+        stamp = lock.readLock();
+        try {
+            Task task = peekTaskAt(index);
+            if (task != null) {
+                return task;
+            }
+        } finally {
+            lock.unlockRead(stamp);
+        }
+        stamp = lock.writeLock();
+        try {
+            return super.getTaskAt(index);
+        } finally {
+            unlockChange(stamp);
+        }
+    }
+    
+    // Positions come from the store's slot map and rank tree, nothing needs decoding
+    @Override
+    public int indexOfTask(int id) {
+        long stamp = lock.tryOptimisticRead();
+        try {
+            int position = super.indexOfTask(id);
+            if (lock.validate(stamp)) {
+                return position;
+            }
+        } catch (RuntimeException e) {
+            // Read halfway through a change, locking below sorts it out
+        }
+        stamp = lock.readLock();
+        try {
+            return super.indexOfTask(id);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+    
+    @Override
+    public Map<String, Integer> getTaskStatistics() {
+        long stamp = lock.readLock();
+        try {
+            return super.getTaskStatistics();
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+    
+    @Override
+    public TaskStatistics getStatistics(TaskStatistics into) {
+        long stamp = lock.readLock();
+        try {
+            return super.getStatistics(into);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+    
+    @Override
+    public Set<String> getCategories() {
+        long stamp = sharedReadLock();
+        try {
+            return super.getCategories();
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+    
+    // The counts are plain fields, so read them without locking and retry only if a change raced
+    @Override
+    public int getTotalCount() {
+        long stamp = lock.tryOptimisticRead();
+        int count = super.getTotalCount();
+        if (!lock.validate(stamp)) {
+            stamp = lock.readLock();
+            try {
+                count = super.getTotalCount();
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+        return count;
+    }
+    
+    @Override
+    public int getCompletedCount() {
+        long stamp = lock.tryOptimisticRead();
+        int count = super.getCompletedCount();
+        if (!lock.validate(stamp)) {
+            stamp = lock.readLock();
+            try {
+                count = super.getCompletedCount();
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+        return count;
+    }
+    
+    @Override
+    public int getPendingCount() {
+        long stamp = lock.tryOptimisticRead();
+        int count = super.getPendingCount();
+        if (!lock.validate(stamp)) {
+            stamp = lock.readLock();
+            try {
+                count = super.getPendingCount();
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+        return count;
+    }
+    
+    @Override
+    public CompletableFuture<Void> flush() {
+        long stamp = lock.readLock();
+        try {
+            return super.flush();
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+    
+    @Override
+    public void close() {
+        closing = true;
+        long stamp = lock.writeLock();
+        try {
+            super.close();
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+    
+    // Queries scan the frozen copy on pool threads without holding the lock
+    @Override
+    List<Task> queryView() {
+        return frozenTasks();
+    }
+    
+    // Exports stream the frozen copy, so a slow client never holds up writers
+    @Override
+    Iterator<Task> exportView() {
+        return frozenTasks().iterator();
+    }
+    
+    // The tasks as of the last change, copied under the read lock by the first reader after it
+    private List<Task> frozenTasks() {
+        List<Task> view = frozen;
+        if (view != null) {
+            return view;
+        }
+        long stamp = sharedReadLock();
+        try {
+            view = frozen;
+            if (view == null) {
+                // Published before unlocking, so a change that follows always drops it
+                view = Collections.unmodifiableList(copyOfTasks());
+                frozen = view;
+            }
+            return view;
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+    
+    // The write lock for a change, which also drops the frozen copy
+    private long changeLock() {
+        long stamp = lock.writeLock();
+        frozen = null;
+        return stamp;
+    }
+    
+    // A read lock for reads that need every task decoded or the indexes built, the first of which
+    // finishes whatever the background preparation hasn't done yet
+    private long sharedReadLock() {
+        if (!shared) {
+            long stamp = lock.writeLock();
+            try {
+                if (!shared) {
+                    prepareForSharedReads();
+                    shared = true;
+                }
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+        }
+        return lock.readLock();
+    }
+    
+    // Release the write lock of a change, first taking any tasks it found lost to damage out of the counts,
+    // so the counts never have to be fixed up under a read lock
+    private void unlockChange(long stamp) {
+        try {
+            settleLoss();
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+}
@@ -1,7 +1,9 @@
+package todo;
+
 import javax.swing.*;
 import java.awt.*;
 import java.awt.event.*;
-import java.util.ArrayList;
+import java.io.UncheckedIOException;
 
 /**
  * Enhanced ToDo GUI Application
@@ -9,6 +11,7 @@ import java.util.ArrayList;
  * Integrates with TaskManager for robust task management
  */
 public class EnhancedTodoGUI extends JFrame {
+    private static final long serialVersionUID = 1L;
     
     // GUI Components
     private JTextField taskTitleField;
@@ -19,17 +22,45 @@ public class EnhancedTodoGUI extends JFrame {
     private JButton addButton;
     private JButton deleteButton;
     private JButton toggleButton;
+    private JButton undoButton;
+    private JButton redoButton;
     private JList<String> taskList;
-    private DefaultListModel<String> listModel;
+    private TaskListModel listModel;
+    private TaskSearchPanel searchPanel;
     private JLabel countLabel;
     
     // Task management
     private TaskManager taskManager;
+    private final TaskStatistics stats = new TaskStatistics();
     
     public EnhancedTodoGUI() {
-        taskManager = new TaskManager();
+        // Shared with the search panel's background thread
+        taskManager = new ConcurrentTaskManager();
+        taskManager.getMetrics().expose("tasks.dat");
+        // Time every event the EDT handles, so stalls show up in the metrics
+        Toolkit.getDefaultToolkit().getSystemEventQueue().push(new TimedEventQueue(taskManager.getMetrics()));
         setupGUI();
-        refreshTaskList();
+    }
+    
+    /**
+     * Event queue that times how long each event keeps the EDT busy
+     */
+    private static class TimedEventQueue extends EventQueue {
+        private final TaskMetrics metrics;
+        
+        TimedEventQueue(TaskMetrics metrics) {
+            this.metrics = metrics;
+        }
+        
+        @Override
+        protected void dispatchEvent(AWTEvent event) {
+            long start = System.nanoTime();
+            try {
+                super.dispatchEvent(event);
+            } finally {
+                metrics.recordEdtDispatch(event.getClass().getSimpleName(), start);
+            }
+        }
     }
     
     private void setupGUI() {
@@ -91,10 +122,22 @@ public class EnhancedTodoGUI extends JFrame {
         inputPanel.add(addButton, gbc);
         
         // Center panel for task list
-        listModel = new DefaultListModel<>();
+        listModel = new TaskListModel(taskManager);
         taskList = new JList<>(listModel);
         taskList.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
         taskList.setFont(new Font("SansSerif", Font.PLAIN, 12));
+        // Size cells from a prototype so the list never measures every row
+        taskList.setPrototypeCellValue("✓ 🔴 A reasonably long task title - General");
+        
+        // Search panel under the input panel, narrowing the list as the user types
+        searchPanel = new TaskSearchPanel(taskManager, listModel, new Runnable() {
+            public void run() {
+                updateCount();
+            }
+        });
+        JPanel topPanel = new JPanel(new BorderLayout());
+        topPanel.add(inputPanel, BorderLayout.NORTH);
+        topPanel.add(searchPanel, BorderLayout.SOUTH);
         
         JScrollPane scrollPane = new JScrollPane(taskList);
         scrollPane.setBorder(BorderFactory.createTitledBorder("Tasks"));
@@ -106,15 +149,19 @@ public class EnhancedTodoGUI extends JFrame {
         
         deleteButton = new JButton("Delete Selected");
         toggleButton = new JButton("Toggle Complete");
+        undoButton = new JButton("Undo");
+        redoButton = new JButton("Redo");
         countLabel = new JLabel("Tasks: 0");
         
         bottomPanel.add(deleteButton);
         bottomPanel.add(toggleButton);
+        bottomPanel.add(undoButton);
+        bottomPanel.add(redoButton);
         bottomPanel.add(Box.createHorizontalStrut(20));
         bottomPanel.add(countLabel);
         
         // Add panels to frame
-        add(inputPanel, BorderLayout.NORTH);
+        add(topPanel, BorderLayout.NORTH);
         add(scrollPane, BorderLayout.CENTER);
         add(bottomPanel, BorderLayout.SOUTH);
         
@@ -137,6 +184,26 @@ public class EnhancedTodoGUI extends JFrame {
             }
         });
         
+        Action undoAction = new AbstractAction("Undo") {
+            public void actionPerformed(ActionEvent e) {
+                undo();
+            }
+        };
+        Action redoAction = new AbstractAction("Redo") {
+            public void actionPerformed(ActionEvent e) {
+                redo();
+            }
+        };
+        undoButton.addActionListener(undoAction);
+        redoButton.addActionListener(redoAction);
+        
+        // Ctrl+Z and Ctrl+Y undo and redo from anywhere in the window
+        JRootPane rootPane = getRootPane();
+        rootPane.getInputMap(JComponent.WHEN_IN_FOCUSED_WINDOW).put(KeyStroke.getKeyStroke(KeyEvent.VK_Z, InputEvent.CTRL_DOWN_MASK), "undo");
+        rootPane.getInputMap(JComponent.WHEN_IN_FOCUSED_WINDOW).put(KeyStroke.getKeyStroke(KeyEvent.VK_Y, InputEvent.CTRL_DOWN_MASK), "redo");
+        rootPane.getActionMap().put("undo", undoAction);
+        rootPane.getActionMap().put("redo", redoAction);
+        
         // Allow Enter key to add task
         taskTitleField.addKeyListener(new KeyAdapter() {
             public void keyPressed(KeyEvent e) {
@@ -146,6 +213,14 @@ public class EnhancedTodoGUI extends JFrame {
             }
         });
         
+        // Write out pending changes before the application exits
+        addWindowListener(new WindowAdapter() {
+            public void windowClosing(WindowEvent e) {
+                searchPanel.shutdown();
+                taskManager.close();
+            }
+        });
+        
         // Clear placeholder text on focus
         dueDateField.addFocusListener(new FocusAdapter() {
             public void focusGained(FocusEvent e) {
@@ -160,6 +235,12 @@ public class EnhancedTodoGUI extends JFrame {
             }
         });
         
+        // Keep the counts and buttons current however the tasks change
+        taskManager.addTaskChangeListener(new TaskChangeListener() {
+            public void taskChanged(TaskChangeEvent event) {
+                updateCount();
+            }
+        }, TaskListModel.ON_EDT, true);
         updateCount();
     }
     
@@ -182,14 +263,14 @@ public class EnhancedTodoGUI extends JFrame {
         }
         
         if (dueDate.equals("YYYY-MM-DD") || dueDate.isEmpty()) {
-            dueDate = "No due date";
+            dueDate = Task.NO_DUE_DATE;
         }
         
         if (category.isEmpty()) {
             category = "General";
         }
         
-        // Add task using TaskManager
+        // Add task using TaskManager; the list and count follow its change events
         taskManager.addTask(title, description, priority, dueDate, category);
         
         // Clear fields
@@ -199,8 +280,6 @@ public class EnhancedTodoGUI extends JFrame {
         dueDateField.setText("YYYY-MM-DD");
         categoryField.setText("General");
         
-        // Refresh display
-        refreshTaskList();
         taskTitleField.requestFocus();
         
         JOptionPane.showMessageDialog(this, "Task added successfully!");
@@ -214,14 +293,16 @@ public class EnhancedTodoGUI extends JFrame {
             return;
         }
         
-        // Get all tasks and find the selected one
-        ArrayList<Task> tasks = taskManager.getAllTasks();
-        if (selectedIndex >= tasks.size()) {
+        if (selectedIndex >= listModel.getSize()) {
             JOptionPane.showMessageDialog(this, "Invalid task selection!");
             return;
         }
         
-        Task selectedTask = tasks.get(selectedIndex);
+        Task selectedTask = listModel.getTaskAt(selectedIndex);
+        if (selectedTask == null) {
+            JOptionPane.showMessageDialog(this, "Invalid task selection!");
+            return;
+        }
         
         int confirm = JOptionPane.showConfirmDialog(this, 
             "Delete task: " + selectedTask.getTitle() + "?", 
@@ -230,7 +311,6 @@ public class EnhancedTodoGUI extends JFrame {
         
         if (confirm == JOptionPane.YES_OPTION) {
             taskManager.removeTask(selectedTask.getId());
-            refreshTaskList();
             JOptionPane.showMessageDialog(this, "Task deleted successfully!");
         }
     }
@@ -243,61 +323,68 @@ public class EnhancedTodoGUI extends JFrame {
             return;
         }
         
-        // Get all tasks and find the selected one
-        ArrayList<Task> tasks = taskManager.getAllTasks();
-        if (selectedIndex >= tasks.size()) {
+        if (selectedIndex >= listModel.getSize()) {
             JOptionPane.showMessageDialog(this, "Invalid task selection!");
             return;
         }
         
-        Task selectedTask = tasks.get(selectedIndex);
+        Task selectedTask = listModel.getTaskAt(selectedIndex);
+        if (selectedTask == null) {
+            JOptionPane.showMessageDialog(this, "Invalid task selection!");
+            return;
+        }
         taskManager.toggleTaskCompletion(selectedTask.getId());
-        refreshTaskList();
         
-        String status = selectedTask.isCompleted() ? "completed" : "pending";
+        // Changed tasks are replaced, so read the toggled one back
+        Task toggled = taskManager.getTaskById(selectedTask.getId());
+        String status = toggled != null && toggled.isCompleted() ? "completed" : "pending";
         JOptionPane.showMessageDialog(this, "Task marked as " + status + "!");
     }
     
-    private void refreshTaskList() {
-        listModel.clear();
-        ArrayList<Task> tasks = taskManager.getAllTasks();
-        
-        for (Task task : tasks) {
-            listModel.addElement(task.getDisplayText());
-        }
-        
-        updateCount();
+    private void undo() {
+        taskManager.undo();
+    }
+    
+    private void redo() {
+        taskManager.redo();
     }
     
     private void updateCount() {
-        ArrayList<Task> tasks = taskManager.getAllTasks();
-        int total = tasks.size();
-        int completed = 0;
-        
-        for (Task task : tasks) {
-            if (task.isCompleted()) {
-                completed++;
-            }
+        taskManager.getStatistics(stats);
+        int total = stats.getTotal();
+        int completed = stats.getCompleted();
+        
+        String text = String.format("Tasks: %d (Completed: %d, Pending: %d)", 
+                                    total, completed, total - completed);
+        if (listModel.isFiltered()) {
+            text += String.format(" - Showing: %d", listModel.getSize());
         }
+        countLabel.setText(text);
         
-        countLabel.setText(String.format("Tasks: %d (Completed: %d, Pending: %d)", 
-                                        total, completed, total - completed));
-        
-        deleteButton.setEnabled(total > 0);
-        toggleButton.setEnabled(total > 0);
+        deleteButton.setEnabled(listModel.getSize() > 0);
+        toggleButton.setEnabled(listModel.getSize() > 0);
+        undoButton.setEnabled(taskManager.canUndo());
+        redoButton.setEnabled(taskManager.canRedo());
     }
     
     public static void main(String[] args) {
         // Set look and feel
         try {
-            UIManager.setLookAndFeel(UIManager.getSystemLookAndFeel());
+            UIManager.setLookAndFeel(UIManager.getSystemLookAndFeelClassName());
         } catch (Exception e) {
             // Use default look and feel
         }
         
         SwingUtilities.invokeLater(new Runnable() {
             public void run() {
-                new EnhancedTodoGUI().setVisible(true);
+                try {
+                    new EnhancedTodoGUI().setVisible(true);
+                } catch (UncheckedIOException e) {
+                    // The task file is there but unreadable, leave it alone for the user to look at
+                    JOptionPane.showMessageDialog(null, e.getMessage() + ": " + e.getCause().getMessage(),
+                                                  "Todo List", JOptionPane.ERROR_MESSAGE);
+                    System.exit(1);
+                }
             }
         });
     }
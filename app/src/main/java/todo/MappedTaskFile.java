@@ -0,0 +1,91 @@
+package todo;
+
+import java.io.*;
+import java.nio.MappedByteBuffer;
+import java.util.BitSet;
+
+/**
+ * MappedTaskFile gives random access to the tasks of a memory-mapped snapshot
+ * Opening one decodes nothing but the header; a task is decoded from the
+ * mapping only when it is asked for, found through the offset index at the
+ * end of the file
+ *
+ * The checksum of a block is checked when its first task is decoded. A
+ * damaged block is reported once to the damage listener and its tasks are
+ * lost: load returns null for them rather than anything decoded from bytes
+ * that can't be trusted.
+ */
+public class MappedTaskFile {
+    private final MappedByteBuffer buffer;
+    private final String[] dictionary;
+    private final int count;
+    private final int indexPosition;
+    // Blocks whose checksum has been checked
+    private final BitSet checked = new BitSet();
+    // Blocks whose tasks are lost
+    private final BitSet damaged = new BitSet();
+    // Told when a block turns out to be damaged
+    private Runnable damageListener;
+    
+    MappedTaskFile(MappedByteBuffer buffer, String[] dictionary, int count, int indexPosition) {
+        this.buffer = buffer;
+        this.dictionary = dictionary;
+        this.count = count;
+        this.indexPosition = indexPosition;
+    }
+    
+    // Have a listener run, on the decoding thread, each time a block fails its checksum
+    void setDamageListener(Runnable listener) {
+        damageListener = listener;
+    }
+    
+    // Number of tasks in the file
+    public int size() {
+        return count;
+    }
+    
+    // Id of the task stored at a position, read straight from the offset index
+    public int idAt(int index) {
+        return buffer.getInt(indexPosition + index * TaskFileFormat.INDEX_ENTRY_SIZE);
+    }
+    
+    // Decode the task stored at a position, or null if it was lost to damage
+    public Task load(int index) {
+        int entry = indexPosition + index * TaskFileFormat.INDEX_ENTRY_SIZE;
+        int id = buffer.getInt(entry);
+        long offset = buffer.getLong(entry + 4);
+        int block = index / TaskFileFormat.BLOCK_RECORDS;
+        if (!intact(block)) {
+            return null;
+        }
+        try {
+            return TaskFileFormat.readRecord(buffer, (int) offset, id, dictionary);
+        } catch (IOException | RuntimeException e) {
+            // A record that doesn't decode although its block checked out, lose the rest of the block with it
+            damage(block);
+            return null;
+        }
+    }
+    
+    // Whether a block is intact, checking its checksum the first time one of its tasks is decoded
+    private boolean intact(int block) {
+        if (!checked.get(block)) {
+            checked.set(block);
+            long firstRecord = buffer.getLong(indexPosition + block * TaskFileFormat.BLOCK_RECORDS
+                                              * TaskFileFormat.INDEX_ENTRY_SIZE + 4);
+            if (!TaskFileFormat.blockIntact(buffer, (int) firstRecord)) {
+                damage(block);
+            }
+        }
+        return !damaged.get(block);
+    }
+    
+    private void damage(int block) {
+        if (!damaged.get(block)) {
+            damaged.set(block);
+            if (damageListener != null) {
+                damageListener.run();
+            }
+        }
+    }
+}
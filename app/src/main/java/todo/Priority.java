@@ -0,0 +1,60 @@
+package todo;
+
+/**
+ * Priority is the importance of a task, with the label and icon shown for it
+ * NONE stands for a missing priority; a label that is none of these is rejected
+ * rather than taken for NONE, so it is never silently lost
+ */
+public enum Priority {
+    HIGH("High", "🔴"),
+    MEDIUM("Medium", "🟡"),
+    LOW("Low", "🟢"),
+    NONE("None", "⚪");
+    
+    private static final Priority[] VALUES = values();
+    
+    private final String label;
+    private final String icon;
+    
+    Priority(String label, String icon) {
+        this.label = label;
+        this.icon = icon;
+    }
+    
+    public String getLabel() {
+        return label;
+    }
+    
+    public String getIcon() {
+        return icon;
+    }
+    
+    // The priority with a label, ignoring case, or NONE for a missing one
+    public static Priority of(String label) {
+        if (label == null || label.isEmpty()) {
+            return NONE;
+        }
+        Priority priority = parse(label);
+        if (priority == null) {
+            throw new IllegalArgumentException("unknown priority '" + label + "'");
+        }
+        return priority;
+    }
+    
+    // The priority with a label, ignoring case, or null if there is no such priority
+    public static Priority parse(String label) {
+        if (label != null) {
+            for (Priority priority : VALUES) {
+                if (priority.label.equalsIgnoreCase(label)) {
+                    return priority;
+                }
+            }
+        }
+        return null;
+    }
+    
+    // The priority with an ordinal, as stored in compact encodings
+    public static Priority ofOrdinal(int ordinal) {
+        return VALUES[ordinal];
+    }
+}
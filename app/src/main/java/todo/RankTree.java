@@ -0,0 +1,58 @@
+package todo;
+
+/**
+ * RankTree counts the occupied slots of an array in a Fenwick tree, so both
+ * the position of a slot among the occupied ones and the slot at a position
+ * are found in O(log n), without squeezing the empty slots out first
+ */
+public class RankTree {
+    // 1-based, tree[i] counts the occupied slots in (i - lowBit(i), i]
+    private int[] tree;
+    private int capacity;
+    
+    public RankTree(int capacity) {
+        reset(capacity, 0);
+    }
+    
+    // Start over with the first occupied slots of a capacity occupied and the rest empty
+    public void reset(int capacity, int occupied) {
+        if (tree == null || tree.length != capacity + 1) {
+            tree = new int[capacity + 1];
+        }
+        this.capacity = capacity;
+        for (int i = 1; i <= capacity; i++) {
+            int from = i - (i & -i);
+            tree[i] = Math.max(0, Math.min(i, occupied) - from);
+        }
+    }
+    
+    // Mark a slot occupied (delta 1) or empty (delta -1)
+    public void add(int slot, int delta) {
+        for (int i = slot + 1; i <= capacity; i += i & -i) {
+            tree[i] += delta;
+        }
+    }
+    
+    // Number of occupied slots before a slot
+    public int countBefore(int slot) {
+        int count = 0;
+        for (int i = slot; i > 0; i -= i & -i) {
+            count += tree[i];
+        }
+        return count;
+    }
+    
+    // The slot holding the occupied one at a position, capacity if there are not that many
+    public int slotAt(int position) {
+        int slot = 0;
+        int remaining = position + 1;
+        for (int step = Integer.highestOneBit(Math.max(capacity, 1)); step > 0; step >>= 1) {
+            int next = slot + step;
+            if (next <= capacity && tree[next] < remaining) {
+                slot = next;
+                remaining -= tree[next];
+            }
+        }
+        return slot;
+    }
+}
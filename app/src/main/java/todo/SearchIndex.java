@@ -0,0 +1,543 @@
+package todo;
+
+import java.util.*;
+
+/**
+ * SearchIndex is an inverted n-gram index over task titles and descriptions
+ * Every 2- and 3-character substring of a field maps to the ids of the tasks
+ * containing it, so a search only visits tasks that can possibly match
+ *
+ * Matching is the same as comparing String.toLowerCase of the field and the
+ * term with contains, but ASCII text is compared without building the lower
+ * case copy. Grams are packed into a long and found in an open-addressing
+ * table, and each gram's ids are kept in ascending order as varint gaps, so
+ * most ids cost a byte or two. A task must be removed from the index before
+ * its title or description changes and added back afterwards.
+ */
+public class SearchIndex {
+    private static final float LOAD_FACTOR = 0.5f;
+    
+    // Packed grams, 0 for a free slot since every gram key carries its length
+    private long[] keys;
+    private Posting[] postings;
+    private int size;
+    private int mask;
+    private int resizeAt;
+    // Grams of the task being added or removed, reused
+    private long[] scratch = new long[64];
+    
+    public SearchIndex() {
+        allocate(1024);
+    }
+    
+    public void add(Task task) {
+        int count = grams(task);
+        for (int i = 0; i < count; i++) {
+            int slot = slotOf(scratch[i]);
+            if (slot < 0) {
+                slot = claim(scratch[i]);
+            }
+            postings[slot].add(task.getId());
+        }
+    }
+    
+    public void remove(Task task) {
+        int count = grams(task);
+        for (int i = 0; i < count; i++) {
+            int slot = slotOf(scratch[i]);
+            if (slot >= 0 && postings[slot].remove(task.getId()) && postings[slot].count == 0) {
+                free(slot);
+            }
+        }
+    }
+    
+    public void clear() {
+        allocate(1024);
+    }
+    
+    // Index every task from scratch
+    public void rebuild(Iterable<Task> tasks) {
+        clear();
+        for (Task task : tasks) {
+            add(task);
+        }
+    }
+    
+    // Find tasks whose title or description contains the term, ignoring case, in id order
+    public ArrayList<Task> search(String searchTerm, TaskStore tasks) {
+        String term = fold(searchTerm);
+        int length = term.length();
+        if (length == 0) {
+            return tasks.toList();
+        }
+        
+        ArrayList<Task> results = new ArrayList<>();
+        if (length == 1) {
+            // Single characters are not indexed, they match nearly everything anyway
+            for (Task task : tasks) {
+                if (matches(task, term)) {
+                    results.add(task);
+                }
+            }
+            return results;
+        }
+        
+        // Use the rarest gram of the term to pick the candidates
+        int rarest = -1;
+        for (int i = 0; i + Math.min(length, 3) <= length; i++) {
+            int slot = slotOf(gram(term, i, Math.min(length, 3)));
+            if (slot < 0) {
+                return results;
+            }
+            if (rarest < 0 || postings[slot].count < postings[rarest].count) {
+                rarest = slot;
+            }
+        }
+        
+        Posting posting = postings[rarest];
+        results.ensureCapacity(posting.count);
+        for (int block = 0; block < posting.blockCount; block++) {
+            byte[] bytes = posting.blocks[block];
+            int id = posting.firstIds[block];
+            int position = 0;
+            while (true) {
+                Task task = tasks.get(id);
+                // Terms of up to three characters are exactly one gram and need no check
+                if (task != null && (length <= 3 || matches(task, term))) {
+                    results.add(task);
+                }
+                if (position == posting.ends[block]) {
+                    break;
+                }
+                for (int shift = 0; ; shift += 7) {
+                    byte b = bytes[position++];
+                    id += (b & 0x7F) << shift;
+                    if (b >= 0) {
+                        break;
+                    }
+                }
+            }
+        }
+        return results;
+    }
+    
+    // A search term folded as matches expects it
+    static String fold(String searchTerm) {
+        return searchTerm.toLowerCase();
+    }
+    
+    // Whether the title or description contains a term folded with fold, as toLowerCase().contains() would find
+    static boolean matches(Task task, String foldedTerm) {
+        return containsFolded(task.getTitle(), foldedTerm) || containsFolded(task.getDescription(), foldedTerm);
+    }
+    
+    private static boolean containsFolded(String text, String term) {
+        if (text == null) {
+            return false;
+        }
+        if (!isAscii(text) || !asciiFoldsPlainly()) {
+            return text.toLowerCase().contains(term);
+        }
+        // ASCII lower-cases one character at a time, to ASCII, so it can be folded in place
+        int last = text.length() - term.length();
+        for (int i = 0; i <= last; i++) {
+            int j = 0;
+            while (j < term.length() && asciiLower(text.charAt(i + j)) == term.charAt(j)) {
+                j++;
+            }
+            if (j == term.length()) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    private static boolean isAscii(String text) {
+        for (int i = 0; i < text.length(); i++) {
+            if (text.charAt(i) >= 0x80) {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    // Turkish and Azerbaijani lower-case 'I' to a dotless i, outside ASCII
+    private static boolean asciiFoldsPlainly() {
+        String language = Locale.getDefault().getLanguage();
+        return !language.equals("tr") && !language.equals("az");
+    }
+    
+    private static char asciiLower(char c) {
+        return c >= 'A' && c <= 'Z' ? (char) (c + ('a' - 'A')) : c;
+    }
+    
+    // Collect the distinct grams of a task's title and description into scratch, returning how many
+    private int grams(Task task) {
+        int count = grams(task.getTitle(), 0);
+        count = grams(task.getDescription(), count);
+        Arrays.sort(scratch, 0, count);
+        int distinct = 0;
+        for (int i = 0; i < count; i++) {
+            if (distinct == 0 || scratch[distinct - 1] != scratch[i]) {
+                scratch[distinct++] = scratch[i];
+            }
+        }
+        return distinct;
+    }
+    
+    private int grams(String text, int count) {
+        if (text == null) {
+            return count;
+        }
+        String folded = text.toLowerCase();
+        int length = folded.length();
+        if (count + 2 * length > scratch.length) {
+            scratch = Arrays.copyOf(scratch, Math.max(count + 2 * length, scratch.length * 2));
+        }
+        for (int i = 0; i + 2 <= length; i++) {
+            scratch[count++] = gram(folded, i, 2);
+            if (i + 3 <= length) {
+                scratch[count++] = gram(folded, i, 3);
+            }
+        }
+        return count;
+    }
+    
+    // Pack a gram of 2 or 3 characters of folded text into a long
+    private static long gram(String folded, int start, int length) {
+        long key = length;
+        for (int i = start; i < start + length; i++) {
+            key = (key << 16) | folded.charAt(i);
+        }
+        return key;
+    }
+    
+    private int slotOf(long key) {
+        int index = hash(key) & mask;
+        while (keys[index] != 0) {
+            if (keys[index] == key) {
+                return index;
+            }
+            index = (index + 1) & mask;
+        }
+        return -1;
+    }
+    
+    // Add an empty posting for a new gram and return its slot
+    private int claim(long key) {
+        if (size + 1 >= resizeAt) {
+            rehash(keys.length << 1);
+        }
+        int index = hash(key) & mask;
+        while (keys[index] != 0) {
+            index = (index + 1) & mask;
+        }
+        keys[index] = key;
+        postings[index] = new Posting();
+        size++;
+        return index;
+    }
+    
+    // Drop an empty posting; backward-shift deletion keeps probe chains intact without tombstones
+    private void free(int slot) {
+        int gap = slot;
+        int next = (gap + 1) & mask;
+        while (keys[next] != 0) {
+            int home = hash(keys[next]) & mask;
+            if (((next - home) & mask) >= ((next - gap) & mask)) {
+                move(next, gap);
+                gap = next;
+            }
+            next = (next + 1) & mask;
+        }
+        keys[gap] = 0;
+        postings[gap] = null;
+        size--;
+    }
+    
+    private void move(int from, int to) {
+        keys[to] = keys[from];
+        postings[to] = postings[from];
+    }
+    
+    private void rehash(int capacity) {
+        long[] oldKeys = keys;
+        Posting[] oldPostings = postings;
+        allocate(capacity);
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != 0) {
+                int index = hash(oldKeys[i]) & mask;
+                while (keys[index] != 0) {
+                    index = (index + 1) & mask;
+                }
+                keys[index] = oldKeys[i];
+                postings[index] = oldPostings[i];
+                size++;
+            }
+        }
+    }
+    
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        postings = new Posting[capacity];
+        size = 0;
+        mask = capacity - 1;
+        resizeAt = (int) (capacity * LOAD_FACTOR);
+    }
+    
+    private static int hash(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+    
+    /**
+     * The ids of one gram in ascending order, in blocks that each hold a first
+     * id and the varint gaps to the ids after it. Blocks stay small, so adding
+     * or removing an id below the last one only rewrites a few hundred bytes.
+     */
+    private static final class Posting {
+        private static final int BLOCK_BYTES = 256;
+        
+        byte[][] blocks = new byte[1][];
+        int[] firstIds = new int[1];
+        // Bytes used in each block
+        int[] ends = new int[1];
+        int blockCount;
+        int count;
+        int lastId;
+        
+        // Add an id, returning false if it was already there
+        boolean add(int id) {
+            byte[] replacement = new byte[10];
+            if (count == 0 || id > lastId) {
+                int last = blockCount - 1;
+                if (count == 0 || ends[last] + 5 > BLOCK_BYTES) {
+                    if (count > 0) {
+                        blocks[last] = Arrays.copyOf(blocks[last], ends[last]);
+                    }
+                    insertBlock(blockCount, id, new byte[8], 0);
+                } else {
+                    splice(last, ends[last], ends[last], replacement, putVarint(replacement, 0, id - lastId));
+                }
+                lastId = id;
+                count++;
+                return true;
+            }
+            
+            int block = blockOf(id);
+            if (block < 0) {
+                // A new lowest id, the old first id becomes its first gap
+                block = 0;
+                splice(0, 0, 0, replacement, putVarint(replacement, 0, firstIds[0] - id));
+                firstIds[0] = id;
+            } else {
+                byte[] bytes = blocks[block];
+                int previous = firstIds[block];
+                int position = 0;
+                if (previous == id) {
+                    return false;
+                }
+                while (true) {
+                    if (position == ends[block]) {
+                        splice(block, position, position, replacement, putVarint(replacement, 0, id - previous));
+                        break;
+                    }
+                    int start = position;
+                    int current = previous;
+                    for (int shift = 0; ; shift += 7) {
+                        byte b = bytes[position++];
+                        current += (b & 0x7F) << shift;
+                        if (b >= 0) {
+                            break;
+                        }
+                    }
+                    if (current == id) {
+                        return false;
+                    }
+                    if (current > id) {
+                        // Split the gap the id falls in
+                        int used = putVarint(replacement, 0, id - previous);
+                        splice(block, start, position, replacement, putVarint(replacement, used, current - id));
+                        break;
+                    }
+                    previous = current;
+                }
+            }
+            count++;
+            if (ends[block] > BLOCK_BYTES) {
+                split(block);
+            }
+            return true;
+        }
+        
+        // Remove an id, returning false if it was not there
+        boolean remove(int id) {
+            int block = count > 0 && id <= lastId ? blockOf(id) : -1;
+            if (block < 0) {
+                return false;
+            }
+            byte[] bytes = blocks[block];
+            int previous = firstIds[block];
+            int start = 0;
+            int position = 0;
+            if (previous != id) {
+                while (true) {
+                    if (position == ends[block]) {
+                        return false;
+                    }
+                    start = position;
+                    int current = previous;
+                    for (int shift = 0; ; shift += 7) {
+                        byte b = bytes[position++];
+                        current += (b & 0x7F) << shift;
+                        if (b >= 0) {
+                            break;
+                        }
+                    }
+                    if (current == id) {
+                        break;
+                    }
+                    if (current > id) {
+                        return false;
+                    }
+                    previous = current;
+                }
+            }
+            
+            if (ends[block] == 0) {
+                removeBlock(block);
+            } else if (position == ends[block]) {
+                // The last id of the block
+                ends[block] = start;
+            } else {
+                // Merge the id's gap into the next one, or make the next id the first
+                boolean first = previous == id;
+                int next = position;
+                int gap = first ? 0 : id - previous;
+                for (int shift = 0; ; shift += 7) {
+                    byte b = bytes[next++];
+                    gap += (b & 0x7F) << shift;
+                    if (b >= 0) {
+                        break;
+                    }
+                }
+                byte[] replacement = new byte[5];
+                if (first) {
+                    firstIds[block] = id + gap;
+                    splice(block, 0, next, replacement, 0);
+                } else {
+                    splice(block, start, next, replacement, putVarint(replacement, 0, gap));
+                }
+            }
+            count--;
+            if (id == lastId && count > 0) {
+                lastId = lastIdOf(blockCount - 1);
+            }
+            return true;
+        }
+        
+        // The last block whose first id is at most the id, or -1 if the id is below them all
+        private int blockOf(int id) {
+            int low = 0;
+            int high = blockCount - 1;
+            while (low <= high) {
+                int middle = (low + high) >>> 1;
+                if (firstIds[middle] <= id) {
+                    low = middle + 1;
+                } else {
+                    high = middle - 1;
+                }
+            }
+            return high;
+        }
+        
+        private int lastIdOf(int block) {
+            byte[] bytes = blocks[block];
+            int id = firstIds[block];
+            for (int position = 0; position < ends[block]; ) {
+                for (int shift = 0; ; shift += 7) {
+                    byte b = bytes[position++];
+                    id += (b & 0x7F) << shift;
+                    if (b >= 0) {
+                        break;
+                    }
+                }
+            }
+            return id;
+        }
+        
+        // Replace the bytes from one position to another of a block
+        private void splice(int block, int from, int to, byte[] replacement, int used) {
+            int delta = used - (to - from);
+            byte[] bytes = blocks[block];
+            if (ends[block] + delta > bytes.length) {
+                bytes = Arrays.copyOf(bytes, Math.max(ends[block] + delta, bytes.length + (bytes.length >> 1)));
+                blocks[block] = bytes;
+            }
+            System.arraycopy(bytes, to, bytes, to + delta, ends[block] - to);
+            System.arraycopy(replacement, 0, bytes, from, used);
+            ends[block] += delta;
+        }
+        
+        // Cut a block in two at the gap nearest its middle
+        private void split(int block) {
+            byte[] bytes = blocks[block];
+            int id = firstIds[block];
+            int position = 0;
+            while (position < ends[block] / 2) {
+                for (int shift = 0; ; shift += 7) {
+                    byte b = bytes[position++];
+                    id += (b & 0x7F) << shift;
+                    if (b >= 0) {
+                        break;
+                    }
+                }
+            }
+            // The gap at the cut gives the first id of the new block
+            int cut = position;
+            for (int shift = 0; ; shift += 7) {
+                byte b = bytes[position++];
+                id += (b & 0x7F) << shift;
+                if (b >= 0) {
+                    break;
+                }
+            }
+            insertBlock(block + 1, id, Arrays.copyOfRange(bytes, position, ends[block]), ends[block] - position);
+            blocks[block] = Arrays.copyOf(bytes, cut);
+            ends[block] = cut;
+        }
+        
+        private void insertBlock(int block, int firstId, byte[] bytes, int end) {
+            if (blockCount == blocks.length) {
+                int capacity = blockCount + (blockCount >> 1) + 1;
+                blocks = Arrays.copyOf(blocks, capacity);
+                firstIds = Arrays.copyOf(firstIds, capacity);
+                ends = Arrays.copyOf(ends, capacity);
+            }
+            System.arraycopy(blocks, block, blocks, block + 1, blockCount - block);
+            System.arraycopy(firstIds, block, firstIds, block + 1, blockCount - block);
+            System.arraycopy(ends, block, ends, block + 1, blockCount - block);
+            blocks[block] = bytes;
+            firstIds[block] = firstId;
+            ends[block] = end;
+            blockCount++;
+        }
+        
+        private void removeBlock(int block) {
+            System.arraycopy(blocks, block + 1, blocks, block, blockCount - block - 1);
+            System.arraycopy(firstIds, block + 1, firstIds, block, blockCount - block - 1);
+            System.arraycopy(ends, block + 1, ends, block, blockCount - block - 1);
+            blockCount--;
+            blocks[blockCount] = null;
+        }
+        
+        private static int putVarint(byte[] bytes, int position, int value) {
+            while ((value & ~0x7F) != 0) {
+                bytes[position++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            bytes[position++] = (byte) value;
+            return position;
+        }
+    }
+}
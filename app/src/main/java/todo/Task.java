@@ -0,0 +1,310 @@
+package todo;
+
+import java.io.*;
+import java.time.DateTimeException;
+import java.time.LocalDate;
+
+/**
+ * Task class represents a single task in the ToDo application
+ * Follows OOP principles with encapsulation and proper data management
+ */
+public class Task implements Serializable {
+    private static final long serialVersionUID = 1L;
+    // Due date text used when a task has none, and the due day of such a task
+    public static final String NO_DUE_DATE = "No due date";
+    public static final int NO_DUE_DAY = Integer.MIN_VALUE;
+    
+    // Serialized as the original String fields, so files written by older versions still load
+    private static final ObjectStreamField[] serialPersistentFields = {
+        new ObjectStreamField("id", int.class),
+        new ObjectStreamField("title", String.class),
+        new ObjectStreamField("description", String.class),
+        new ObjectStreamField("completed", boolean.class),
+        new ObjectStreamField("priority", String.class),
+        new ObjectStreamField("dueDate", String.class),
+        new ObjectStreamField("category", String.class)
+    };
+    
+    private int id;
+    private String title;
+    private String description;
+    private boolean completed;
+    private Priority priority;
+    // Due date as an epoch day, NO_DUE_DAY when the due date is not a date
+    private int dueDay;
+    // Due date text, kept only when it is not the ISO form of dueDay
+    private String dueDate;
+    // Id in the CategoryRegistry
+    private int category;
+    // Rendered list text, built on first use and dropped when a field it shows changes
+    private transient String displayText;
+    
+    // Constructor
+    public Task(int id, String title, String description, String priority, String dueDate, String category) {
+        this(id, title, description, Priority.of(priority), dueDate, category);
+    }
+    
+    public Task(int id, String title, String description, Priority priority, String dueDate, String category) {
+        this.id = id;
+        this.title = title;
+        this.description = description;
+        this.completed = false;
+        this.priority = priority != null ? priority : Priority.NONE;
+        setDueDate(dueDate);
+        this.category = CategoryRegistry.idOf(category);
+    }
+    
+    // A separate task with the same id and fields
+    Task copy() {
+        Task copy = new Task(id, title, description, priority, null, null);
+        copy.dueDay = dueDay;
+        copy.dueDate = dueDate;
+        copy.category = category;
+        copy.completed = completed;
+        return copy;
+    }
+    
+    // A task rebuilt from stored fields, where dueText is the due date text kept beside the day, if any
+    static Task of(int id, String title, String description, boolean completed, Priority priority, int dueDay,
+                   String dueText, int category) {
+        Task task = new Task(id, title, description, priority, null, null);
+        task.setDueDay(dueDay);
+        if (dueText != null) {
+            task.dueDate = dueText;
+        }
+        task.category = category;
+        task.completed = completed;
+        return task;
+    }
+    
+    // Take the editable fields of another task, leaving the id and completion alone
+    void setFields(Task from) {
+        title = from.title;
+        description = from.description;
+        priority = from.priority;
+        dueDay = from.dueDay;
+        dueDate = from.dueDate;
+        category = from.category;
+        displayText = null;
+    }
+    
+    // Getters
+    public int getId() {
+        return id;
+    }
+    
+    public String getTitle() {
+        return title;
+    }
+    
+    public String getDescription() {
+        return description;
+    }
+    
+    public boolean isCompleted() {
+        return completed;
+    }
+    
+    public String getPriority() {
+        return priority.getLabel();
+    }
+    
+    public Priority getPriorityLevel() {
+        return priority;
+    }
+    
+    public String getDueDate() {
+        if (dueDate != null) {
+            return dueDate;
+        }
+        return dueDay != NO_DUE_DAY ? LocalDate.ofEpochDay(dueDay).toString() : NO_DUE_DATE;
+    }
+    
+    // Due date text as it was entered, null when it is the ISO form of the due day
+    String getDueText() {
+        return dueDate;
+    }
+    
+    // Due date as an epoch day, or NO_DUE_DAY if the task has no due date that is a date
+    public int getDueDay() {
+        return dueDay;
+    }
+    
+    public String getCategory() {
+        return CategoryRegistry.nameOf(category);
+    }
+    
+    public int getCategoryId() {
+        return category;
+    }
+    
+    // Setters
+    // Set the due date from an epoch day, or to no due date for NO_DUE_DAY
+    void setDueDay(int dueDay) {
+        this.dueDay = dueDay;
+        this.dueDate = dueDay == NO_DUE_DAY ? NO_DUE_DATE : null;
+    }
+    
+    // Number a task that was built before it had an id, such as an imported one
+    void setId(int id) {
+        this.id = id;
+    }
+    
+    public void setTitle(String title) {
+        this.title = title;
+        displayText = null;
+    }
+    
+    public void setDescription(String description) {
+        this.description = description;
+    }
+    
+    public void setCompleted(boolean completed) {
+        this.completed = completed;
+        displayText = null;
+    }
+    
+    // Rejects a label that is not a priority with IllegalArgumentException, null or empty means NONE
+    public void setPriority(String priority) {
+        this.priority = Priority.of(priority);
+        displayText = null;
+    }
+    
+    public void setPriority(Priority priority) {
+        this.priority = priority != null ? priority : Priority.NONE;
+        displayText = null;
+    }
+    
+    public void setDueDate(String dueDate) {
+        dueDay = parseDay(dueDate);
+        if (dueDay != NO_DUE_DAY && isIsoForm(dueDate)) {
+            // Plain ISO dates are rebuilt from the day, other text is kept as it was entered
+            this.dueDate = null;
+        } else if (dueDate == null || NO_DUE_DATE.equals(dueDate)) {
+            this.dueDate = NO_DUE_DATE;
+        } else {
+            this.dueDate = dueDate;
+        }
+    }
+    
+    public void setCategory(String category) {
+        this.category = CategoryRegistry.idOf(category);
+        displayText = null;
+    }
+    
+    // Toggle completion status
+    public void toggleCompleted() {
+        this.completed = !this.completed;
+        displayText = null;
+    }
+    
+    @Override
+    public String toString() {
+        return String.format("[%s] %s - %s (%s) - Due: %s", 
+                           completed ? "✓" : " ", 
+                           title, 
+                           getPriority(), 
+                           getCategory(), 
+                           getDueDate());
+    }
+    
+    // Method to get formatted display text for GUI, rendered once until the task changes
+    public String getDisplayText() {
+        String text = displayText;
+        if (text == null) {
+            text = renderDisplayText();
+            displayText = text;
+        }
+        return text;
+    }
+    
+    // "<status> <icon> <title> - <category>", built in one exactly sized buffer
+    private String renderDisplayText() {
+        String status = completed ? "✓ " : "○ ";
+        String priorityIcon = getPriorityIcon();
+        String shownTitle = String.valueOf(title);
+        String shownCategory = String.valueOf(getCategory());
+        StringBuilder text = new StringBuilder(status.length() + priorityIcon.length() + shownTitle.length()
+                                               + shownCategory.length() + 4);
+        return text.append(status).append(priorityIcon).append(' ').append(shownTitle)
+                   .append(" - ").append(shownCategory).toString();
+    }
+    
+    private String getPriorityIcon() {
+        return priority.getIcon();
+    }
+    
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        ObjectOutputStream.PutField fields = out.putFields();
+        fields.put("id", id);
+        fields.put("title", title);
+        fields.put("description", description);
+        fields.put("completed", completed);
+        fields.put("priority", getPriority());
+        fields.put("dueDate", getDueDate());
+        fields.put("category", getCategory());
+        out.writeFields();
+    }
+    
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        ObjectInputStream.GetField fields = in.readFields();
+        id = fields.get("id", 0);
+        title = (String) fields.get("title", null);
+        description = (String) fields.get("description", null);
+        completed = fields.get("completed", false);
+        try {
+            priority = Priority.of((String) fields.get("priority", null));
+        } catch (IllegalArgumentException e) {
+            throw new InvalidObjectException(e.getMessage());
+        }
+        setDueDate((String) fields.get("dueDate", null));
+        category = CategoryRegistry.idOf((String) fields.get("category", null));
+    }
+    
+    // Parse a year-month-day date such as 2025-08-01 into an epoch day, NO_DUE_DAY if it is not one
+    static int parseDay(String text) {
+        if (text == null) {
+            return NO_DUE_DAY;
+        }
+        int first = text.indexOf('-');
+        int second = text.indexOf('-', first + 1);
+        if (first < 4 || second < 0) {
+            return NO_DUE_DAY;
+        }
+        int year = digits(text, 0, first);
+        int month = digits(text, first + 1, second);
+        int day = digits(text, second + 1, text.length());
+        if (year < 0 || month < 0 || day < 0) {
+            return NO_DUE_DAY;
+        }
+        try {
+            long epochDay = LocalDate.of(year, month, day).toEpochDay();
+            // Years far enough out don't fit an int day, and the lowest int means no due day
+            return epochDay > Integer.MIN_VALUE && epochDay <= Integer.MAX_VALUE ? (int) epochDay : NO_DUE_DAY;
+        } catch (DateTimeException e) {
+            return NO_DUE_DAY;
+        }
+    }
+    
+    // Whether a date is written exactly as LocalDate prints it, yyyy-mm-dd
+    private static boolean isIsoForm(String text) {
+        return text.length() == 10 && text.charAt(4) == '-' && text.charAt(7) == '-'
+            && digits(text, 0, 4) >= 0 && digits(text, 5, 7) >= 0 && digits(text, 8, 10) >= 0;
+    }
+    
+    // The value of a run of up to 9 decimal digits, or -1 if it is empty or has anything else
+    private static int digits(String text, int from, int to) {
+        if (from >= to || to - from > 9) {
+            return -1;
+        }
+        int value = 0;
+        for (int i = from; i < to; i++) {
+            char c = text.charAt(i);
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            value = value * 10 + (c - '0');
+        }
+        return value;
+    }
+}
@@ -0,0 +1,386 @@
+package todo;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.*;
+import java.util.function.Predicate;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * TaskArchive keeps completed tasks that have left the live task set
+ * Tasks are appended to a file in compressed segments of at most 4096 tasks
+ * and never read back until the archive is searched. A search decodes one
+ * segment at a time and keeps only the matches, so its memory stays bounded
+ * however long the history grows. Tasks are added in memory first and
+ * written by flush, so the caller decides when the disk is touched.
+ *
+ * Layout of each segment:
+ *   magic "TARC" (4 bytes), task count, compressed length, CRC32 of the
+ *   compressed bytes (4 bytes each), then the tasks deflated column by
+ *   column: ids, completion flags, priorities, categories, due days, due
+ *   texts, titles, descriptions
+ *
+ * A segment is forced to disk before flush returns. A torn segment at the end
+ * of the file, left by a crash during an append, is ignored when reading and
+ * cut off before the next append.
+ */
+public class TaskArchive {
+    private static final byte[] SEGMENT_MAGIC = {'T', 'A', 'R', 'C'};
+    private static final int SEGMENT_HEADER_SIZE = 16;
+    // Tasks per segment, the most a read of the archive decodes at once
+    private static final int SEGMENT_TASKS = 4096;
+    private static final Priority[] PRIORITIES = Priority.values();
+    
+    /**
+     * Which completed tasks leave the live set
+     * Tasks don't record when they were completed, so age is measured from the
+     * due date: a task is old once it was due more than maxAgeDays ago. Tasks
+     * without a due date only leave through keepCompleted, which keeps that
+     * many of the newest completed tasks, by id, and archives the rest.
+     * Negative values mean no limit.
+     */
+    public static final class Policy {
+        public static final String MAX_AGE_PROPERTY = "todo.archive.maxAgeDays";
+        public static final String KEEP_COMPLETED_PROPERTY = "todo.archive.keepCompleted";
+        
+        private final int maxAgeDays;
+        private final int keepCompleted;
+        
+        public Policy(int maxAgeDays, int keepCompleted) {
+            this.maxAgeDays = maxAgeDays;
+            this.keepCompleted = keepCompleted;
+        }
+        
+        // Archive completed tasks due more than a number of days ago
+        public static Policy olderThan(int days) {
+            return new Policy(days, -1);
+        }
+        
+        // Archive all but the newest completed tasks
+        public static Policy keepNewest(int completed) {
+            return new Policy(-1, completed);
+        }
+        
+        // The policy set with -Dtodo.archive.maxAgeDays and -Dtodo.archive.keepCompleted, or null if neither is set
+        public static Policy fromSystemProperties() {
+            int maxAgeDays = Integer.getInteger(MAX_AGE_PROPERTY, -1);
+            int keepCompleted = Integer.getInteger(KEEP_COMPLETED_PROPERTY, -1);
+            return maxAgeDays < 0 && keepCompleted < 0 ? null : new Policy(maxAgeDays, keepCompleted);
+        }
+        
+        public int getMaxAgeDays() {
+            return maxAgeDays;
+        }
+        
+        public int getKeepCompleted() {
+            return keepCompleted;
+        }
+        
+        // Ids of the tasks to archive, in id order, from live tasks in id order, leaving out any that are held
+        int[] select(Iterator<Task> tasks, IntSet held) {
+            int cutoff = maxAgeDays < 0 ? Integer.MIN_VALUE : (int) (LocalDate.now().toEpochDay() - maxAgeDays);
+            int[] completed = new int[64];
+            boolean[] old = new boolean[64];
+            int count = 0;
+            while (tasks.hasNext()) {
+                Task task = tasks.next();
+                if (!task.isCompleted() || held.contains(task.getId())) {
+                    continue;
+                }
+                if (count == completed.length) {
+                    completed = Arrays.copyOf(completed, count * 2);
+                    old = Arrays.copyOf(old, count * 2);
+                }
+                int dueDay = task.getDueDay();
+                old[count] = dueDay != Task.NO_DUE_DAY && dueDay < cutoff;
+                completed[count++] = task.getId();
+            }
+            int surplus = keepCompleted < 0 ? 0 : Math.max(count - keepCompleted, 0);
+            int selected = 0;
+            for (int i = 0; i < count; i++) {
+                if (i < surplus || old[i]) {
+                    completed[selected++] = completed[i];
+                }
+            }
+            return Arrays.copyOf(completed, selected);
+        }
+        
+        @Override
+        public String toString() {
+            return "Policy{maxAgeDays=" + maxAgeDays + ", keepCompleted=" + keepCompleted + "}";
+        }
+    }
+    
+    private final File file;
+    // Tasks added but not yet written
+    private final ArrayList<Task> pending = new ArrayList<>();
+    // End of the last intact segment, -1 until the file has been checked
+    private long end = -1;
+    // Whether damage at the end of the file has been reported
+    private boolean damageReported;
+    
+    public TaskArchive(String path) {
+        this.file = new File(path);
+    }
+    
+    // Archive tasks in memory; they reach the file on the next flush
+    public synchronized void add(Collection<Task> tasks) {
+        pending.addAll(tasks);
+    }
+    
+    // Whether tasks were added that are not written yet
+    public synchronized boolean hasPending() {
+        return !pending.isEmpty();
+    }
+    
+    // Write the added tasks as segments and force them to disk
+    public synchronized void flush() throws IOException {
+        if (pending.isEmpty()) {
+            return;
+        }
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+                                                    StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            if (end < 0) {
+                end = intactLength(channel);
+            }
+            // Drop a torn segment, so what is written now can be read back
+            if (channel.size() > end) {
+                channel.truncate(end);
+            }
+            long position = end;
+            for (int from = 0; from < pending.size(); from += SEGMENT_TASKS) {
+                int to = Math.min(from + SEGMENT_TASKS, pending.size());
+                ByteBuffer buffer = ByteBuffer.wrap(encode(pending.subList(from, to)));
+                while (buffer.hasRemaining()) {
+                    position += channel.write(buffer, position);
+                }
+            }
+            channel.force(true);
+            end = position;
+        }
+        pending.clear();
+    }
+    
+    // Number of archived tasks, reading the whole file
+    public synchronized int size() throws IOException {
+        final IntSet ids = new IntSet();
+        read(new Visitor() {
+            public void visit(Task task) {
+                ids.add(task.getId());
+            }
+        });
+        return ids.size();
+    }
+    
+    // The archived task with an id, or null, reading the whole file
+    public synchronized Task get(final int id) throws IOException {
+        final Task[] found = new Task[1];
+        read(new Visitor() {
+            public void visit(Task task) {
+                if (task.getId() == id) {
+                    found[0] = task;
+                }
+            }
+        });
+        return found[0];
+    }
+    
+    // Archived tasks whose title or description contains the term ignoring case, in id order
+    public synchronized ArrayList<Task> search(String term) throws IOException {
+        final Predicate<Task> containing = TaskQuery.containing(term);
+        final TreeMap<Integer, Task> found = new TreeMap<>();
+        read(new Visitor() {
+            public void visit(Task task) {
+                // A later copy of a task decides whether it matches
+                if (containing.test(task)) {
+                    found.put(task.getId(), task);
+                } else {
+                    found.remove(task.getId());
+                }
+            }
+        });
+        return new ArrayList<>(found.values());
+    }
+    
+    /**
+     * Receives archived tasks oldest first, where a task archived again
+     * replaces the earlier copy with its id
+     */
+    private interface Visitor {
+        void visit(Task task);
+    }
+    
+    // Decode every intact segment in turn, then the tasks not written yet
+    private void read(Visitor visitor) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long position = 0;
+            byte[] segment;
+            while ((segment = readSegment(channel, position)) != null) {
+                decode(segment, visitor);
+                position += SEGMENT_HEADER_SIZE + segment.length;
+            }
+            end = position;
+            if (channel.size() > end && !damageReported) {
+                System.err.println("Error reading archive: ignoring " + (channel.size() - end) + " damaged bytes at the end of " + file);
+                damageReported = true;
+            }
+        } catch (FileNotFoundException | NoSuchFileException e) {
+            // Nothing archived yet
+            end = -1;
+        }
+        for (Task task : pending) {
+            visitor.visit(task);
+        }
+    }
+    
+    // Length of the file up to the end of its last intact segment
+    private static long intactLength(FileChannel channel) throws IOException {
+        long position = 0;
+        byte[] segment;
+        while ((segment = readSegment(channel, position)) != null) {
+            position += SEGMENT_HEADER_SIZE + segment.length;
+        }
+        return position;
+    }
+    
+    // Compressed bytes of the segment at a position, or null if there is no intact one
+    private static byte[] readSegment(FileChannel channel, long position) throws IOException {
+        if (position + SEGMENT_HEADER_SIZE > channel.size()) {
+            return null;
+        }
+        ByteBuffer header = ByteBuffer.allocate(SEGMENT_HEADER_SIZE);
+        readFully(channel, header, position);
+        for (int i = 0; i < SEGMENT_MAGIC.length; i++) {
+            if (header.get(i) != SEGMENT_MAGIC[i]) {
+                return null;
+            }
+        }
+        int length = header.getInt(8);
+        if (length < 0 || position + SEGMENT_HEADER_SIZE + length > channel.size()) {
+            return null;
+        }
+        ByteBuffer payload = ByteBuffer.allocate(length);
+        readFully(channel, payload, position + SEGMENT_HEADER_SIZE);
+        CRC32 crc = new CRC32();
+        crc.update(payload.array(), 0, length);
+        return (int) crc.getValue() == header.getInt(12) ? payload.array() : null;
+    }
+    
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new EOFException();
+            }
+        }
+    }
+    
+    // A segment with its header, the columns laid out one after another so similar values compress together
+    private static byte[] encode(List<Task> tasks) throws IOException {
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION);
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new DeflaterOutputStream(compressed, deflater)))) {
+            out.writeInt(tasks.size());
+            int previous = 0;
+            for (Task task : tasks) {
+                out.writeInt(task.getId() - previous);
+                previous = task.getId();
+            }
+            for (Task task : tasks) {
+                out.writeBoolean(task.isCompleted());
+            }
+            for (Task task : tasks) {
+                out.writeByte(task.getPriorityLevel().ordinal());
+            }
+            for (Task task : tasks) {
+                writeString(out, CategoryRegistry.nameOf(task.getCategoryId()));
+            }
+            for (Task task : tasks) {
+                out.writeInt(task.getDueDay());
+            }
+            for (Task task : tasks) {
+                writeString(out, task.getDueText());
+            }
+            for (Task task : tasks) {
+                writeString(out, task.getTitle());
+            }
+            for (Task task : tasks) {
+                writeString(out, task.getDescription());
+            }
+        } finally {
+            deflater.end();
+        }
+        byte[] payload = compressed.toByteArray();
+        CRC32 crc = new CRC32();
+        crc.update(payload, 0, payload.length);
+        ByteBuffer segment = ByteBuffer.allocate(SEGMENT_HEADER_SIZE + payload.length);
+        segment.put(SEGMENT_MAGIC).putInt(tasks.size()).putInt(payload.length).putInt((int) crc.getValue()).put(payload);
+        return segment.array();
+    }
+    
+    // Hand the tasks of a segment to a visitor in the order they were written
+    private static void decode(byte[] payload, Visitor into) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new InflaterInputStream(new ByteArrayInputStream(payload))))) {
+            int count = in.readInt();
+            int[] ids = new int[count];
+            int id = 0;
+            for (int i = 0; i < count; i++) {
+                id += in.readInt();
+                ids[i] = id;
+            }
+            boolean[] completed = new boolean[count];
+            for (int i = 0; i < count; i++) {
+                completed[i] = in.readBoolean();
+            }
+            byte[] priorities = new byte[count];
+            in.readFully(priorities);
+            int[] categories = new int[count];
+            for (int i = 0; i < count; i++) {
+                categories[i] = CategoryRegistry.idOf(readString(in));
+            }
+            int[] dueDays = new int[count];
+            for (int i = 0; i < count; i++) {
+                dueDays[i] = in.readInt();
+            }
+            String[] dueTexts = new String[count];
+            for (int i = 0; i < count; i++) {
+                dueTexts[i] = readString(in);
+            }
+            String[] titles = new String[count];
+            for (int i = 0; i < count; i++) {
+                titles[i] = readString(in);
+            }
+            for (int i = 0; i < count; i++) {
+                into.visit(Task.of(ids[i], titles[i], readString(in), completed[i], PRIORITIES[priorities[i]],
+                                 dueDays[i], dueTexts[i], categories[i]));
+            }
+        }
+    }
+    
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+    
+    private static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,52 @@
+package todo;
+
+/**
+ * TaskChangeEvent describes one change TaskManager made to its tasks
+ * Single-task changes carry the task and its display position, so a view
+ * can apply them as a delta. A change to many tasks at once, such as an
+ * import or Clear All, is a BULK event and means "reload everything".
+ */
+public final class TaskChangeEvent {
+    public enum Type {
+        ADDED,
+        REMOVED,
+        UPDATED,
+        BULK
+    }
+    
+    // There is nothing to say about a bulk change, so every one shares this instance
+    static final TaskChangeEvent BULK = new TaskChangeEvent(Type.BULK, null, -1);
+    
+    private final Type type;
+    private final Task task;
+    private final int index;
+    
+    TaskChangeEvent(Type type, Task task, int index) {
+        this.type = type;
+        this.task = task;
+        this.index = index;
+    }
+    
+    public Type getType() {
+        return type;
+    }
+    
+    // The task as it was added or updated, or the task that was removed; null for a bulk change
+    public Task getTask() {
+        return task;
+    }
+    
+    public int getTaskId() {
+        return task != null ? task.getId() : -1;
+    }
+    
+    // Display position of the task when it changed; for a removal, the position it was removed from
+    public int getIndex() {
+        return index;
+    }
+    
+    @Override
+    public String toString() {
+        return type + (task != null ? " " + task.getId() + " at " + index : "");
+    }
+}
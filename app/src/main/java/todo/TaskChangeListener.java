@@ -0,0 +1,11 @@
+package todo;
+
+/**
+ * TaskChangeListener is told about each change TaskManager makes to its tasks
+ * Listeners registered without an executor are called on the thread that
+ * made the change, while it is still being made, so they must be quick and
+ * must not call back into a ConcurrentTaskManager.
+ */
+public interface TaskChangeListener {
+    void taskChanged(TaskChangeEvent event);
+}
@@ -0,0 +1,131 @@
+package todo;
+
+import java.util.*;
+import java.util.concurrent.Executor;
+
+/**
+ * TaskChangeSupport keeps the registered TaskChangeListeners and hands events to them
+ * The listeners are a copy-on-write array, so publishing neither locks the
+ * registry nor allocates, and listeners can come and go while changes are
+ * being made on other threads.
+ *
+ * A listener with an executor gets its own queue, drained by one task on the
+ * executor at a time, so events arrive in order. With coalescing the queue
+ * holds at most one event: repeated updates of a task keep only the latest,
+ * and anything else that piles up before the listener runs becomes one BULK.
+ */
+class TaskChangeSupport {
+    private static final Registration[] NONE = new Registration[0];
+    
+    private volatile Registration[] registrations = NONE;
+    
+    synchronized void add(TaskChangeListener listener, Executor executor, boolean coalesce) {
+        Registration[] current = registrations;
+        Registration[] grown = Arrays.copyOf(current, current.length + 1);
+        grown[current.length] = new Registration(listener, executor, coalesce);
+        registrations = grown;
+    }
+    
+    // Unregister the first registration of a listener
+    synchronized boolean remove(TaskChangeListener listener) {
+        Registration[] current = registrations;
+        for (int i = 0; i < current.length; i++) {
+            if (current[i].listener == listener) {
+                Registration[] shrunk = new Registration[current.length - 1];
+                System.arraycopy(current, 0, shrunk, 0, i);
+                System.arraycopy(current, i + 1, shrunk, i, current.length - i - 1);
+                registrations = current.length == 1 ? NONE : shrunk;
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    // Lets callers skip building events nobody would receive
+    boolean isEmpty() {
+        return registrations.length == 0;
+    }
+    
+    void publish(TaskChangeEvent event) {
+        for (Registration registration : registrations) {
+            registration.publish(event);
+        }
+    }
+    
+    /**
+     * One listener with its executor and undelivered events
+     */
+    private static final class Registration implements Runnable {
+        final TaskChangeListener listener;
+        final Executor executor;
+        final boolean coalesce;
+        final ArrayDeque<TaskChangeEvent> queue;
+        // Whether a drain of the queue has been handed to the executor and not yet finished
+        private boolean scheduled;
+        
+        Registration(TaskChangeListener listener, Executor executor, boolean coalesce) {
+            this.listener = listener;
+            this.executor = executor;
+            this.coalesce = coalesce;
+            this.queue = executor != null ? new ArrayDeque<TaskChangeEvent>() : null;
+        }
+        
+        void publish(TaskChangeEvent event) {
+            if (executor == null) {
+                deliver(event);
+                return;
+            }
+            synchronized (this) {
+                TaskChangeEvent last = queue.peekLast();
+                if (!coalesce || last == null) {
+                    queue.addLast(event);
+                } else if (last.getType() == TaskChangeEvent.Type.UPDATED
+                           && event.getType() == TaskChangeEvent.Type.UPDATED
+                           && last.getTaskId() == event.getTaskId()) {
+                    queue.pollLast();
+                    queue.addLast(event);
+                } else if (last != TaskChangeEvent.BULK) {
+                    queue.pollLast();
+                    queue.addLast(TaskChangeEvent.BULK);
+                }
+                if (scheduled) {
+                    return;
+                }
+                scheduled = true;
+            }
+            try {
+                executor.execute(this);
+            } catch (RuntimeException e) {
+                synchronized (this) {
+                    queue.clear();
+                    scheduled = false;
+                }
+                System.err.println("Error notifying task listener: " + e.getMessage());
+            }
+        }
+        
+        // Deliver everything queued, on the executor
+        public void run() {
+            while (true) {
+                TaskChangeEvent event;
+                synchronized (this) {
+                    event = queue.pollFirst();
+                    if (event == null) {
+                        scheduled = false;
+                        return;
+                    }
+                }
+                deliver(event);
+            }
+        }
+        
+        // A failing listener must not break the change that notified it
+        private void deliver(TaskChangeEvent event) {
+            try {
+                listener.taskChanged(event);
+            } catch (RuntimeException e) {
+                System.err.println("Error notifying task listener: " + e.getMessage());
+            }
+        }
+    }
+}
@@ -0,0 +1,427 @@
+package todo;
+
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * TaskColumns holds tasks column by column instead of as one object each
+ * Ids, completion bits, priorities, categories and due days sit in primitive
+ * arrays, and titles and descriptions are UTF-8 bytes in one shared pool, so
+ * a task costs a few dozen bytes and counting or filtering walks a handful
+ * of dense arrays without touching a single Task or String.
+ *
+ * Positions are kept in ascending id order, like a TaskStore. A Task is only
+ * built when one is asked for; it is a copy, so changes to it reach the
+ * columns only when it is added back.
+ *
+ * It is not the store behind TaskManager, which hands out its own Task
+ * objects; it is for callers that only count and filter in bulk, as
+ * TaskColumnsBenchmark measures.
+ */
+public class TaskColumns implements Iterable<Task> {
+    private static final Priority[] PRIORITIES = Priority.values();
+    // Pooled text is squeezed once replaced and removed text is more than half of it
+    private static final int MIN_COMPACT_BYTES = 4096;
+    
+    private int size;
+    private int[] ids;
+    private long[] completed;
+    private byte[] priorities;
+    private int[] categories;
+    private int[] dueDays;
+    // Highest category id any task has had
+    private int maxCategory;
+    // Where each task's title starts in the pool, its description follows right after
+    private int[] textStarts;
+    // Byte lengths of the title and description, -1 for null
+    private int[] titleLengths;
+    private int[] descriptionLengths;
+    private byte[] text;
+    private int textEnd;
+    private int garbage;
+    // Due date text that is neither an ISO date nor "No due date", by id, which few tasks have
+    private final Map<Integer, String> dueTexts = new HashMap<>();
+    
+    public TaskColumns() {
+        this(16);
+    }
+    
+    public TaskColumns(int expectedSize) {
+        int capacity = Math.max(expectedSize, 16);
+        ids = new int[capacity];
+        completed = new long[(capacity + 63) >>> 6];
+        priorities = new byte[capacity];
+        categories = new int[capacity];
+        dueDays = new int[capacity];
+        textStarts = new int[capacity];
+        titleLengths = new int[capacity];
+        descriptionLengths = new int[capacity];
+        text = new byte[capacity * 32];
+    }
+    
+    // Columns holding a copy of every task
+    public static TaskColumns of(Collection<Task> tasks) {
+        TaskColumns columns = new TaskColumns(tasks.size());
+        for (Task task : tasks) {
+            columns.add(task);
+        }
+        return columns;
+    }
+    
+    public int size() {
+        return size;
+    }
+    
+    public boolean isEmpty() {
+        return size == 0;
+    }
+    
+    // Add a copy of a task in id order, replacing any task that already has the same id
+    public void add(Task task) {
+        int id = task.getId();
+        int position;
+        if (size == 0 || id > ids[size - 1]) {
+            position = size;
+            ensureRoom();
+            size++;
+        } else {
+            position = Arrays.binarySearch(ids, 0, size, id);
+            if (position >= 0) {
+                garbage += textLength(position);
+            } else {
+                position = -(position + 1);
+                ensureRoom();
+                shift(position, 1);
+                size++;
+            }
+        }
+        ids[position] = id;
+        setBit(position, task.isCompleted());
+        priorities[position] = (byte) task.getPriorityLevel().ordinal();
+        categories[position] = task.getCategoryId();
+        maxCategory = Math.max(maxCategory, task.getCategoryId());
+        dueDays[position] = task.getDueDay();
+        putText(position, task.getTitle(), task.getDescription());
+        String dueText = task.getDueText();
+        if (dueText == null || (dueText.equals(Task.NO_DUE_DATE) && task.getDueDay() == Task.NO_DUE_DAY)) {
+            dueTexts.remove(id);
+        } else {
+            dueTexts.put(id, dueText);
+        }
+    }
+    
+    // Remove a task by id and return whether there was one
+    public boolean remove(int id) {
+        int position = indexOf(id);
+        if (position < 0) {
+            return false;
+        }
+        garbage += textLength(position);
+        shift(position + 1, -1);
+        size--;
+        setBit(size, false);
+        dueTexts.remove(id);
+        compactIfNeeded();
+        return true;
+    }
+    
+    // Set the completion of a task in place, returns false if there is no task with the id
+    public boolean setCompleted(int id, boolean done) {
+        int position = indexOf(id);
+        if (position < 0) {
+            return false;
+        }
+        setBit(position, done);
+        return true;
+    }
+    
+    public void clear() {
+        size = 0;
+        Arrays.fill(completed, 0L);
+        textEnd = 0;
+        garbage = 0;
+        dueTexts.clear();
+    }
+    
+    // Position of a task, or -1 if there is none with the id
+    public int indexOf(int id) {
+        int position = Arrays.binarySearch(ids, 0, size, id);
+        return position >= 0 ? position : -1;
+    }
+    
+    public boolean contains(int id) {
+        return indexOf(id) >= 0;
+    }
+    
+    // A Task built from the columns, or null if there is none with the id
+    public Task get(int id) {
+        int position = indexOf(id);
+        return position >= 0 ? build(position) : null;
+    }
+    
+    // A Task built from the columns at a position
+    public Task getAt(int position) {
+        checkPosition(position);
+        return build(position);
+    }
+    
+    // Column values at a position, read without building a Task
+    public int idAt(int position) {
+        checkPosition(position);
+        return ids[position];
+    }
+    
+    public boolean isCompletedAt(int position) {
+        checkPosition(position);
+        return bit(position);
+    }
+    
+    public Priority priorityAt(int position) {
+        checkPosition(position);
+        return PRIORITIES[priorities[position]];
+    }
+    
+    public int categoryIdAt(int position) {
+        checkPosition(position);
+        return categories[position];
+    }
+    
+    public int dueDayAt(int position) {
+        checkPosition(position);
+        return dueDays[position];
+    }
+    
+    public String titleAt(int position) {
+        checkPosition(position);
+        return decode(textStarts[position], titleLengths[position]);
+    }
+    
+    public String descriptionAt(int position) {
+        checkPosition(position);
+        return decode(textStarts[position] + Math.max(titleLengths[position], 0), descriptionLengths[position]);
+    }
+    
+    // Count every task into a new TaskStatistics
+    public TaskStatistics statistics() {
+        return statistics(new TaskStatistics());
+    }
+    
+    // Count every task into a caller-owned instance, replacing its counts
+    public TaskStatistics statistics(TaskStatistics into) {
+        int done = 0;
+        for (int i = 0, words = (size + 63) >>> 6; i < words; i++) {
+            done += Long.bitCount(completed[i]);
+        }
+        int[] byPriority = new int[PRIORITIES.length];
+        // Counted by category id first, there are only a handful, then folded into case-insensitive keys
+        int[] byCategory = new int[16];
+        for (int i = 0; i < size; i++) {
+            byPriority[priorities[i]]++;
+            int category = categories[i];
+            if (category >= byCategory.length) {
+                byCategory = Arrays.copyOf(byCategory, Math.max(category + 1, byCategory.length * 2));
+            }
+            byCategory[category]++;
+        }
+        into.clear();
+        into.restore(size, done, byPriority[Priority.HIGH.ordinal()], byPriority[Priority.MEDIUM.ordinal()],
+                     byPriority[Priority.LOW.ordinal()]);
+        for (int category = 0; category < byCategory.length; category++) {
+            if (byCategory[category] > 0) {
+                into.addCategory(CategoryRegistry.keyOf(category), byCategory[category]);
+            }
+        }
+        return into;
+    }
+    
+    // Number of tasks the filter matches, counted from the columns alone
+    public int count(TaskFilter filter) {
+        boolean[] categoryMatches = categoryMatches(filter);
+        int matches = 0;
+        for (int i = 0; i < size; i++) {
+            if (matches(i, filter, categoryMatches)) {
+                matches++;
+            }
+        }
+        return matches;
+    }
+    
+    // Build the tasks the filter matches, in id order
+    public ArrayList<Task> select(TaskFilter filter) {
+        boolean[] categoryMatches = categoryMatches(filter);
+        ArrayList<Task> result = new ArrayList<>();
+        for (int i = 0; i < size; i++) {
+            if (matches(i, filter, categoryMatches)) {
+                result.add(build(i));
+            }
+        }
+        return result;
+    }
+    
+    // A read-only positional view that builds each task as it is read, for running a TaskQuery
+    public List<Task> asList() {
+        return new ColumnList();
+    }
+    
+    // Builds each task as it is reached
+    public Iterator<Task> iterator() {
+        return new Iterator<Task>() {
+            private int next;
+            
+            public boolean hasNext() {
+                return next < size;
+            }
+            
+            public Task next() {
+                if (next >= size) {
+                    throw new NoSuchElementException();
+                }
+                return build(next++);
+            }
+        };
+    }
+    
+    private boolean matches(int position, TaskFilter filter, boolean[] categoryMatches) {
+        Boolean status = filter.getCompleted();
+        if (status != null && bit(position) != status) {
+            return false;
+        }
+        Priority priority = filter.getPriority();
+        if (priority != null && priorities[position] != priority.ordinal()) {
+            return false;
+        }
+        return categoryMatches == null || categoryMatches[categories[position]];
+    }
+    
+    // Which category ids the filter accepts, looked up once per scan instead of once per task; null for any
+    private boolean[] categoryMatches(TaskFilter filter) {
+        if (filter.getCategory() == null) {
+            return null;
+        }
+        boolean[] result = new boolean[maxCategory + 1];
+        int key = filter.categoryKey();
+        for (int category = 0; category <= maxCategory; category++) {
+            result[category] = CategoryRegistry.keyOf(category) == key;
+        }
+        return result;
+    }
+    
+    private Task build(int position) {
+        String dueText = dueTexts.get(ids[position]);
+        return Task.of(ids[position], titleAt(position), descriptionAt(position), bit(position),
+                       PRIORITIES[priorities[position]], dueDays[position], dueText, categories[position]);
+    }
+    
+    private void checkPosition(int position) {
+        if (position < 0 || position >= size) {
+            throw new IndexOutOfBoundsException("Index: " + position + ", Size: " + size);
+        }
+    }
+    
+    // Move every column from a position to the end by delta places, completion bits included
+    private void shift(int from, int delta) {
+        int count = size - from;
+        System.arraycopy(ids, from, ids, from + delta, count);
+        System.arraycopy(priorities, from, priorities, from + delta, count);
+        System.arraycopy(categories, from, categories, from + delta, count);
+        System.arraycopy(dueDays, from, dueDays, from + delta, count);
+        System.arraycopy(textStarts, from, textStarts, from + delta, count);
+        System.arraycopy(titleLengths, from, titleLengths, from + delta, count);
+        System.arraycopy(descriptionLengths, from, descriptionLengths, from + delta, count);
+        if (delta > 0) {
+            for (int i = size - 1; i >= from; i--) {
+                setBit(i + delta, bit(i));
+            }
+        } else {
+            for (int i = from; i < size; i++) {
+                setBit(i + delta, bit(i));
+            }
+        }
+    }
+    
+    // Make room for one more task at the end
+    private void ensureRoom() {
+        if (size == ids.length) {
+            int capacity = ids.length + (ids.length >> 1);
+            ids = Arrays.copyOf(ids, capacity);
+            completed = Arrays.copyOf(completed, (capacity + 63) >>> 6);
+            priorities = Arrays.copyOf(priorities, capacity);
+            categories = Arrays.copyOf(categories, capacity);
+            dueDays = Arrays.copyOf(dueDays, capacity);
+            textStarts = Arrays.copyOf(textStarts, capacity);
+            titleLengths = Arrays.copyOf(titleLengths, capacity);
+            descriptionLengths = Arrays.copyOf(descriptionLengths, capacity);
+        }
+    }
+    
+    private boolean bit(int position) {
+        return (completed[position >>> 6] & (1L << position)) != 0;
+    }
+    
+    private void setBit(int position, boolean value) {
+        if (value) {
+            completed[position >>> 6] |= 1L << position;
+        } else {
+            completed[position >>> 6] &= ~(1L << position);
+        }
+    }
+    
+    // Append a title and description to the pool, the text they replace is left as garbage
+    private void putText(int position, String title, String description) {
+        byte[] titleBytes = title != null ? title.getBytes(StandardCharsets.UTF_8) : null;
+        byte[] descriptionBytes = description != null ? description.getBytes(StandardCharsets.UTF_8) : null;
+        int titleLength = titleBytes != null ? titleBytes.length : 0;
+        int descriptionLength = descriptionBytes != null ? descriptionBytes.length : 0;
+        if (textEnd + titleLength + descriptionLength > text.length) {
+            text = Arrays.copyOf(text, Math.max(textEnd + titleLength + descriptionLength, text.length * 2));
+        }
+        textStarts[position] = textEnd;
+        titleLengths[position] = titleBytes != null ? titleLength : -1;
+        descriptionLengths[position] = descriptionBytes != null ? descriptionLength : -1;
+        if (titleBytes != null) {
+            System.arraycopy(titleBytes, 0, text, textEnd, titleLength);
+            textEnd += titleLength;
+        }
+        if (descriptionBytes != null) {
+            System.arraycopy(descriptionBytes, 0, text, textEnd, descriptionLength);
+            textEnd += descriptionLength;
+        }
+        compactIfNeeded();
+    }
+    
+    private int textLength(int position) {
+        return Math.max(titleLengths[position], 0) + Math.max(descriptionLengths[position], 0);
+    }
+    
+    private String decode(int start, int length) {
+        return length < 0 ? null : new String(text, start, length, StandardCharsets.UTF_8);
+    }
+    
+    // Copy the live text into a fresh pool in position order, once most of the pool is garbage
+    private void compactIfNeeded() {
+        if (garbage < MIN_COMPACT_BYTES || garbage * 2 < textEnd) {
+            return;
+        }
+        byte[] live = new byte[Math.max(textEnd - garbage, 64) + (textEnd - garbage) / 2];
+        int end = 0;
+        for (int i = 0; i < size; i++) {
+            int length = textLength(i);
+            System.arraycopy(text, textStarts[i], live, end, length);
+            textStarts[i] = end;
+            end += length;
+        }
+        text = live;
+        textEnd = end;
+        garbage = 0;
+    }
+    
+    private final class ColumnList extends AbstractList<Task> implements RandomAccess {
+        public Task get(int index) {
+            return getAt(index);
+        }
+        
+        public int size() {
+            return size;
+        }
+    }
+}
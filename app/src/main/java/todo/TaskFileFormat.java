@@ -0,0 +1,828 @@
+package todo;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileSystemException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.zip.CRC32;
+
+/**
+ * TaskFileFormat reads and writes the task snapshot file
+ *
+ * Layout (all integers are unsigned LEB128 varints unless noted):
+ *   magic "TODO" (4 bytes), version (2 bytes), header length (4 bytes)
+ *   header: nextId, generation, task count, dictionary size, dictionary strings,
+ *           completed/high/medium/low counts, per-category counts
+ *   header CRC32 (4 bytes)
+ *   position of the offset index (8 bytes)
+ *   blocks of up to 1024 records: magic "TBLK", record count, payload length
+ *           and payload CRC32 (4 bytes each), then the records
+ *   records: id, completed flag (1 byte), priority, category and due date as
+ *            dictionary references, title, description
+ *   offset index: id (4 bytes) and record position (8 bytes) per task
+ *   footer: a copy of the header, its length and CRC32, the index CRC32 (4
+ *           bytes each), the index position (8 bytes), magic "ODOT"
+ *
+ * Priorities, categories and due dates repeat a lot, so each distinct value is
+ * stored once in the dictionary and records refer to it by index. Strings are
+ * written as length + 1 followed by UTF-8 bytes, with 0 meaning null.
+ *
+ * The counts in the header and the fixed-width offset index let a file be
+ * opened without decoding a single record, see MappedTaskFile. Opening one
+ * checks the header, footer and index checksums and walks the block headers,
+ * but leaves each block's checksum until MappedTaskFile first decodes a task
+ * from it. If an opening check fails, the file is salvaged instead: every
+ * block whose checksum holds is decoded, damaged ones are skipped by scanning
+ * for the next block magic, and the header is taken from whichever copy is
+ * intact.
+ *
+ * A mapped file stays mapped until its buffer is garbage collected, and
+ * Windows will not rename over a mapped file. Whoever replaces a file must
+ * first drop its MappedTaskFile (TaskStore.loadAll does), and replace retries
+ * the rename after a collection before giving up.
+ *
+ * A file too large to map is read block by block through its channel
+ * instead, eagerly, with damaged blocks skipped the same way.
+ *
+ * Files written with Java serialization by older versions are still read,
+ * eagerly.
+ */
+public class TaskFileFormat {
+    private static final byte[] MAGIC = {'T', 'O', 'D', 'O'};
+    private static final byte[] BLOCK_MAGIC = {'T', 'B', 'L', 'K'};
+    private static final byte[] FOOTER_MAGIC = {'O', 'D', 'O', 'T'};
+    private static final int VERSION = 3;
+    private static final int BUFFER_SIZE = 64 * 1024;
+    static final int INDEX_ENTRY_SIZE = 12;
+    // Magic, version and header length
+    private static final int HEAD_SIZE = 10;
+    // Tasks per checksummed block, a damaged block loses at most this many
+    static final int BLOCK_RECORDS = 1024;
+    // Magic, record count, payload length and CRC32
+    private static final int BLOCK_HEADER_SIZE = 16;
+    // Header length, header CRC32, index CRC32, index position and magic
+    private static final int FOOTER_SIZE = 24;
+    // Renames tried before replace gives up on a file that is still mapped
+    private static final int REPLACE_ATTEMPTS = 3;
+    
+    /**
+     * Contents of a snapshot file
+     * Either tasks holds every task, or mapped gives lazy access to them
+     */
+    public static class Snapshot {
+        public final List<Task> tasks;
+        public final MappedTaskFile mapped;
+        // Counts stored in the header, null for older files
+        public final TaskStatistics statistics;
+        public final int nextId;
+        public final long generation;
+        // True when the file was in the old Java serialization format
+        public final boolean legacy;
+        // True when part of the file was damaged and only its intact blocks were read
+        public final boolean salvaged;
+        // Tasks the header counted that were in damaged blocks and could not be recovered
+        public final int lost;
+        
+        Snapshot(List<Task> tasks, MappedTaskFile mapped, TaskStatistics statistics,
+                 int nextId, long generation, boolean legacy, boolean salvaged, int lost) {
+            this.tasks = tasks;
+            this.mapped = mapped;
+            this.statistics = statistics;
+            this.nextId = nextId;
+            this.generation = generation;
+            this.legacy = legacy;
+            this.salvaged = salvaged;
+            this.lost = lost;
+        }
+    }
+    
+    // Write tasks to a file, replacing its contents, and force them to disk
+    public static void write(File file, Collection<Task> tasks, int nextId, long generation) throws IOException {
+        // First pass: collect the distinct repeated strings and the counts
+        Map<String, Integer> dictionary = new LinkedHashMap<>();
+        TaskStatistics stats = new TaskStatistics();
+        for (Task task : tasks) {
+            intern(dictionary, task.getPriority());
+            intern(dictionary, task.getCategory());
+            intern(dictionary, task.getDueDate());
+            stats.add(task);
+        }
+        
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            Writer out = new Writer(channel);
+            
+            Writer header = new Writer(null);
+            header.varLong(nextId);
+            header.varLong(generation);
+            header.varLong(tasks.size());
+            header.varLong(dictionary.size());
+            for (String value : dictionary.keySet()) {
+                header.string(value);
+            }
+            header.varLong(stats.getCompleted());
+            header.varLong(stats.getPriorityCount(Priority.HIGH));
+            header.varLong(stats.getPriorityCount(Priority.MEDIUM));
+            header.varLong(stats.getPriorityCount(Priority.LOW));
+            int[] categories = stats.categoryCounts();
+            int used = 0;
+            for (int count : categories) {
+                if (count != 0) {
+                    used++;
+                }
+            }
+            header.varLong(used);
+            for (int key = 0; key < categories.length; key++) {
+                if (categories[key] != 0) {
+                    header.string(CategoryRegistry.nameOf(key));
+                    header.varLong(categories[key]);
+                }
+            }
+            byte[] headerBytes = header.toByteArray();
+            int headerCrc = crc(headerBytes);
+            
+            out.bytes(MAGIC, 0, MAGIC.length);
+            out.ensure(6);
+            out.buffer.putShort((short) VERSION);
+            out.buffer.putInt(headerBytes.length);
+            out.bytes(headerBytes, 0, headerBytes.length);
+            out.ensure(12);
+            out.buffer.putInt(headerCrc);
+            long indexSlot = out.position();
+            out.buffer.putLong(0);
+            
+            // Second pass: the records, in checksummed blocks
+            int[] ids = new int[tasks.size()];
+            long[] offsets = new long[tasks.size()];
+            int n = 0;
+            Writer block = new Writer(null);
+            int[] blockOffsets = new int[BLOCK_RECORDS];
+            int inBlock = 0;
+            for (Task task : tasks) {
+                ids[n] = task.getId();
+                blockOffsets[inBlock++] = block.buffer.position();
+                block.varLong(task.getId() & 0xFFFFFFFFL);
+                block.ensure(1);
+                block.buffer.put((byte) (task.isCompleted() ? 1 : 0));
+                block.varLong(reference(dictionary, task.getPriority()));
+                block.varLong(reference(dictionary, task.getCategory()));
+                block.varLong(reference(dictionary, task.getDueDate()));
+                block.string(task.getTitle());
+                block.string(task.getDescription());
+                if (inBlock == BLOCK_RECORDS || n == ids.length - 1) {
+                    long payload = writeBlock(out, block, inBlock);
+                    for (int i = 0; i < inBlock; i++) {
+                        offsets[n - inBlock + 1 + i] = payload + blockOffsets[i];
+                    }
+                    block.buffer.clear();
+                    inBlock = 0;
+                }
+                n++;
+            }
+            
+            // The offset index, checksummed in chunks as it is written
+            long indexPosition = out.position();
+            CRC32 indexCrc = new CRC32();
+            byte[] entries = new byte[BLOCK_RECORDS * INDEX_ENTRY_SIZE];
+            ByteBuffer chunk = ByteBuffer.wrap(entries);
+            for (int i = 0; i < n; i++) {
+                chunk.putInt(ids[i]);
+                chunk.putLong(offsets[i]);
+                if (!chunk.hasRemaining() || i == n - 1) {
+                    indexCrc.update(entries, 0, chunk.position());
+                    out.bytes(entries, 0, chunk.position());
+                    chunk.clear();
+                }
+            }
+            
+            // A second copy of the header, so the dictionary survives damage to the start of the file
+            out.bytes(headerBytes, 0, headerBytes.length);
+            out.ensure(FOOTER_SIZE);
+            out.buffer.putInt(headerBytes.length);
+            out.buffer.putInt(headerCrc);
+            out.buffer.putInt((int) indexCrc.getValue());
+            out.buffer.putLong(indexPosition);
+            out.bytes(FOOTER_MAGIC, 0, FOOTER_MAGIC.length);
+            out.drain();
+            
+            ByteBuffer slot = ByteBuffer.allocate(8);
+            slot.putLong(0, indexPosition);
+            channel.write(slot, indexSlot);
+            channel.force(true);
+        }
+    }
+    
+    // Replace a file without ever leaving it half written: write a temporary file, force it, then rename it over
+    public static void replace(File file, Collection<Task> tasks, int nextId, long generation) throws IOException {
+        File temp = new File(file.getPath() + ".tmp");
+        write(temp, tasks, nextId, generation);
+        for (int attempt = 1; ; attempt++) {
+            try {
+                move(temp, file);
+                break;
+            } catch (FileSystemException e) {
+                // Windows refuses to replace a file that is still mapped, and Java only unmaps a buffer once it
+                // is collected. Callers drop their MappedTaskFile first, so collecting lets the rename through.
+                if (attempt == REPLACE_ATTEMPTS) {
+                    throw e;
+                }
+                System.gc();
+                try {
+                    Thread.sleep(50L * attempt);
+                } catch (InterruptedException interrupted) {
+                    Thread.currentThread().interrupt();
+                    throw e;
+                }
+            }
+        }
+        // The rename itself is only durable once the directory is
+        File directory = file.getAbsoluteFile().getParentFile();
+        try (FileChannel channel = FileChannel.open(directory.toPath(), StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException e) {
+            // Some platforms cannot open a directory; the rename is still atomic there
+        }
+    }
+    
+    private static void move(File from, File to) throws IOException {
+        try {
+            Files.move(from.toPath(), to.toPath(), StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(from.toPath(), to.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+    
+    // Write a block header and its records, returns the file position of the first record
+    private static long writeBlock(Writer out, Writer block, int records) throws IOException {
+        byte[] payload = block.buffer.array();
+        int length = block.buffer.position();
+        CRC32 crc = new CRC32();
+        crc.update(payload, 0, length);
+        out.bytes(BLOCK_MAGIC, 0, BLOCK_MAGIC.length);
+        out.ensure(BLOCK_HEADER_SIZE - BLOCK_MAGIC.length);
+        out.buffer.putInt(records);
+        out.buffer.putInt(length);
+        out.buffer.putInt((int) crc.getValue());
+        long position = out.position();
+        out.bytes(payload, 0, length);
+        return position;
+    }
+    
+    // Read a snapshot file, lazily for the current format
+    public static Snapshot read(File file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            Reader in = new Reader(channel);
+            if (!in.fill(4)) {
+                throw new EOFException("Task file is empty");
+            }
+            int b0 = in.buffer.get(0) & 0xFF;
+            int b1 = in.buffer.get(1) & 0xFF;
+            if (b0 == 0xAC && b1 == 0xED) {
+                return readLegacy(file);
+            }
+            
+            byte[] magic = in.bytes(MAGIC.length);
+            if (!Arrays.equals(magic, MAGIC)) {
+                throw new IOException("Not a task file");
+            }
+            in.require(2);
+            int version = in.buffer.getShort() & 0xFFFF;
+            if (version != VERSION) {
+                throw new IOException("Unsupported task file version " + version);
+            }
+            return readMapped(channel);
+        }
+    }
+    
+    /**
+     * Fields of a snapshot header
+     */
+    private static class Header {
+        final int nextId;
+        final long generation;
+        final int count;
+        final String[] dictionary;
+        final TaskStatistics statistics;
+        
+        Header(byte[] bytes) throws IOException {
+            Reader header = new Reader(ByteBuffer.wrap(bytes));
+            nextId = (int) header.varLong();
+            generation = header.varLong();
+            count = (int) header.varLong();
+            dictionary = new String[(int) header.varLong()];
+            for (int i = 0; i < dictionary.length; i++) {
+                dictionary[i] = header.string();
+            }
+            statistics = new TaskStatistics();
+            int completed = (int) header.varLong();
+            int high = (int) header.varLong();
+            int medium = (int) header.varLong();
+            int low = (int) header.varLong();
+            statistics.restore(count, completed, high, medium, low);
+            int categories = (int) header.varLong();
+            for (int i = 0; i < categories; i++) {
+                String key = header.string();
+                statistics.restoreCategory(key, (int) header.varLong());
+            }
+        }
+    }
+    
+    // Map a file and check its header, footer, index and block layout; if any fails, salvage the blocks that are intact
+    private static Snapshot readMapped(FileChannel channel) throws IOException {
+        long size = channel.size();
+        if (size > Integer.MAX_VALUE) {
+            return readStreamed(channel);
+        }
+        MappedByteBuffer file = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+        
+        // The header at the start, or its copy in the footer
+        byte[] headBytes = headHeader(file);
+        byte[] footBytes = footHeader(file);
+        byte[] headerBytes = headBytes != null ? headBytes : footBytes;
+        if (headerBytes == null) {
+            throw new IOException("Task file header is corrupt");
+        }
+        Header header = new Header(headerBytes);
+        
+        if (headBytes != null && footBytes != null) {
+            int dataStart = HEAD_SIZE + headBytes.length + 12;
+            long indexPosition = file.getLong(dataStart - 8);
+            int footer = file.limit() - FOOTER_SIZE;
+            if (indexPosition == file.getLong(footer + 12)
+                && indexPosition + (long) header.count * INDEX_ENTRY_SIZE == footer - footBytes.length
+                && crc(file, (int) indexPosition, header.count * INDEX_ENTRY_SIZE) == file.getInt(footer + 8)
+                && blocksChained(file, dataStart, (int) indexPosition, header.count)) {
+                return new Snapshot(null, new MappedTaskFile(file, header.dictionary, header.count, (int) indexPosition),
+                                    header.statistics, header.nextId, header.generation, false, false, 0);
+            }
+        }
+        
+        ArrayList<Task> tasks = salvage(file, header.dictionary);
+        return new Snapshot(tasks, null, null, header.nextId, header.generation, false, true,
+                            Math.max(header.count - tasks.size(), 0));
+    }
+    
+    // Read a file block by block, decoding every task; blocks that fail their checksum are counted as lost
+    static Snapshot readStreamed(FileChannel channel) throws IOException {
+        long size = channel.size();
+        // The header at the start, and where its index position says the blocks end
+        byte[] headBytes = null;
+        long headIndex = -1;
+        if (size >= HEAD_SIZE) {
+            int length = readAt(channel, 6, 4).getInt();
+            if (length >= 0 && HEAD_SIZE + length + 12L <= size) {
+                ByteBuffer head = readAt(channel, HEAD_SIZE, length + 12);
+                byte[] bytes = new byte[length];
+                head.get(bytes);
+                if (crc(bytes) == head.getInt()) {
+                    headBytes = bytes;
+                    headIndex = head.getLong();
+                }
+            }
+        }
+        // Its copy in the footer
+        byte[] footBytes = null;
+        long footIndex = -1;
+        if (size >= HEAD_SIZE + FOOTER_SIZE) {
+            ByteBuffer footer = readAt(channel, size - FOOTER_SIZE, FOOTER_SIZE);
+            int length = footer.getInt(0);
+            if (isFooterMagic(footer, 20) && length >= 0 && length <= size - FOOTER_SIZE - HEAD_SIZE) {
+                byte[] bytes = new byte[length];
+                readAt(channel, size - FOOTER_SIZE - length, length).get(bytes);
+                if (crc(bytes) == footer.getInt(4)) {
+                    footBytes = bytes;
+                    footIndex = footer.getLong(12);
+                }
+            }
+        }
+        byte[] headerBytes = headBytes != null ? headBytes : footBytes;
+        if (headerBytes == null) {
+            throw new IOException("Task file header is corrupt");
+        }
+        Header header = new Header(headerBytes);
+        
+        long position = HEAD_SIZE + headerBytes.length + 12;
+        long end = footBytes != null ? footIndex : headIndex;
+        if (end < position || end > size) {
+            end = size - FOOTER_SIZE;
+        }
+        ArrayList<Task> tasks = new ArrayList<>(header.count);
+        while (position + BLOCK_HEADER_SIZE <= end) {
+            ByteBuffer block = readAt(channel, position, BLOCK_HEADER_SIZE);
+            int records = block.getInt(4);
+            int length = block.getInt(8);
+            if (!isBlockMagic(block, 0) || records <= 0 || records > BLOCK_RECORDS
+                || length < 0 || length > end - position - BLOCK_HEADER_SIZE) {
+                // Without a block header to go by, the rest of the file is lost
+                break;
+            }
+            ByteBuffer payload = readAt(channel, position + BLOCK_HEADER_SIZE, length);
+            if (crc(payload, 0, length) == block.getInt(12)) {
+                int before = tasks.size();
+                try {
+                    Reader in = new Reader(payload);
+                    for (int i = 0; i < records; i++) {
+                        tasks.add(readRecord(in, (int) in.varLong(), header.dictionary));
+                    }
+                } catch (IOException | RuntimeException e) {
+                    tasks.subList(before, tasks.size()).clear();
+                }
+            }
+            position += BLOCK_HEADER_SIZE + length;
+        }
+        int lost = Math.max(header.count - tasks.size(), 0);
+        boolean salvaged = lost > 0 || headBytes == null || footBytes == null;
+        return new Snapshot(tasks, null, null, header.nextId, header.generation, false, salvaged, lost);
+    }
+    
+    // Read bytes at a position of a channel, failing if the file ends first
+    private static ByteBuffer readAt(FileChannel channel, long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new EOFException("Task file ends unexpectedly");
+            }
+        }
+        buffer.flip();
+        return buffer;
+    }
+    
+    private static boolean isFooterMagic(ByteBuffer file, int position) {
+        for (int i = 0; i < FOOTER_MAGIC.length; i++) {
+            if (file.get(position + i) != FOOTER_MAGIC[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    // The header at the start of a file, or null if it is damaged
+    private static byte[] headHeader(ByteBuffer file) {
+        if (file.limit() < HEAD_SIZE) {
+            return null;
+        }
+        int length = file.getInt(6);
+        if (length < 0 || (long) HEAD_SIZE + length + 12 > file.limit()) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        ByteBuffer view = file.duplicate();
+        view.position(HEAD_SIZE);
+        view.get(bytes);
+        return crc(bytes) == file.getInt(HEAD_SIZE + length) ? bytes : null;
+    }
+    
+    // The copy of the header in the footer, or null if the footer is damaged or was cut off
+    private static byte[] footHeader(ByteBuffer file) {
+        int footer = file.limit() - FOOTER_SIZE;
+        if (footer < HEAD_SIZE) {
+            return null;
+        }
+        if (!isFooterMagic(file, footer + 20)) {
+            return null;
+        }
+        int length = file.getInt(footer);
+        if (length < 0 || length > footer - HEAD_SIZE) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        ByteBuffer view = file.duplicate();
+        view.position(footer - length);
+        view.get(bytes);
+        return crc(bytes) == file.getInt(footer + 4) ? bytes : null;
+    }
+    
+    // Whether block headers follow one another from a position up to the offset index and hold the expected number
+    // of tasks, full blocks but the last; their checksums are left to blockIntact
+    private static boolean blocksChained(ByteBuffer file, int position, int end, int count) {
+        int records = 0;
+        while (position < end) {
+            int length = blockLength(file, position, end, false);
+            if (length < 0 || (records + BLOCK_RECORDS < count && file.getInt(position + 4) != BLOCK_RECORDS)) {
+                return false;
+            }
+            records += file.getInt(position + 4);
+            position += BLOCK_HEADER_SIZE + length;
+        }
+        return position == end && records == count;
+    }
+    
+    // Whether the checksum holds for the block whose first record is at a position, see MappedTaskFile
+    static boolean blockIntact(ByteBuffer file, int firstRecord) {
+        return blockLength(file, firstRecord - BLOCK_HEADER_SIZE, file.limit(), true) >= 0;
+    }
+    
+    // Payload length of a block at a position, or -1 if there is no block there or its checksum is checked and fails
+    private static int blockLength(ByteBuffer file, int position, int end, boolean checksum) {
+        if (position < 0 || position + BLOCK_HEADER_SIZE > end || !isBlockMagic(file, position)) {
+            return -1;
+        }
+        int records = file.getInt(position + 4);
+        int length = file.getInt(position + 8);
+        if (records <= 0 || records > BLOCK_RECORDS || length < 0 || length > end - position - BLOCK_HEADER_SIZE) {
+            return -1;
+        }
+        return !checksum || crc(file, position + BLOCK_HEADER_SIZE, length) == file.getInt(position + 12) ? length : -1;
+    }
+    
+    private static boolean isBlockMagic(ByteBuffer file, int position) {
+        for (int i = 0; i < BLOCK_MAGIC.length; i++) {
+            if (file.get(position + i) != BLOCK_MAGIC[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    // Decode every intact block of a damaged file, skipping ahead to the next block marker past any damage
+    private static ArrayList<Task> salvage(ByteBuffer file, String[] dictionary) {
+        ArrayList<Task> tasks = new ArrayList<>();
+        int end = file.limit();
+        int position = HEAD_SIZE;
+        while (position + BLOCK_HEADER_SIZE <= end) {
+            int length = blockLength(file, position, end, true);
+            if (length >= 0) {
+                int size = tasks.size();
+                try {
+                    ByteBuffer view = file.duplicate();
+                    view.position(position + BLOCK_HEADER_SIZE);
+                    Reader in = new Reader(view);
+                    for (int i = file.getInt(position + 4); i > 0; i--) {
+                        tasks.add(readRecord(in, (int) in.varLong(), dictionary));
+                    }
+                    position += BLOCK_HEADER_SIZE + length;
+                    continue;
+                } catch (IOException | RuntimeException e) {
+                    // A checksum collision on garbage, drop what the block gave and keep scanning
+                    tasks.subList(size, tasks.size()).clear();
+                }
+            }
+            position++;
+        }
+        return tasks;
+    }
+    
+    // Decode the task stored at a position of a mapped file, records start with their id
+    static Task readRecord(ByteBuffer file, int position, int id, String[] dictionary) throws IOException {
+        ByteBuffer view = file.duplicate();
+        view.position(position);
+        Reader in = new Reader(view);
+        if ((int) in.varLong() != id) {
+            throw new IOException("Task record does not match the index");
+        }
+        return readRecord(in, id, dictionary);
+    }
+    
+    // Decode the fields of a record after its id
+    private static Task readRecord(Reader in, int id, String[] dictionary) throws IOException {
+        in.require(1);
+        boolean completed = in.buffer.get() != 0;
+        String priority = dereference(dictionary, in.varLong());
+        String category = dereference(dictionary, in.varLong());
+        String dueDate = dereference(dictionary, in.varLong());
+        String title = in.string();
+        String description = in.string();
+        Task task = new Task(id, title, description, priority, dueDate, category);
+        task.setCompleted(completed);
+        return task;
+    }
+    
+    // Read a file written with Java serialization by earlier versions
+    @SuppressWarnings("unchecked")
+    private static Snapshot readLegacy(File file) throws IOException {
+        try (ObjectInputStream ois = new LegacyObjectInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            ArrayList<Task> tasks = (ArrayList<Task>) ois.readObject();
+            int nextId = ois.readInt();
+            long generation;
+            try {
+                generation = ois.readLong();
+            } catch (EOFException e) {
+                // Snapshot written before the journal existed
+                generation = 0;
+            }
+            return new Snapshot(tasks, null, null, nextId, generation, true, false, 0);
+        } catch (ClassNotFoundException e) {
+            throw new IOException(e.getMessage(), e);
+        }
+    }
+    
+    /**
+     * Older versions kept Task in the default package, map it to the current class
+     */
+    private static class LegacyObjectInputStream extends ObjectInputStream {
+        LegacyObjectInputStream(InputStream in) throws IOException {
+            super(in);
+        }
+        
+        @Override
+        protected Class<?> resolveClass(ObjectStreamClass desc) throws IOException, ClassNotFoundException {
+            if (desc.getName().equals("Task")) {
+                return Task.class;
+            }
+            return super.resolveClass(desc);
+        }
+    }
+    
+    private static int crc(byte[] bytes) {
+        CRC32 crc = new CRC32();
+        crc.update(bytes, 0, bytes.length);
+        return (int) crc.getValue();
+    }
+    
+    private static int crc(ByteBuffer file, int position, int length) {
+        ByteBuffer view = file.duplicate();
+        view.position(position);
+        view.limit(position + length);
+        CRC32 crc = new CRC32();
+        crc.update(view);
+        return (int) crc.getValue();
+    }
+    
+    private static void intern(Map<String, Integer> dictionary, String value) {
+        if (value != null && !dictionary.containsKey(value)) {
+            dictionary.put(value, dictionary.size());
+        }
+    }
+    
+    // Dictionary references are index + 1, with 0 meaning null
+    private static long reference(Map<String, Integer> dictionary, String value) {
+        return value == null ? 0 : dictionary.get(value) + 1;
+    }
+    
+    private static String dereference(String[] dictionary, long reference) throws IOException {
+        if (reference == 0) {
+            return null;
+        }
+        if (reference > dictionary.length) {
+            throw new IOException("Bad dictionary reference " + reference);
+        }
+        return dictionary[(int) reference - 1];
+    }
+    
+    /**
+     * Buffered writer over a FileChannel, or over memory when the channel is null
+     */
+    private static class Writer {
+        final FileChannel channel;
+        ByteBuffer buffer;
+        long written;
+        
+        Writer(FileChannel channel) {
+            this.channel = channel;
+            this.buffer = channel != null ? ByteBuffer.allocateDirect(BUFFER_SIZE) : ByteBuffer.allocate(256);
+        }
+        
+        // Make room for n more bytes
+        void ensure(int n) throws IOException {
+            if (buffer.remaining() >= n) {
+                return;
+            }
+            if (channel != null) {
+                drain();
+            }
+            if (buffer.remaining() < n) {
+                ByteBuffer bigger = channel != null
+                        ? ByteBuffer.allocateDirect(buffer.position() + n)
+                        : ByteBuffer.allocate(Math.max(buffer.capacity() * 2, buffer.position() + n));
+                buffer.flip();
+                bigger.put(buffer);
+                buffer = bigger;
+            }
+        }
+        
+        void drain() throws IOException {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                written += channel.write(buffer);
+            }
+            buffer.clear();
+        }
+        
+        // Position in the file of the next byte written
+        long position() {
+            return written + buffer.position();
+        }
+        
+        void varLong(long value) throws IOException {
+            ensure(10);
+            while ((value & ~0x7FL) != 0) {
+                buffer.put((byte) ((value & 0x7F) | 0x80));
+                value >>>= 7;
+            }
+            buffer.put((byte) value);
+        }
+        
+        void bytes(byte[] bytes, int offset, int length) throws IOException {
+            if (channel != null && length > BUFFER_SIZE) {
+                drain();
+                ByteBuffer direct = ByteBuffer.wrap(bytes, offset, length);
+                while (direct.hasRemaining()) {
+                    written += channel.write(direct);
+                }
+                return;
+            }
+            ensure(length);
+            buffer.put(bytes, offset, length);
+        }
+        
+        void string(String value) throws IOException {
+            if (value == null) {
+                varLong(0);
+                return;
+            }
+            byte[] utf8 = value.getBytes(StandardCharsets.UTF_8);
+            varLong(utf8.length + 1L);
+            bytes(utf8, 0, utf8.length);
+        }
+        
+        byte[] toByteArray() {
+            return Arrays.copyOf(buffer.array(), buffer.position());
+        }
+    }
+    
+    /**
+     * Buffered reader over a FileChannel, or over a fixed buffer when the channel is null
+     */
+    static class Reader {
+        final FileChannel channel;
+        final ByteBuffer buffer;
+        
+        Reader(FileChannel channel) {
+            this.channel = channel;
+            this.buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+            buffer.limit(0);
+        }
+        
+        Reader(ByteBuffer buffer) {
+            this.channel = null;
+            this.buffer = buffer;
+        }
+        
+        // Try to have at least n bytes buffered, returns false at end of file
+        boolean fill(int n) throws IOException {
+            if (buffer.remaining() >= n) {
+                return true;
+            }
+            if (channel == null) {
+                return false;
+            }
+            buffer.compact();
+            while (buffer.position() < n) {
+                if (channel.read(buffer) < 0) {
+                    break;
+                }
+            }
+            buffer.flip();
+            return buffer.remaining() >= n;
+        }
+        
+        void require(int n) throws IOException {
+            if (!fill(n)) {
+                throw new EOFException("Task file is truncated");
+            }
+        }
+        
+        long varLong() throws IOException {
+            long value = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                require(1);
+                byte b = buffer.get();
+                value |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return value;
+                }
+            }
+            throw new IOException("Malformed varint");
+        }
+        
+        byte[] bytes(int length) throws IOException {
+            byte[] result = new byte[length];
+            int read = 0;
+            while (read < length) {
+                require(1);
+                int n = Math.min(buffer.remaining(), length - read);
+                buffer.get(result, read, n);
+                read += n;
+            }
+            return result;
+        }
+        
+        String string() throws IOException {
+            long length = varLong();
+            if (length == 0) {
+                return null;
+            }
+            if (length - 1 > Integer.MAX_VALUE) {
+                throw new IOException("String too long");
+            }
+            return new String(bytes((int) (length - 1)), StandardCharsets.UTF_8);
+        }
+    }
+}
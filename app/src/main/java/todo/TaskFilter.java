@@ -0,0 +1,47 @@
+package todo;
+
+/**
+ * TaskFilter selects tasks for a paged view by status, category and priority
+ * A null criterion matches every task; categories are compared ignoring case.
+ */
+public class TaskFilter {
+    public static final TaskFilter ANY = new TaskFilter(null, null, null);
+    
+    private final Boolean completed;
+    private final String category;
+    private final Priority priority;
+    // Case-insensitive key of the category, looked up again while no task was ever in it
+    private int categoryKey;
+    
+    public TaskFilter(Boolean completed, String category, Priority priority) {
+        this.completed = completed;
+        this.category = category;
+        this.priority = priority;
+        this.categoryKey = -1;
+    }
+    
+    public Boolean getCompleted() {
+        return completed;
+    }
+    
+    public String getCategory() {
+        return category;
+    }
+    
+    public Priority getPriority() {
+        return priority;
+    }
+    
+    int categoryKey() {
+        if (categoryKey < 0) {
+            categoryKey = CategoryRegistry.find(category);
+        }
+        return categoryKey;
+    }
+    
+    public boolean matches(Task task) {
+        return (completed == null || task.isCompleted() == completed)
+            && (category == null || CategoryRegistry.keyOf(task.getCategoryId()) == categoryKey())
+            && (priority == null || task.getPriorityLevel() == priority);
+    }
+}
@@ -0,0 +1,139 @@
+package todo;
+
+import java.util.List;
+
+/**
+ * TaskHistory is a bounded ring buffer of the changes TaskManager can undo and redo
+ * Each entry holds only what it takes to reverse and repeat one change: the
+ * task that was added or removed, the fields of a task before and after an
+ * update, or the state a clear retired. Nothing copies the task list, and
+ * once the buffer is full the oldest change is forgotten.
+ */
+class TaskHistory {
+    static final int ADD = 1;
+    static final int REMOVE = 2;
+    static final int TOGGLE = 3;
+    static final int UPDATE = 4;
+    static final int ADD_ALL = 5;
+    static final int CLEAR = 6;
+    
+    /**
+     * One change, with whichever of the fields its type needs
+     */
+    static final class Edit {
+        final int type;
+        // The task added or removed, or the fields after an update
+        final Task task;
+        // The fields before an update
+        final Task before;
+        final int id;
+        final List<Task> tasks;
+        // Everything a clear took out of the manager, swapped back and forth by undo and redo
+        TaskManager.Retired retired;
+        
+        private Edit(int type, Task task, Task before, int id, List<Task> tasks, TaskManager.Retired retired) {
+            this.type = type;
+            this.task = task;
+            this.before = before;
+            this.id = id;
+            this.tasks = tasks;
+            this.retired = retired;
+        }
+    }
+    
+    private final Edit[] edits;
+    private int start;
+    private int undoable;
+    private int redoable;
+    
+    TaskHistory(int capacity) {
+        edits = new Edit[capacity];
+    }
+    
+    static Edit added(Task task) {
+        return new Edit(ADD, task, null, task.getId(), null, null);
+    }
+    
+    static Edit removed(Task task) {
+        return new Edit(REMOVE, task, null, task.getId(), null, null);
+    }
+    
+    static Edit toggled(int id) {
+        return new Edit(TOGGLE, null, null, id, null, null);
+    }
+    
+    // Both tasks must be copies that are never changed afterwards
+    static Edit updated(Task before, Task after) {
+        return new Edit(UPDATE, after, before, after.getId(), null, null);
+    }
+    
+    static Edit addedAll(List<Task> tasks) {
+        return new Edit(ADD_ALL, null, null, 0, tasks, null);
+    }
+    
+    static Edit cleared(TaskManager.Retired retired) {
+        return new Edit(CLEAR, null, null, 0, null, retired);
+    }
+    
+    // Remember a new change; whatever could be redone is forgotten
+    void record(Edit edit) {
+        for (int i = 0; i < redoable; i++) {
+            edits[slot(undoable + i)] = null;
+        }
+        redoable = 0;
+        if (undoable == edits.length) {
+            edits[start] = null;
+            start = (start + 1) % edits.length;
+            undoable--;
+        }
+        edits[slot(undoable)] = edit;
+        undoable++;
+    }
+    
+    // The change to reverse next, or null if there is none
+    Edit undo() {
+        if (undoable == 0) {
+            return null;
+        }
+        undoable--;
+        redoable++;
+        return edits[slot(undoable)];
+    }
+    
+    // The change to repeat next, or null if there is none
+    Edit redo() {
+        if (redoable == 0) {
+            return null;
+        }
+        Edit edit = edits[slot(undoable)];
+        undoable++;
+        redoable--;
+        return edit;
+    }
+    
+    boolean canUndo() {
+        return undoable > 0;
+    }
+    
+    boolean canRedo() {
+        return redoable > 0;
+    }
+    
+    // Add the id of every task a change that can still be undone or redone refers to
+    void collectIds(IntSet into) {
+        for (int i = 0; i < undoable + redoable; i++) {
+            Edit edit = edits[slot(i)];
+            if (edit.tasks != null) {
+                for (Task task : edit.tasks) {
+                    into.add(task.getId());
+                }
+            } else if (edit.type != CLEAR) {
+                into.add(edit.id);
+            }
+        }
+    }
+    
+    private int slot(int offset) {
+        return (start + offset) % edits.length;
+    }
+}
@@ -0,0 +1,165 @@
+package todo;
+
+import java.util.*;
+
+/**
+ * TaskIndex maintains secondary indexes over tasks by category, priority and status
+ * Buckets are found by priority ordinal and by category key from the
+ * CategoryRegistry, so queries never touch tasks outside their result and
+ * indexing a task never lower-cases a string
+ *
+ * Tasks with a due date are also kept in a tree by due day, so a date range
+ * is found in logarithmic time and comes out soonest due first.
+ *
+ * A task must be removed from the index before one of its indexed fields
+ * changes and added back afterwards.
+ */
+public class TaskIndex {
+    private LinkedHashSet<Task>[] byCategory = newBuckets(16);
+    private final LinkedHashSet<Task>[] byPriority = newBuckets(Priority.values().length);
+    private final LinkedHashSet<Task> completed = new LinkedHashSet<>();
+    private final LinkedHashSet<Task> pending = new LinkedHashSet<>();
+    private final TreeMap<Integer, LinkedHashSet<Task>> byDueDay = new TreeMap<>();
+    
+    // Number of tasks using each category id, that is each spelling, for getCategories
+    private int[] categoryUses = new int[16];
+    
+    public void add(Task task) {
+        int key = CategoryRegistry.keyOf(task.getCategoryId());
+        bucket(key).add(task);
+        bucket(byPriority, task.getPriorityLevel().ordinal()).add(task);
+        (task.isCompleted() ? completed : pending).add(task);
+        if (task.getDueDay() != Task.NO_DUE_DAY) {
+            LinkedHashSet<Task> bucket = byDueDay.get(task.getDueDay());
+            if (bucket == null) {
+                bucket = new LinkedHashSet<>();
+                byDueDay.put(task.getDueDay(), bucket);
+            }
+            bucket.add(task);
+        }
+        
+        int id = task.getCategoryId();
+        if (id >= categoryUses.length) {
+            categoryUses = Arrays.copyOf(categoryUses, Math.max(id + 1, categoryUses.length * 2));
+        }
+        categoryUses[id]++;
+    }
+    
+    public void remove(Task task) {
+        int key = CategoryRegistry.keyOf(task.getCategoryId());
+        if (key < byCategory.length) {
+            unbucket(byCategory, key, task);
+        }
+        unbucket(byPriority, task.getPriorityLevel().ordinal(), task);
+        (task.isCompleted() ? completed : pending).remove(task);
+        if (task.getDueDay() != Task.NO_DUE_DAY) {
+            LinkedHashSet<Task> bucket = byDueDay.get(task.getDueDay());
+            if (bucket != null && bucket.remove(task) && bucket.isEmpty()) {
+                byDueDay.remove(task.getDueDay());
+            }
+        }
+        
+        int id = task.getCategoryId();
+        if (id < categoryUses.length && categoryUses[id] > 0) {
+            categoryUses[id]--;
+        }
+    }
+    
+    public void clear() {
+        Arrays.fill(byCategory, null);
+        Arrays.fill(byPriority, null);
+        completed.clear();
+        pending.clear();
+        byDueDay.clear();
+        Arrays.fill(categoryUses, 0);
+    }
+    
+    // Index every task from scratch
+    public void rebuild(Iterable<Task> tasks) {
+        clear();
+        for (Task task : tasks) {
+            add(task);
+        }
+    }
+    
+    // Tasks in a category, ignoring case; null finds the tasks without a category
+    public Collection<Task> byCategory(String category) {
+        int key = CategoryRegistry.find(category);
+        return key >= 0 && key < byCategory.length ? lookup(byCategory, key) : Collections.<Task>emptySet();
+    }
+    
+    // Tasks with a priority, ignoring case
+    public Collection<Task> byPriority(String priority) {
+        Priority level = Priority.parse(priority);
+        return level != null ? byPriority(level) : Collections.<Task>emptySet();
+    }
+    
+    public Collection<Task> byPriority(Priority priority) {
+        return lookup(byPriority, priority.ordinal());
+    }
+    
+    public Collection<Task> byStatus(boolean isCompleted) {
+        return isCompleted ? completed : pending;
+    }
+    
+    // Tasks due from one epoch day to another inclusive, soonest due first, optionally only pending ones
+    public ArrayList<Task> dueBetween(int fromDay, int toDay, boolean pendingOnly) {
+        ArrayList<Task> result = new ArrayList<>();
+        if (fromDay > toDay) {
+            return result;
+        }
+        for (LinkedHashSet<Task> bucket : byDueDay.subMap(fromDay, true, toDay, true).values()) {
+            for (Task task : bucket) {
+                if (!pendingOnly || !task.isCompleted()) {
+                    result.add(task);
+                }
+            }
+        }
+        return result;
+    }
+    
+    // Distinct category names as they were entered
+    public Set<String> categories() {
+        Set<String> names = new HashSet<>();
+        for (int id = 0; id < categoryUses.length; id++) {
+            if (categoryUses[id] > 0) {
+                names.add(CategoryRegistry.nameOf(id));
+            }
+        }
+        return names;
+    }
+    
+    // The bucket of a category key, growing the table to hold it
+    private LinkedHashSet<Task> bucket(int key) {
+        if (key >= byCategory.length) {
+            byCategory = Arrays.copyOf(byCategory, Math.max(key + 1, byCategory.length * 2));
+        }
+        return bucket(byCategory, key);
+    }
+    
+    private static LinkedHashSet<Task> bucket(LinkedHashSet<Task>[] index, int key) {
+        LinkedHashSet<Task> bucket = index[key];
+        if (bucket == null) {
+            bucket = new LinkedHashSet<>();
+            index[key] = bucket;
+        }
+        return bucket;
+    }
+    
+    private static void unbucket(LinkedHashSet<Task>[] index, int key, Task task) {
+        LinkedHashSet<Task> bucket = index[key];
+        if (bucket != null && bucket.remove(task) && bucket.isEmpty()) {
+            index[key] = null;
+        }
+    }
+    
+    private static Collection<Task> lookup(LinkedHashSet<Task>[] index, int key) {
+        LinkedHashSet<Task> bucket = index[key];
+        return bucket != null ? bucket : Collections.<Task>emptySet();
+    }
+    
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static LinkedHashSet<Task>[] newBuckets(int size) {
+        return (LinkedHashSet<Task>[]) new LinkedHashSet[size];
+    }
+}
@@ -0,0 +1,559 @@
+package todo;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * TaskJournal is an append-only write-ahead log of TaskManager mutations
+ * Each mutation is written as one small record instead of rewriting the whole task file
+ *
+ * The log is split into numbered segments ("tasks.dat.<generation>.log"). A snapshot
+ * tagged with generation G already contains every record of the segments below G,
+ * so on startup only the segments from G onwards have to be replayed.
+ *
+ * Records are collected into batches and written by a background thread, so
+ * callers never wait for the disk. A burst of mutations costs one write and
+ * one fsync; callers that need to know a record is durable use the returned
+ * future or flush().
+ */
+public class TaskJournal {
+    // Record types
+    private static final byte OP_REMOVE = 2;
+    private static final byte OP_TOGGLE = 3;
+    private static final byte OP_CLEAR = 5;
+    private static final byte OP_ADD = 6;
+    private static final byte OP_UPDATE = 7;
+    
+    private final String baseFile;
+    private final long maxDelayMillis;
+    private final int maxBatchRecords;
+    private final TaskMetrics metrics;
+    private long generation;
+    private int recordCount;
+    
+    // Batches handed between mutating threads and the writer thread, guarded by lock
+    private final Object lock = new Object();
+    private final ArrayDeque<Batch> sealed = new ArrayDeque<>();
+    private Batch current;
+    private CompletableFuture<Void> lastFuture = CompletableFuture.completedFuture(null);
+    private boolean closed;
+    private Thread writer;
+    
+    // Segment the writer thread is appending to, only touched by the writer thread
+    private FileChannel segmentOut;
+    private long segmentGeneration = -1;
+    // End of the last batch written in full; a failed write is cut back to it
+    private long segmentEnd;
+    
+    /**
+     * Callback used while replaying the log on startup
+     */
+    public interface Replayer {
+        void replayAdd(Task task);
+        void replayRemove(int id);
+        void replayToggle(int id);
+        void replayUpdate(Task task);
+        void replayClear();
+    }
+    
+    /**
+     * Records collected for one write, all bound for the same segment
+     */
+    private static class Batch {
+        final long generation;
+        final long createdAt = System.currentTimeMillis();
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+        final DataOutputStream out = new DataOutputStream(bytes);
+        final CompletableFuture<Void> future = new CompletableFuture<>();
+        int records;
+        Runnable afterWrite;
+        
+        Batch(long generation) {
+            this.generation = generation;
+        }
+    }
+    
+    public TaskJournal(String baseFile) {
+        this(baseFile, 50, 1000);
+    }
+    
+    // Records are written at most maxDelayMillis after they are logged, or as soon as maxBatchRecords pile up
+    public TaskJournal(String baseFile, long maxDelayMillis, int maxBatchRecords) {
+        this(baseFile, maxDelayMillis, maxBatchRecords, new TaskMetrics());
+    }
+    
+    // Writes are timed into the given metrics
+    TaskJournal(String baseFile, long maxDelayMillis, int maxBatchRecords, TaskMetrics metrics) {
+        this.baseFile = baseFile;
+        this.maxDelayMillis = maxDelayMillis;
+        this.maxBatchRecords = maxBatchRecords;
+        this.metrics = metrics;
+    }
+    
+    // Replay every segment from the given generation onwards, then start appending to the newest one.
+    // The writer starts even if a segment can't be read, so later changes are still logged
+    public void open(long snapshotGeneration, Replayer replayer) throws IOException {
+        long newest = snapshotGeneration;
+        recordCount = 0;
+        try {
+            for (long gen : listGenerations()) {
+                if (gen < snapshotGeneration) {
+                    // Already part of the snapshot, left behind by an interrupted compaction
+                    segmentFile(gen).delete();
+                    continue;
+                }
+                newest = gen;
+                File segment = segmentFile(gen);
+                long validLength = replaySegment(segment, replayer);
+                if (segment.length() > validLength) {
+                    // Drop a torn or damaged tail left behind by a crash in the middle of an append,
+                    // so records appended from now on follow the last intact one
+                    System.err.println("Error loading tasks: dropping " + (segment.length() - validLength)
+                                       + " damaged bytes at the end of " + segment);
+                    try (RandomAccessFile raf = new RandomAccessFile(segment, "rw")) {
+                        raf.setLength(validLength);
+                    }
+                }
+            }
+        } finally {
+            synchronized (lock) {
+                generation = newest;
+            }
+            writer = new Thread(new Runnable() {
+                public void run() {
+                    writeLoop();
+                }
+            }, "TaskJournal-writer");
+            writer.setDaemon(true);
+            writer.start();
+        }
+    }
+    
+    public long getGeneration() {
+        synchronized (lock) {
+            return generation;
+        }
+    }
+    
+    // Number of records logged since the last rotation
+    public int getRecordCount() {
+        synchronized (lock) {
+            return recordCount;
+        }
+    }
+    
+    // Each log method returns a future that completes once the record is on disk
+    public CompletableFuture<Void> logAdd(Task task) {
+        synchronized (lock) {
+            Batch batch = batch();
+            try {
+                batch.out.writeByte(OP_ADD);
+                writeTask(batch.out, task);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return commit(batch);
+        }
+    }
+    
+    // Log many added tasks as one batch of their own, written with a single write and fsync
+    public CompletableFuture<Void> logAddAll(Iterable<Task> tasks) {
+        synchronized (lock) {
+            seal();
+            Batch batch = batch();
+            int count = 0;
+            try {
+                for (Task task : tasks) {
+                    batch.out.writeByte(OP_ADD);
+                    writeTask(batch.out, task);
+                    count++;
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            recordCount += count;
+            batch.records += count;
+            seal();
+            lock.notifyAll();
+            return batch.future;
+        }
+    }
+    
+    public CompletableFuture<Void> logRemove(int id) {
+        return logId(OP_REMOVE, id);
+    }
+    
+    public CompletableFuture<Void> logToggle(int id) {
+        return logId(OP_TOGGLE, id);
+    }
+    
+    public CompletableFuture<Void> logUpdate(Task task) {
+        synchronized (lock) {
+            Batch batch = batch();
+            try {
+                batch.out.writeByte(OP_UPDATE);
+                writeTask(batch.out, task);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return commit(batch);
+        }
+    }
+    
+    public CompletableFuture<Void> logClear() {
+        synchronized (lock) {
+            Batch batch = batch();
+            batch.bytes.write(OP_CLEAR);
+            return commit(batch);
+        }
+    }
+    
+    // Start a new segment and return the generation of the one that was closed
+    public long rotate() {
+        synchronized (lock) {
+            seal();
+            long closedGeneration = generation;
+            generation++;
+            recordCount = 0;
+            return closedGeneration;
+        }
+    }
+    
+    // Delete all segments up to and including the given generation, once everything before it is written
+    public void deleteUpTo(final long gen) {
+        Runnable delete = new Runnable() {
+            public void run() {
+                for (long g : listGenerations()) {
+                    if (g <= gen) {
+                        segmentFile(g).delete();
+                    }
+                }
+            }
+        };
+        synchronized (lock) {
+            if (closed) {
+                delete.run();
+                return;
+            }
+            seal();
+            Batch marker = new Batch(generation);
+            marker.afterWrite = delete;
+            sealed.add(marker);
+            lock.notifyAll();
+        }
+    }
+    
+    // Hand everything logged so far to the writer and return a future for when it is on disk
+    public CompletableFuture<Void> flush() {
+        synchronized (lock) {
+            seal();
+            lock.notifyAll();
+            return lastFuture;
+        }
+    }
+    
+    // Write everything still pending and stop the writer thread
+    public void close() {
+        synchronized (lock) {
+            if (closed) {
+                return;
+            }
+            seal();
+            closed = true;
+            lock.notifyAll();
+        }
+        if (writer != null) {
+            try {
+                writer.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+    
+    private CompletableFuture<Void> logId(byte op, int id) {
+        synchronized (lock) {
+            Batch batch = batch();
+            try {
+                batch.out.writeByte(op);
+                batch.out.writeInt(id);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return commit(batch);
+        }
+    }
+    
+    // Batch the next record goes into, caller holds lock
+    private Batch batch() {
+        if (closed) {
+            throw new IllegalStateException("Journal is closed");
+        }
+        if (current == null) {
+            current = new Batch(generation);
+            lock.notifyAll();
+        }
+        return current;
+    }
+    
+    // Count a record that was just written into the batch, caller holds lock
+    private CompletableFuture<Void> commit(Batch batch) {
+        recordCount++;
+        batch.records++;
+        CompletableFuture<Void> future = batch.future;
+        if (batch.records >= maxBatchRecords) {
+            seal();
+            lock.notifyAll();
+        }
+        return future;
+    }
+    
+    // Queue the batch being filled for the writer, caller holds lock
+    private void seal() {
+        if (current != null) {
+            sealed.add(current);
+            lastFuture = current.future;
+            current = null;
+        }
+    }
+    
+    private void writeLoop() {
+        while (true) {
+            Batch batch;
+            synchronized (lock) {
+                while (true) {
+                    if (!sealed.isEmpty()) {
+                        break;
+                    }
+                    if (current != null) {
+                        long wait = current.createdAt + maxDelayMillis - System.currentTimeMillis();
+                        if (wait <= 0) {
+                            seal();
+                            break;
+                        }
+                        waitOn(wait);
+                    } else if (closed) {
+                        closeSegment();
+                        return;
+                    } else {
+                        waitOn(0);
+                    }
+                }
+                batch = sealed.poll();
+            }
+            write(batch);
+        }
+    }
+    
+    private void waitOn(long millis) {
+        try {
+            lock.wait(millis);
+        } catch (InterruptedException e) {
+            // Keep going, close() is the way to stop the writer
+        }
+    }
+    
+    // Append one batch to its segment and force it to disk, runs on the writer thread
+    private void write(Batch batch) {
+        try {
+            if (batch.records > 0) {
+                if (segmentGeneration != batch.generation) {
+                    closeSegment();
+                    segmentOut = FileChannel.open(segmentFile(batch.generation).toPath(),
+                                                  StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+                    segmentGeneration = batch.generation;
+                    segmentEnd = segmentOut.size();
+                }
+                long start = System.nanoTime();
+                appendBatch(batch);
+                metrics.recordJournalWrite(batch.bytes.size(), start);
+            }
+            if (batch.afterWrite != null) {
+                closeSegment();
+                batch.afterWrite.run();
+            }
+            batch.future.complete(null);
+        } catch (IOException e) {
+            System.err.println("Error saving tasks: " + e.getMessage());
+            metrics.recordPersistenceFailure("journal", e.getMessage());
+            batch.future.completeExceptionally(e);
+        }
+    }
+    
+    // Write a batch at the end of the last complete one, cutting off whatever a failed write left there
+    private void appendBatch(Batch batch) throws IOException {
+        try {
+            if (segmentOut.size() > segmentEnd) {
+                segmentOut.truncate(segmentEnd);
+            }
+            ByteBuffer buffer = ByteBuffer.wrap(batch.bytes.toByteArray());
+            long position = segmentEnd;
+            while (buffer.hasRemaining()) {
+                position += segmentOut.write(buffer, position);
+            }
+            segmentOut.force(false);
+            segmentEnd = position;
+        } catch (IOException e) {
+            try {
+                segmentOut.truncate(segmentEnd);
+            } catch (IOException ignored) {
+                // Cut off before the next append instead
+            }
+            throw e;
+        }
+    }
+    
+    private void closeSegment() {
+        if (segmentOut != null) {
+            try {
+                segmentOut.close();
+            } catch (IOException e) {
+                System.err.println("Error saving tasks: " + e.getMessage());
+            }
+            segmentOut = null;
+            segmentGeneration = -1;
+        }
+    }
+    
+    private static void writeTask(DataOutputStream out, Task task) throws IOException {
+        out.writeInt(task.getId());
+        writeString(out, task.getTitle());
+        writeString(out, task.getDescription());
+        writeString(out, task.getPriority());
+        writeString(out, task.getDueDate());
+        writeString(out, task.getCategory());
+        out.writeBoolean(task.isCompleted());
+    }
+    
+    // Strings are length-prefixed UTF-8, -1 for null, so they may be any length
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+    
+    // Replay one segment up to its first incomplete or damaged record and return the length before it
+    private long replaySegment(File segment, Replayer replayer) throws IOException {
+        long length = segment.length();
+        long valid = 0;
+        try (CountingInputStream counter = new CountingInputStream(new BufferedInputStream(new FileInputStream(segment)));
+             DataInputStream in = new DataInputStream(counter)) {
+            while (true) {
+                int op = in.read();
+                if (op == -1) {
+                    break;
+                }
+                try {
+                    switch (op) {
+                        case OP_ADD: replayer.replayAdd(readTask(in, length - counter.count)); break;
+                        case OP_REMOVE: replayer.replayRemove(in.readInt()); break;
+                        case OP_TOGGLE: replayer.replayToggle(in.readInt()); break;
+                        case OP_UPDATE: replayer.replayUpdate(readTask(in, length - counter.count)); break;
+                        case OP_CLEAR: replayer.replayClear(); break;
+                        default:
+                            // Zeroes or garbage where a crash tore the tail
+                            return valid;
+                    }
+                } catch (EOFException | CorruptRecordException e) {
+                    // Incomplete trailing record, everything before it is still valid
+                    break;
+                }
+                valid = counter.count;
+                recordCount++;
+            }
+        }
+        return valid;
+    }
+    
+    // A record whose bytes can't be part of any record that was written in full
+    private static class CorruptRecordException extends IOException {
+        private static final long serialVersionUID = 1L;
+    }
+    
+    private Task readTask(DataInputStream in, long remaining) throws IOException {
+        int id = in.readInt();
+        String title = readString(in, remaining);
+        String description = readString(in, remaining);
+        String priority = readString(in, remaining);
+        String dueDate = readString(in, remaining);
+        String category = readString(in, remaining);
+        Task task = new Task(id, title, description, priority, dueDate, category);
+        task.setCompleted(in.readBoolean());
+        return task;
+    }
+    
+    private String readString(DataInputStream in, long remaining) throws IOException {
+        int length = in.readInt();
+        if (length == -1) {
+            return null;
+        }
+        if (length < 0 || length > remaining) {
+            throw new CorruptRecordException();
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+    
+    private File segmentFile(long gen) {
+        return new File(baseFile + "." + gen + ".log");
+    }
+    
+    // Generations of all segments on disk, oldest first
+    private List<Long> listGenerations() {
+        File base = new File(baseFile).getAbsoluteFile();
+        String prefix = base.getName() + ".";
+        List<Long> generations = new ArrayList<>();
+        String[] names = base.getParentFile().list();
+        if (names == null) {
+            return generations;
+        }
+        for (String name : names) {
+            if (name.startsWith(prefix) && name.endsWith(".log")) {
+                try {
+                    generations.add(Long.parseLong(name.substring(prefix.length(), name.length() - 4)));
+                } catch (NumberFormatException e) {
+                    // Not one of our segments
+                }
+            }
+        }
+        Collections.sort(generations);
+        return generations;
+    }
+    
+    // Tracks how many bytes have been consumed so a torn tail can be cut off
+    private static class CountingInputStream extends FilterInputStream {
+        long count;
+        
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+        
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b != -1) {
+                count++;
+            }
+            return b;
+        }
+        
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, len);
+            if (n > 0) {
+                count += n;
+            }
+            return n;
+        }
+    }
+}
@@ -0,0 +1,161 @@
+package todo;
+
+import javax.swing.*;
+import java.util.Arrays;
+import java.util.concurrent.Executor;
+
+/**
+ * TaskListModel is a Swing list model that reads straight from TaskManager
+ * Rows are rendered only when the list asks for them (the visible ones),
+ * and each Task keeps its rendered text until it changes. The model listens
+ * for TaskManager's change events on the EDT and repaints only the affected
+ * rows, whichever thread made the change.
+ *
+ * While a search is shown the model lists only the ids of its results, and
+ * the search is responsible for publishing new results when tasks change.
+ */
+public class TaskListModel extends AbstractListModel<String> implements TaskChangeListener {
+    private static final long serialVersionUID = 1L;
+    
+    // Delivers change events on the event dispatch thread
+    static final Executor ON_EDT = new Executor() {
+        public void execute(Runnable command) {
+            SwingUtilities.invokeLater(command);
+        }
+    };
+    
+    private final TaskManager taskManager;
+    // Size of the full list as told by events so far, which lags the manager until its events arrive
+    private int size;
+    // Ids of the search results shown instead of every task, in id order; null when there is no search
+    private int[] shown;
+    
+    public TaskListModel(TaskManager taskManager) {
+        this.taskManager = taskManager;
+        this.size = taskManager.getTotalCount();
+        taskManager.addTaskChangeListener(this, ON_EDT, true);
+    }
+    
+    @Override
+    public int getSize() {
+        return shown != null ? shown.length : size;
+    }
+    
+    @Override
+    public String getElementAt(int index) {
+        if (shown != null) {
+            // A result that was removed stays in its row until the search publishes new results
+            Task task = taskManager.getTaskById(shown[index]);
+            return task != null ? task.getDisplayText() : "";
+        }
+        // The list can ask for a row that a change has just removed, before the event about it arrives
+        if (index >= taskManager.getTotalCount()) {
+            return "";
+        }
+        return taskManager.getTaskAt(index).getDisplayText();
+    }
+    
+    // Get the task shown in a row, null if it has been removed since the search ran
+    public Task getTaskAt(int index) {
+        return shown != null ? taskManager.getTaskById(shown[index]) : taskManager.getTaskAt(index);
+    }
+    
+    public boolean isFiltered() {
+        return shown != null;
+    }
+    
+    // Show only the tasks with the given ids, in one update of the list
+    public void showResults(int[] ids) {
+        long start = System.nanoTime();
+        int oldSize = getSize();
+        shown = ids;
+        resized(oldSize);
+        taskManager.getMetrics().recordModelRefresh(start);
+    }
+    
+    // Go back to showing every task
+    public void showAll() {
+        if (shown != null) {
+            long start = System.nanoTime();
+            int oldSize = shown.length;
+            shown = null;
+            resized(oldSize);
+            taskManager.getMetrics().recordModelRefresh(start);
+        }
+    }
+    
+    // Apply one change from the manager, timed as a model refresh
+    public void taskChanged(TaskChangeEvent event) {
+        long start = System.nanoTime();
+        if (shown != null) {
+            follow(event);
+            taskManager.getMetrics().recordModelRefresh(start);
+            return;
+        }
+        int index = event.getIndex();
+        switch (event.getType()) {
+            case ADDED:
+                size++;
+                fireIntervalAdded(this, index, index);
+                break;
+            case REMOVED:
+                size--;
+                fireIntervalRemoved(this, index, index);
+                break;
+            case UPDATED:
+                fireContentsChanged(this, index, index);
+                break;
+            default:
+                reload();
+                break;
+        }
+        taskManager.getMetrics().recordModelRefresh(start);
+    }
+    
+    // Keep counting the full list while a search is shown, and repaint a result that changed
+    private void follow(TaskChangeEvent event) {
+        switch (event.getType()) {
+            case ADDED:
+                size++;
+                break;
+            case REMOVED:
+                size--;
+                break;
+            case UPDATED:
+                int row = Arrays.binarySearch(shown, event.getTask().getId());
+                if (row >= 0) {
+                    fireContentsChanged(this, row, row);
+                }
+                break;
+            default:
+                size = taskManager.getTotalCount();
+                break;
+        }
+    }
+    
+    // Tell the list every row may have changed and how its length did, as one change and one insert or removal
+    private void resized(int oldSize) {
+        int newSize = getSize();
+        int common = Math.min(oldSize, newSize);
+        if (common > 0) {
+            fireContentsChanged(this, 0, common - 1);
+        }
+        if (newSize > oldSize) {
+            fireIntervalAdded(this, oldSize, newSize - 1);
+        } else if (newSize < oldSize) {
+            fireIntervalRemoved(this, newSize, oldSize - 1);
+        }
+    }
+    
+    // Everything may have changed, e.g. after the list was cleared
+    private void reload() {
+        int oldSize = size;
+        size = taskManager.getTotalCount();
+        if (oldSize > 0) {
+            fireIntervalRemoved(this, 0, oldSize - 1);
+        }
+        if (size > 0) {
+            fireIntervalAdded(this, 0, size - 1);
+        }
+    }
+}
@@ -0,0 +1,1210 @@
+package todo;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDate;
+import java.util.function.Consumer;
+import java.util.stream.Collector;
+
+/**
+ * TaskManager class handles all task operations and data persistence
+ * Implements business logic for the ToDo application
+ */
+public class TaskManager {
+    // Number of journal records after which the log is folded into a new snapshot
+    private static final int COMPACT_THRESHOLD = 10000;
+    // Number of changes that can be undone
+    private static final int UNDO_LIMIT = 100;
+    
+    private TaskStore tasks;
+    private TaskIndex index;
+    private SearchIndex search;
+    private TaskStatistics stats;
+    // The indexes are built on first use, so startup doesn't have to decode every task
+    private boolean indexed;
+    // While prepareStep builds the indexes a batch at a time, the tasks with ids up to this one are in them
+    private int indexedThrough = Integer.MIN_VALUE;
+    // Replace tasks on change instead of modifying them, so a task once handed out never changes
+    private boolean copyOnWrite;
+    // Keep every task decoded and indexed, so reads never modify any state
+    private boolean sharedReads;
+    private int nextId;
+    private final String DATA_FILE;
+    private final TaskJournal journal;
+    // Completed tasks moved out of the live set by the archive policy
+    private final TaskArchive archive;
+    // Null to keep every task live
+    private TaskArchive.Policy archivePolicy;
+    // Set when tasks were archived in the middle of a change, so its event becomes a bulk one
+    private boolean archivedDuringChange;
+    // Set when a block of the mapped snapshot failed its checksum, so the next change rewrites the snapshot
+    private boolean snapshotDamaged;
+    // Set when tasks were lost to a damaged block that the running counts still include
+    private volatile boolean lossUncounted;
+    private final ExecutorService compactor;
+    private Future<?> pendingCompaction;
+    private final TaskHistory history = new TaskHistory(UNDO_LIMIT);
+    private final TaskChangeSupport listeners = new TaskChangeSupport();
+    private final TaskMetrics metrics = new TaskMetrics();
+    // Set while a change to many tasks runs, which is announced once as a bulk event instead of task by task
+    private boolean inBulk;
+    
+    public TaskManager() {
+        this("tasks.dat");
+    }
+    
+    public TaskManager(String dataFile) {
+        this(dataFile, 50, 1000);
+    }
+    
+    // Changes reach the disk at most flushDelayMillis after they are made, or once maxBatchSize of them pile up
+    public TaskManager(String dataFile, long flushDelayMillis, int maxBatchSize) {
+        DATA_FILE = dataFile;
+        tasks = new TaskStore();
+        index = new TaskIndex();
+        search = new SearchIndex();
+        stats = new TaskStatistics();
+        nextId = 1;
+        journal = new TaskJournal(DATA_FILE, flushDelayMillis, maxBatchSize, metrics);
+        archive = new TaskArchive(DATA_FILE + ".archive");
+        archivePolicy = TaskArchive.Policy.fromSystemProperties();
+        compactor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "TaskManager-compactor");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        loadTasks();
+    }
+    
+    // Add a new task
+    public Task addTask(String title, String description, String priority, String dueDate, String category) {
+        return addTask(title, description, priority, dueDate, category, false);
+    }
+    
+    // Add a task that may already be done, as one change with one undo step
+    public Task addTask(String title, String description, String priority, String dueDate, String category,
+                        boolean completed) {
+        long start = System.nanoTime();
+        try {
+            // Built before taking an id, so an unknown priority doesn't use one up
+            Task task = new Task(nextId, title, description, priority, dueDate, category);
+            nextId++;
+            task.setCompleted(completed);
+            insert(task);
+            history.record(TaskHistory.added(task));
+            return task;
+        } finally {
+            metrics.record(TaskMetrics.Operation.ADD, start);
+        }
+    }
+    
+    // Add every valid task from a CSV or JSON Lines stream as one undo step, each chunk added and journaled
+    // as a batch as soon as it is validated
+    public TaskTransfer.ImportResult importTasks(Reader in, TaskTransfer.Format format) throws IOException {
+        long start = System.nanoTime();
+        final ArrayList<Task> added = new ArrayList<>();
+        try {
+            TaskTransfer.ImportResult result = TaskTransfer.read(in, format, new Consumer<List<Task>>() {
+                public void accept(List<Task> chunk) {
+                    addAll(chunk);
+                    added.addAll(chunk);
+                }
+            });
+            return new TaskTransfer.ImportResult(added, added.size(), result.getRejected(), result.getErrors());
+        } finally {
+            // Tasks added before a read error stay, and are undone together like a whole import
+            recordImport(added);
+            metrics.record(TaskMetrics.Operation.IMPORT, start);
+        }
+    }
+    
+    // Write every task to a CSV or JSON Lines stream, in display order
+    public void exportTasks(Writer out, TaskTransfer.Format format) throws IOException {
+        long start = System.nanoTime();
+        try {
+            TaskTransfer.write(out, exportView(), format);
+        } finally {
+            metrics.record(TaskMetrics.Operation.EXPORT, start);
+        }
+    }
+    
+    // Number and add tasks that were built without ids, journaled as a single batch
+    void addAll(List<Task> drafts) {
+        if (drafts.isEmpty()) {
+            return;
+        }
+        for (Task task : drafts) {
+            task.setId(nextId++);
+            tasks.add(task);
+            indexTask(task);
+        }
+        journal.logAddAll(drafts);
+        maybeCompact();
+        listeners.publish(TaskChangeEvent.BULK);
+    }
+    
+    // Make the tasks an import added one undo step
+    void recordImport(List<Task> added) {
+        if (!added.isEmpty()) {
+            history.record(TaskHistory.addedAll(added));
+        }
+    }
+    
+    // Remove a task by ID
+    public boolean removeTask(int id) {
+        long start = System.nanoTime();
+        try {
+            Task task = delete(id);
+            if (task == null) {
+                return false;
+            }
+            history.record(TaskHistory.removed(task));
+            return true;
+        } finally {
+            metrics.record(TaskMetrics.Operation.REMOVE, start);
+        }
+    }
+    
+    // Toggle task completion
+    public boolean toggleTaskCompletion(int id) {
+        long start = System.nanoTime();
+        try {
+            if (!toggle(id)) {
+                return false;
+            }
+            history.record(TaskHistory.toggled(id));
+            return true;
+        } finally {
+            metrics.record(TaskMetrics.Operation.TOGGLE, start);
+        }
+    }
+    
+    // Update a task
+    public boolean updateTask(int id, String title, String description, String priority, String dueDate, String category) {
+        long start = System.nanoTime();
+        try {
+            Task task = tasks.get(id);
+            if (task == null) {
+                return false;
+            }
+            Task before = task.copy();
+            Task after = new Task(id, title, description, priority, dueDate, category);
+            change(task, after);
+            history.record(TaskHistory.updated(before, after));
+            return true;
+        } finally {
+            metrics.record(TaskMetrics.Operation.UPDATE, start);
+        }
+    }
+    
+    // Reverse the most recent change that hasn't been undone, returning false if there is none
+    public boolean undo() {
+        long start = System.nanoTime();
+        try {
+            TaskHistory.Edit edit = history.undo();
+            if (edit == null) {
+                return false;
+            }
+            reverse(edit);
+            return true;
+        } finally {
+            metrics.record(TaskMetrics.Operation.UNDO, start);
+        }
+    }
+    
+    // Apply the inverse of a change
+    private void reverse(TaskHistory.Edit edit) {
+        switch (edit.type) {
+            case TaskHistory.ADD:
+                delete(edit.id);
+                break;
+            case TaskHistory.REMOVE:
+                insert(edit.task);
+                break;
+            case TaskHistory.TOGGLE:
+                toggle(edit.id);
+                break;
+            case TaskHistory.UPDATE:
+                if (tasks.contains(edit.id)) {
+                    change(tasks.get(edit.id), edit.before);
+                }
+                break;
+            case TaskHistory.ADD_ALL:
+                inBulk = true;
+                try {
+                    for (Task task : edit.tasks) {
+                        delete(task.getId());
+                    }
+                } finally {
+                    inBulk = false;
+                }
+                listeners.publish(TaskChangeEvent.BULK);
+                break;
+            case TaskHistory.CLEAR:
+                restore(edit);
+                break;
+        }
+    }
+    
+    // Repeat the most recently undone change, returning false if there is none
+    public boolean redo() {
+        long start = System.nanoTime();
+        try {
+            TaskHistory.Edit edit = history.redo();
+            if (edit == null) {
+                return false;
+            }
+            repeat(edit);
+            return true;
+        } finally {
+            metrics.record(TaskMetrics.Operation.REDO, start);
+        }
+    }
+    
+    // Apply a change again
+    private void repeat(TaskHistory.Edit edit) {
+        switch (edit.type) {
+            case TaskHistory.ADD:
+                insert(edit.task);
+                break;
+            case TaskHistory.REMOVE:
+                delete(edit.id);
+                break;
+            case TaskHistory.TOGGLE:
+                toggle(edit.id);
+                break;
+            case TaskHistory.UPDATE:
+                if (tasks.contains(edit.id)) {
+                    change(tasks.get(edit.id), edit.task);
+                }
+                break;
+            case TaskHistory.ADD_ALL:
+                for (Task task : edit.tasks) {
+                    tasks.add(task);
+                    indexTask(task);
+                }
+                journal.logAddAll(edit.tasks);
+                maybeCompact();
+                listeners.publish(TaskChangeEvent.BULK);
+                break;
+            case TaskHistory.CLEAR:
+                edit.retired = retire();
+                break;
+        }
+    }
+    
+    public boolean canUndo() {
+        return history.canUndo();
+    }
+    
+    public boolean canRedo() {
+        return history.canRedo();
+    }
+    
+    // Have a listener told about every change, on the thread that makes it
+    public void addTaskChangeListener(TaskChangeListener listener) {
+        listeners.add(listener, null, false);
+    }
+    
+    // Have a listener told about every change on an executor, such as SwingUtilities::invokeLater;
+    // with coalesce, changes made faster than it keeps up with reach it as a single bulk event
+    public void addTaskChangeListener(TaskChangeListener listener, Executor executor, boolean coalesce) {
+        listeners.add(listener, executor, coalesce);
+    }
+    
+    public boolean removeTaskChangeListener(TaskChangeListener listener) {
+        return listeners.remove(listener);
+    }
+    
+    // The changes below keep the store, indexes, counters and journal in step,
+    // and are shared by the public methods, undo and redo
+    
+    private void insert(Task task) {
+        tasks.add(task);
+        indexTask(task);
+        journal.logAdd(task);
+        maybeCompact();
+        publish(TaskChangeEvent.Type.ADDED, task, eventPosition(task.getId()));
+    }
+    
+    private Task delete(int id) {
+        int position = eventPosition(id);
+        Task task = tasks.remove(id);
+        if (task == null) {
+            return null;
+        }
+        unindexTask(task);
+        journal.logRemove(id);
+        maybeCompact();
+        publish(TaskChangeEvent.Type.REMOVED, task, position);
+        return task;
+    }
+    
+    private boolean toggle(int id) {
+        Task task = tasks.get(id);
+        if (task == null) {
+            return false;
+        }
+        // Only the status index and the counters depend on completion
+        if (indexed) {
+            index.remove(task);
+        }
+        stats.remove(task);
+        task = editable(task);
+        task.toggleCompleted();
+        if (indexed) {
+            index.add(task);
+        }
+        stats.add(task);
+        journal.logToggle(id);
+        maybeCompact();
+        publish(TaskChangeEvent.Type.UPDATED, task, eventPosition(id));
+        return true;
+    }
+    
+    // Give a task the title, description, priority, due date and category of another
+    private void change(Task task, Task fields) {
+        unindexTask(task);
+        task = editable(task);
+        task.setFields(fields);
+        indexTask(task);
+        journal.logUpdate(task);
+        maybeCompact();
+        publish(TaskChangeEvent.Type.UPDATED, task, eventPosition(task.getId()));
+    }
+    
+    // Swap in an empty store and indexes, handing back the old ones whole so a clear can be undone without copying
+    private Retired retire() {
+        // The retired store may outlive the snapshot file, so it must not keep that mapped
+        settleLoss();
+        if (tasks.isMapped()) {
+            tasks.loadAll();
+        }
+        Retired retired = new Retired(tasks, index, search, stats, indexed);
+        tasks = new TaskStore();
+        index = new TaskIndex();
+        search = new SearchIndex();
+        stats = new TaskStatistics();
+        indexed = true;
+        journal.logClear();
+        maybeCompact();
+        listeners.publish(TaskChangeEvent.BULK);
+        return retired;
+    }
+    
+    // Put back the state a clear retired; everything added since has already been undone
+    private void restore(TaskHistory.Edit edit) {
+        Retired retired = edit.retired;
+        edit.retired = null;
+        tasks = retired.tasks;
+        index = retired.index;
+        search = retired.search;
+        stats = retired.stats;
+        indexed = retired.indexed;
+        if (!indexed) {
+            // Whatever a background preparation had indexed of it is started over
+            index = new TaskIndex();
+            search = new SearchIndex();
+            indexedThrough = Integer.MIN_VALUE;
+        }
+        if (sharedReads) {
+            // The store may have been retired before it was ever read
+            ensureIndexed();
+            tasks.loadAll();
+        }
+        journal.logAddAll(new Iterable<Task>() {
+            public Iterator<Task> iterator() {
+                return tasks.uncachedIterator();
+            }
+        });
+        maybeCompact();
+        listeners.publish(TaskChangeEvent.BULK);
+    }
+    
+    // Display position of a task for an event, looked up only if someone will receive it
+    private int eventPosition(int id) {
+        return inBulk || listeners.isEmpty() ? -1 : tasks.indexOf(id);
+    }
+    
+    private void publish(TaskChangeEvent.Type type, Task task, int position) {
+        if (!inBulk && !listeners.isEmpty()) {
+            if (archivedDuringChange) {
+                // Positions moved under the change, listeners have to start over
+                archivedDuringChange = false;
+                listeners.publish(TaskChangeEvent.BULK);
+            } else {
+                listeners.publish(new TaskChangeEvent(type, task, position));
+            }
+        }
+    }
+    
+    /**
+     * The store, indexes and counters a clear took out of use
+     */
+    static final class Retired {
+        final TaskStore tasks;
+        final TaskIndex index;
+        final SearchIndex search;
+        final TaskStatistics stats;
+        final boolean indexed;
+        
+        Retired(TaskStore tasks, TaskIndex index, SearchIndex search, TaskStatistics stats, boolean indexed) {
+            this.tasks = tasks;
+            this.index = index;
+            this.search = search;
+            this.stats = stats;
+            this.indexed = indexed;
+        }
+    }
+    
+    // Get all tasks
+    public ArrayList<Task> getAllTasks() {
+        long start = System.nanoTime();
+        try {
+            return tasks.toList();
+        } finally {
+            metrics.record(TaskMetrics.Operation.LIST, start);
+        }
+    }
+    
+    // Get a read-only live view of the tasks in display order, without copying them
+    public List<Task> getTasksView() {
+        return new AbstractList<Task>() {
+            public Task get(int index) {
+                return getTaskAt(index);
+            }
+            
+            public int size() {
+                return getTotalCount();
+            }
+        };
+    }
+    
+    // Get one page of a sorted, filtered view; pass the previous page's cursor, or null for the first page
+    public TaskPage getPage(TaskSort sort, TaskFilter filter, String cursor, int pageSize) {
+        long start = System.nanoTime();
+        try {
+            if (pageSize <= 0) {
+                throw new IllegalArgumentException("Page size must be positive: " + pageSize);
+            }
+            Task after = cursor != null ? TaskPage.probe(sort, cursor) : null;
+            ArrayList<Task> page;
+            if (sort == TaskSort.ID && filter == TaskFilter.ANY) {
+                // The store is already in id order, so the page is a run of positions
+                int from = after != null ? tasks.positionAfter(after.getId()) : 0;
+                int to = Math.min(from + pageSize + 1, tasks.size());
+                page = new ArrayList<>(to - from);
+                for (int i = from; i < to; i++) {
+                    page.add(tasks.getAt(i));
+                }
+            } else {
+                page = firstAfter(candidates(filter), sort.comparator(), after, filter, pageSize + 1);
+            }
+            
+            // One task more than the page was fetched to tell whether another page follows
+            String next = null;
+            if (page.size() > pageSize) {
+                page.remove(pageSize);
+                next = TaskPage.cursorAfter(sort, page.get(pageSize - 1));
+            }
+            return new TaskPage(page, next);
+        } finally {
+            metrics.record(TaskMetrics.Operation.PAGE, start);
+        }
+    }
+    
+    // Get tasks by completion status
+    public ArrayList<Task> getTasksByStatus(boolean completed) {
+        long start = System.nanoTime();
+        try {
+            ensureIndexed();
+            return new ArrayList<>(index.byStatus(completed));
+        } finally {
+            metrics.record(TaskMetrics.Operation.FILTER, start);
+        }
+    }
+    
+    // Get tasks by category
+    public ArrayList<Task> getTasksByCategory(String category) {
+        long start = System.nanoTime();
+        try {
+            ensureIndexed();
+            return new ArrayList<>(index.byCategory(category));
+        } finally {
+            metrics.record(TaskMetrics.Operation.FILTER, start);
+        }
+    }
+    
+    // Get tasks by priority
+    public ArrayList<Task> getTasksByPriority(String priority) {
+        long start = System.nanoTime();
+        try {
+            ensureIndexed();
+            return new ArrayList<>(index.byPriority(priority));
+        } finally {
+            metrics.record(TaskMetrics.Operation.FILTER, start);
+        }
+    }
+    
+    // Get pending tasks whose due date has passed, soonest due first
+    public ArrayList<Task> getOverdueTasks() {
+        long start = System.nanoTime();
+        try {
+            ensureIndexed();
+            return index.dueBetween(Task.NO_DUE_DAY + 1, today() - 1, true);
+        } finally {
+            metrics.record(TaskMetrics.Operation.DUE, start);
+        }
+    }
+    
+    // Get tasks due today
+    public ArrayList<Task> getTasksDueToday() {
+        long start = System.nanoTime();
+        try {
+            ensureIndexed();
+            int today = today();
+            return index.dueBetween(today, today, false);
+        } finally {
+            metrics.record(TaskMetrics.Operation.DUE, start);
+        }
+    }
+    
+    // Get tasks due from today through the given number of days ahead, soonest due first
+    public ArrayList<Task> getTasksDueWithin(int days) {
+        long start = System.nanoTime();
+        try {
+            ensureIndexed();
+            int today = today();
+            return index.dueBetween(today, (int) Math.min((long) today + Math.max(days, 0), Integer.MAX_VALUE), false);
+        } finally {
+            metrics.record(TaskMetrics.Operation.DUE, start);
+        }
+    }
+    
+    // Get tasks due between two dates inclusive, soonest due first
+    public ArrayList<Task> getTasksDueBetween(LocalDate from, LocalDate to) {
+        long start = System.nanoTime();
+        try {
+            ensureIndexed();
+            return index.dueBetween((int) from.toEpochDay(), (int) to.toEpochDay(), false);
+        } finally {
+            metrics.record(TaskMetrics.Operation.DUE, start);
+        }
+    }
+    
+    // Search tasks by title or description
+    public ArrayList<Task> searchTasks(String searchTerm) {
+        long start = System.nanoTime();
+        try {
+            ensureIndexed();
+            return search.search(searchTerm, tasks);
+        } finally {
+            metrics.record(TaskMetrics.Operation.SEARCH, start);
+        }
+    }
+    
+    // Run a query over every task in id order, on several cores once there are enough tasks
+    public <R> List<R> query(TaskQuery<R> query) {
+        long start = System.nanoTime();
+        try {
+            return query.run(queryView());
+        } finally {
+            metrics.record(TaskMetrics.Operation.QUERY, start);
+        }
+    }
+    
+    // Count the rows a query would return
+    public int count(TaskQuery<?> query) {
+        long start = System.nanoTime();
+        try {
+            return query.count(queryView());
+        } finally {
+            metrics.record(TaskMetrics.Operation.QUERY, start);
+        }
+    }
+    
+    // Collect the rows of a query, such as into groups
+    public <R, A, T> T aggregate(TaskQuery<R> query, Collector<? super R, A, T> collector) {
+        long start = System.nanoTime();
+        try {
+            return query.aggregate(queryView(), collector);
+        } finally {
+            metrics.record(TaskMetrics.Operation.QUERY, start);
+        }
+    }
+    
+    // Every task in a list that pool threads can read at once, so nothing is decoded while they do
+    List<Task> queryView() {
+        tasks.loadAll();
+        return new TaskStoreList(tasks);
+    }
+    
+    // The tasks an export writes, decoded one at a time without caching them
+    Iterator<Task> exportView() {
+        return tasks.uncachedIterator();
+    }
+    
+    // A copy of the live tasks in id order, which later changes leave alone once tasks are replaced on change
+    ArrayList<Task> copyOfTasks() {
+        return tasks.toList();
+    }
+    
+    // Positional view of a fully loaded store
+    private static final class TaskStoreList extends AbstractList<Task> implements RandomAccess {
+        private final TaskStore store;
+        
+        TaskStoreList(TaskStore store) {
+            this.store = store;
+        }
+        
+        public Task get(int index) {
+            return store.getAt(index);
+        }
+        
+        public int size() {
+            return store.size();
+        }
+    }
+    
+    // Set which completed tasks leave the live set, or null to keep them all; applied at each compaction
+    public void setArchivePolicy(TaskArchive.Policy policy) {
+        archivePolicy = policy;
+    }
+    
+    public TaskArchive.Policy getArchivePolicy() {
+        return archivePolicy;
+    }
+    
+    // Apply the archive policy now, returning the number of tasks moved to the archive
+    public int archiveCompleted() {
+        long start = System.nanoTime();
+        try {
+            int archived = archiveNow();
+            if (archived > 0) {
+                archivedDuringChange = false;
+                listeners.publish(TaskChangeEvent.BULK);
+            }
+            return archived;
+        } finally {
+            metrics.record(TaskMetrics.Operation.ARCHIVE, start);
+        }
+    }
+    
+    // Find archived tasks whose title or description contains the term, ignoring case, in id order
+    public ArrayList<Task> searchArchive(String searchTerm) {
+        long start = System.nanoTime();
+        try {
+            return withoutLive(archive.search(searchTerm));
+        } catch (IOException e) {
+            System.err.println("Error reading archive: " + e.getMessage());
+            metrics.recordPersistenceFailure("archive", e.getMessage());
+            return new ArrayList<>();
+        } finally {
+            metrics.record(TaskMetrics.Operation.ARCHIVE_SEARCH, start);
+        }
+    }
+    
+    // Drop archived tasks that are live as well, which a crash between writing the archive and the snapshot leaves
+    ArrayList<Task> withoutLive(ArrayList<Task> archived) {
+        ArrayList<Task> kept = new ArrayList<>(archived.size());
+        for (Task task : archived) {
+            if (!tasks.contains(task.getId())) {
+                kept.add(task);
+            }
+        }
+        return kept;
+    }
+    
+    // Get task by ID
+    public Task getTaskById(int id) {
+        return tasks.get(id);
+    }
+    
+    // Get the task at a display position
+    public Task getTaskAt(int index) {
+        return tasks.getAt(index);
+    }
+    
+    // Get the display position of a task, or -1 if there is no such task
+    public int indexOfTask(int id) {
+        return tasks.indexOf(id);
+    }
+    
+    // Get task statistics
+    public Map<String, Integer> getTaskStatistics() {
+        long start = System.nanoTime();
+        try {
+            settleLoss();
+            Map<String, Integer> result = new HashMap<>();
+            result.put("total", stats.getTotal());
+            result.put("completed", stats.getCompleted());
+            result.put("pending", stats.getPending());
+            result.put("high", stats.getPriorityCount(Priority.HIGH));
+            result.put("medium", stats.getPriorityCount(Priority.MEDIUM));
+            result.put("low", stats.getPriorityCount(Priority.LOW));
+            return result;
+        } finally {
+            metrics.record(TaskMetrics.Operation.STATISTICS, start);
+        }
+    }
+    
+    // Copy the running counts into a caller-owned instance, allocation-free once warmed up
+    public TaskStatistics getStatistics(TaskStatistics into) {
+        settleLoss();
+        stats.copyTo(into);
+        return into;
+    }
+    
+    // Running counts, cheap enough to poll after every action
+    public int getTotalCount() {
+        settleLoss();
+        return stats.getTotal();
+    }
+    
+    public int getCompletedCount() {
+        settleLoss();
+        return stats.getCompleted();
+    }
+    
+    public int getPendingCount() {
+        settleLoss();
+        return stats.getPending();
+    }
+    
+    // Once a damaged block has cost some tasks, read every other task and recount, so the counts match what is left
+    void settleLoss() {
+        if (!lossUncounted) {
+            return;
+        }
+        tasks.loadAll();
+        lossUncounted = false;
+        stats.clear();
+        for (Task task : tasks) {
+            stats.add(task);
+        }
+        System.err.println("Error loading tasks: lost " + tasks.lostCount() + " tasks in damaged blocks of " + DATA_FILE);
+        metrics.recordPersistenceFailure("load", "lost " + tasks.lostCount() + " tasks");
+    }
+    
+    // The smallest indexed set of tasks that holds every task the filter can match
+    private Iterable<Task> candidates(TaskFilter filter) {
+        if (filter.getCategory() == null && filter.getPriority() == null && filter.getCompleted() == null) {
+            return tasks;
+        }
+        ensureIndexed();
+        Collection<Task> best = null;
+        if (filter.getCategory() != null) {
+            best = index.byCategory(filter.getCategory());
+        }
+        if (filter.getPriority() != null) {
+            best = smaller(best, index.byPriority(filter.getPriority()));
+        }
+        if (filter.getCompleted() != null) {
+            best = smaller(best, index.byStatus(filter.getCompleted()));
+        }
+        return best;
+    }
+    
+    private static Collection<Task> smaller(Collection<Task> a, Collection<Task> b) {
+        return a == null || b.size() < a.size() ? b : a;
+    }
+    
+    // The first limit matching tasks that sort after the given one, found with a bounded heap instead of a full sort
+    private static ArrayList<Task> firstAfter(Iterable<Task> source, Comparator<Task> order, Task after,
+                                              TaskFilter filter, int limit) {
+        PriorityQueue<Task> kept = new PriorityQueue<>(limit + 1, Collections.reverseOrder(order));
+        for (Task task : source) {
+            if ((after != null && order.compare(task, after) <= 0) || !filter.matches(task)) {
+                continue;
+            }
+            if (kept.size() < limit) {
+                kept.add(task);
+            } else if (order.compare(task, kept.peek()) < 0) {
+                kept.poll();
+                kept.add(task);
+            }
+        }
+        ArrayList<Task> result = new ArrayList<>(kept);
+        Collections.sort(result, order);
+        return result;
+    }
+    
+    private static int today() {
+        return (int) LocalDate.now().toEpochDay();
+    }
+    
+    // Keep the indexes and counters in step with a task that was added or changed
+    private void indexTask(Task task) {
+        if (indexed || task.getId() <= indexedThrough) {
+            index.add(task);
+            search.add(task);
+        }
+        stats.add(task);
+    }
+    
+    // Drop a task from the indexes and counters before it is removed or changed
+    private void unindexTask(Task task) {
+        if (indexed || task.getId() <= indexedThrough) {
+            index.remove(task);
+            search.remove(task);
+        }
+        stats.remove(task);
+    }
+    
+    // Get the task to apply a change to, a replacing copy when tasks must not change in place
+    private Task editable(Task task) {
+        if (!copyOnWrite) {
+            return task;
+        }
+        Task copy = task.copy();
+        tasks.add(copy);
+        return copy;
+    }
+    
+    // Whether the counts are missing tasks lost to a damaged block, which settleLoss fixes
+    boolean lossUncounted() {
+        return lossUncounted;
+    }
+    
+    // Stop changing tasks in place, so tasks handed to other threads stay as they were
+    void replaceOnChange() {
+        copyOnWrite = true;
+    }
+    
+    // Decode and index every task, now and after any undone clear, after which
+    // reads never modify any state
+    void prepareForSharedReads() {
+        sharedReads = true;
+        ensureIndexed();
+        tasks.loadAll();
+        settleLoss();
+    }
+    
+    // Decode and index the next batch of tasks in id order, as prepareForSharedReads does all at once;
+    // returns true once every task is done
+    boolean prepareStep(int batch) {
+        if (sharedReads) {
+            return true;
+        }
+        if (!indexed) {
+            int position = tasks.positionAfter(indexedThrough);
+            for (int i = position; i < position + batch && i < tasks.size(); i++) {
+                // Null if tasks lost to damage left fewer than there were
+                Task task = tasks.getAt(i);
+                if (task == null) {
+                    break;
+                }
+                index.add(task);
+                search.add(task);
+                indexedThrough = task.getId();
+            }
+            if (tasks.positionAfter(indexedThrough) < tasks.size()) {
+                return false;
+            }
+            indexed = true;
+        }
+        prepareForSharedReads();
+        return true;
+    }
+    
+    // The task with an id if it is decoded already, null if there is none or it is still to be decoded
+    Task peekTaskById(int id) {
+        return tasks.peek(id);
+    }
+    
+    // The task at a display position if it is decoded already, null if it is still to be decoded
+    Task peekTaskAt(int index) {
+        return tasks.peekAt(index);
+    }
+    
+    boolean hasTask(int id) {
+        return tasks.contains(id);
+    }
+    
+    // Build the secondary and search indexes the first time a query needs them, over any partial ones
+    private void ensureIndexed() {
+        if (!indexed) {
+            index.rebuild(tasks);
+            search.rebuild(tasks);
+            indexed = true;
+        }
+    }
+    
+    // Timings of this manager's operations and writes, which the GUI and server also add to
+    public TaskMetrics getMetrics() {
+        return metrics;
+    }
+    
+    // Get a future that completes once every change made so far is on disk
+    public CompletableFuture<Void> flush() {
+        return journal.flush();
+    }
+    
+    // Write out pending changes and stop the background threads
+    public void close() {
+        if (pendingCompaction != null) {
+            try {
+                pendingCompaction.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (ExecutionException e) {
+                System.err.println("Error saving tasks: " + e.getCause().getMessage());
+            }
+        }
+        compactor.shutdown();
+        journal.close();
+        metrics.close();
+    }
+    
+    // Fold the journal into a fresh snapshot once it has grown large enough, or the snapshot turned out damaged
+    private void maybeCompact() {
+        if (snapshotDamaged || journal.getRecordCount() >= COMPACT_THRESHOLD) {
+            compact();
+        }
+    }
+    
+    // Archive what the policy picks, then rotate the journal and write a snapshot in the background
+    private void compact() {
+        if (pendingCompaction != null && !pendingCompaction.isDone()) {
+            return;
+        }
+        archiveByPolicy();
+        snapshot();
+    }
+    
+    // Rotate the journal and write a snapshot of the current state in the background
+    private void snapshot() {
+        final long closedGeneration = journal.rotate();
+        
+        // Decode what is still mapped, so nothing holds the file the snapshot is about to replace
+        tasks.loadAll();
+        settleLoss();
+        // Copy the current state so the snapshot can be written while mutations continue
+        final ArrayList<Task> snapshot = new ArrayList<>(tasks.size());
+        for (Task task : tasks) {
+            snapshot.add(copyOnWrite ? task : task.copy());
+        }
+        // Every block has been read now, so any damage is in what this snapshot replaces
+        snapshotDamaged = false;
+        final int snapshotNextId = nextId;
+        pendingCompaction = compactor.submit(new Runnable() {
+            public void run() {
+                // Archived tasks are left out of the snapshot, so they must be in the archive first
+                if (writeArchive() && saveTasks(snapshot, snapshotNextId, closedGeneration + 1)) {
+                    journal.deleteUpTo(closedGeneration);
+                }
+            }
+        });
+    }
+    
+    // Wait for the snapshot being written, if any, then archive and snapshot again if the policy picks anything
+    private int archiveNow() {
+        if (pendingCompaction != null) {
+            try {
+                pendingCompaction.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return 0;
+            } catch (ExecutionException e) {
+                System.err.println("Error saving tasks: " + e.getCause().getMessage());
+            }
+        }
+        int archived = archiveByPolicy();
+        if (archived > 0) {
+            snapshot();
+        }
+        return archived;
+    }
+    
+    // Move the completed tasks the policy picks from the live set to the archive, in memory only;
+    // they stay in the journal and the old snapshot until the next snapshot replaces them
+    private int archiveByPolicy() {
+        if (archivePolicy == null || inBulk) {
+            return 0;
+        }
+        // Tasks that undo or redo can still reach stay live
+        IntSet held = new IntSet();
+        history.collectIds(held);
+        int[] ids = archivePolicy.select(tasks.uncachedIterator(), held);
+        if (ids.length == 0) {
+            return 0;
+        }
+        ArrayList<Task> archived = new ArrayList<>(ids.length);
+        for (int id : ids) {
+            Task task = tasks.remove(id);
+            unindexTask(task);
+            archived.add(task);
+        }
+        archive.add(archived);
+        archivedDuringChange = true;
+        return ids.length;
+    }
+    
+    // Write tasks archived since the last snapshot, returning false if that failed
+    private boolean writeArchive() {
+        try {
+            archive.flush();
+            return true;
+        } catch (IOException e) {
+            System.err.println("Error saving archive: " + e.getMessage());
+            metrics.recordPersistenceFailure("archive", e.getMessage());
+            return false;
+        }
+    }
+    
+    // Save a snapshot to file, written aside and renamed so a failed write keeps the old one
+    private boolean saveTasks(ArrayList<Task> snapshot, int snapshotNextId, long generation) {
+        File target = new File(DATA_FILE);
+        long start = System.nanoTime();
+        try {
+            TaskFileFormat.replace(target, snapshot, snapshotNextId, generation);
+        } catch (IOException e) {
+            System.err.println("Error saving tasks: " + e.getMessage());
+            metrics.recordPersistenceFailure("snapshot", e.getMessage());
+            return false;
+        }
+        metrics.recordSnapshotWrite(target.length(), start);
+        return true;
+    }
+    
+    // Load the snapshot from file, then replay the journal written after it; a snapshot that exists but
+    // can't be read at all stops the manager from starting rather than have it start empty
+    private void loadTasks() {
+        long generation = 0;
+        boolean legacy = false;
+        boolean damaged = false;
+        try {
+            TaskFileFormat.Snapshot snapshot = TaskFileFormat.read(new File(DATA_FILE));
+            if (snapshot.mapped != null) {
+                // Tasks are decoded from the mapped file as they are accessed, and its blocks checked then
+                snapshot.mapped.setDamageListener(new Runnable() {
+                    public void run() {
+                        if (!snapshotDamaged) {
+                            System.err.println("Error loading tasks: " + DATA_FILE
+                                               + " is damaged, rewriting it from the tasks that can be read");
+                            metrics.recordPersistenceFailure("load", "damaged block");
+                            keepDamagedFile();
+                            snapshotDamaged = true;
+                        }
+                        lossUncounted = true;
+                    }
+                });
+                tasks = new TaskStore(snapshot.mapped);
+                snapshot.statistics.copyTo(stats);
+            } else {
+                tasks = new TaskStore(snapshot.tasks.size());
+                for (Task task : snapshot.tasks) {
+                    tasks.add(task);
+                    stats.add(task);
+                }
+            }
+            nextId = snapshot.nextId;
+            generation = snapshot.generation;
+            legacy = snapshot.legacy;
+            if (snapshot.salvaged) {
+                System.err.println("Error loading tasks: " + DATA_FILE + " is damaged, recovered "
+                                   + snapshot.tasks.size() + " tasks, lost " + snapshot.lost);
+                metrics.recordPersistenceFailure("load", "recovered " + snapshot.tasks.size() + ", lost " + snapshot.lost);
+                damaged = true;
+            }
+        } catch (FileNotFoundException | NoSuchFileException e) {
+            // File doesn't exist yet, start with empty list
+            tasks = new TaskStore();
+            nextId = 1;
+        } catch (IOException e) {
+            // Starting empty would have the next snapshot overwrite every task in the file
+            System.err.println("Error loading tasks: " + e.getMessage());
+            metrics.recordPersistenceFailure("load", e.getMessage());
+            compactor.shutdown();
+            throw new UncheckedIOException("Error loading tasks from " + DATA_FILE, e);
+        }
+        if (damaged) {
+            keepDamagedFile();
+        }
+        
+        try {
+            journal.open(generation, new TaskJournal.Replayer() {
+                public void replayAdd(Task task) {
+                    tasks.add(task);
+                    indexTask(task);
+                    nextId = Math.max(nextId, task.getId() + 1);
+                }
+                
+                public void replayRemove(int id) {
+                    Task task = tasks.remove(id);
+                    if (task != null) {
+                        unindexTask(task);
+                    }
+                }
+                
+                public void replayToggle(int id) {
+                    Task task = tasks.get(id);
+                    if (task != null) {
+                        unindexTask(task);
+                        task.toggleCompleted();
+                        indexTask(task);
+                    }
+                }
+                
+                public void replayUpdate(Task updated) {
+                    Task task = tasks.get(updated.getId());
+                    if (task != null) {
+                        unindexTask(task);
+                        task.setTitle(updated.getTitle());
+                        task.setDescription(updated.getDescription());
+                        task.setPriority(updated.getPriority());
+                        task.setDueDate(updated.getDueDate());
+                        task.setCategory(updated.getCategory());
+                        indexTask(task);
+                    }
+                }
+                
+                public void replayClear() {
+                    tasks.clear();
+                    stats.clear();
+                }
+            });
+        } catch (IOException e) {
+            System.err.println("Error loading tasks: " + e.getMessage());
+        }
+        if (legacy || damaged) {
+            // Rewrite files from older versions, and what was salvaged, in the current format
+            compact();
+        } else {
+            // The archive policy is applied at compaction, which reads every task anyway, not here
+            maybeCompact();
+        }
+    }
+    
+    // Copy a snapshot that could not be read in full aside, before a compaction replaces it
+    private void keepDamagedFile() {
+        try {
+            Files.copy(Paths.get(DATA_FILE), Paths.get(DATA_FILE + ".damaged"), StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            System.err.println("Error keeping damaged file: " + e.getMessage());
+        }
+    }
+    
+    // Clear all tasks
+    public void clearAllTasks() {
+        long start = System.nanoTime();
+        try {
+            history.record(TaskHistory.cleared(retire()));
+        } finally {
+            metrics.record(TaskMetrics.Operation.CLEAR, start);
+        }
+    }
+    
+    // Get unique categories
+    public Set<String> getCategories() {
+        ensureIndexed();
+        return index.categories();
+    }
+}
@@ -0,0 +1,350 @@
+package todo;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.beans.ConstructorProperties;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * TaskMetrics collects where the time of one TaskManager goes
+ * Every public TaskManager operation, journal write and snapshot write is
+ * timed into a LatencyHistogram, and the GUI adds how long the EDT spends
+ * on each event and on applying model changes. Recording is two clock
+ * reads and an atomic increment, so it is always on.
+ *
+ * The numbers can be read through JMX once the metrics are exposed, dumped
+ * periodically as text, and, on runtimes with Flight Recorder, are also
+ * emitted as JFR events so they line up with GC and allocation profiles.
+ */
+public class TaskMetrics implements TaskMetricsMXBean {
+    // Seconds between dumps to standard output, off unless set
+    public static final String DUMP_PROPERTY = "todo.metrics.dumpSeconds";
+    
+    /**
+     * The TaskManager operations that are timed
+     */
+    public enum Operation {
+        ADD("add"),
+        IMPORT("import"),
+        EXPORT("export"),
+        REMOVE("remove"),
+        TOGGLE("toggle"),
+        UPDATE("update"),
+        CLEAR("clear"),
+        UNDO("undo"),
+        REDO("redo"),
+        LIST("list"),
+        PAGE("page"),
+        FILTER("filter"),
+        DUE("due"),
+        SEARCH("search"),
+        QUERY("query"),
+        ARCHIVE("archive"),
+        ARCHIVE_SEARCH("archive search"),
+        STATISTICS("statistics");
+        
+        private final String label;
+        
+        Operation(String label) {
+            this.label = label;
+        }
+        
+        public String getLabel() {
+            return label;
+        }
+    }
+    
+    /**
+     * A latency summary in microseconds, the form JMX clients see
+     */
+    public static class Latency {
+        private final long count;
+        private final double meanMicros;
+        private final double p50Micros;
+        private final double p99Micros;
+        private final double maxMicros;
+        
+        @ConstructorProperties({"count", "meanMicros", "p50Micros", "p99Micros", "maxMicros"})
+        public Latency(long count, double meanMicros, double p50Micros, double p99Micros, double maxMicros) {
+            this.count = count;
+            this.meanMicros = meanMicros;
+            this.p50Micros = p50Micros;
+            this.p99Micros = p99Micros;
+            this.maxMicros = maxMicros;
+        }
+        
+        Latency(LatencyHistogram.Snapshot snapshot) {
+            this(snapshot.getCount(), micros(snapshot.getMean()), micros(snapshot.getPercentile(0.50)),
+                 micros(snapshot.getPercentile(0.99)), micros(snapshot.getMax()));
+        }
+        
+        public long getCount() {
+            return count;
+        }
+        
+        public double getMeanMicros() {
+            return meanMicros;
+        }
+        
+        public double getP50Micros() {
+            return p50Micros;
+        }
+        
+        public double getP99Micros() {
+            return p99Micros;
+        }
+        
+        public double getMaxMicros() {
+            return maxMicros;
+        }
+        
+        @Override
+        public String toString() {
+            return String.format("count=%d mean=%.1fus p50=%.1fus p99=%.1fus max=%.1fus",
+                                 count, meanMicros, p50Micros, p99Micros, maxMicros);
+        }
+    }
+    
+    /**
+     * Where timings are sent besides the histograms, implemented over Flight Recorder by TaskFlightEvents
+     */
+    interface EventSink {
+        void operation(String operation, long nanos);
+        
+        void persistence(String kind, long bytes, long nanos, String error);
+        
+        void edtDispatch(String eventType, long nanos);
+    }
+    
+    // Flight Recorder events are only built where the runtime has Flight Recorder, null elsewhere
+    private static final EventSink FLIGHT_RECORDER = flightRecorder();
+    // EDT events faster than this are counted but not sent to Flight Recorder
+    private static final long EDT_EVENT_THRESHOLD_NANOS = 1000000L;
+    
+    private final LatencyHistogram[] operations = new LatencyHistogram[Operation.values().length];
+    private final LatencyHistogram journalWrites = new LatencyHistogram();
+    private final LatencyHistogram snapshotWrites = new LatencyHistogram();
+    private final LatencyHistogram edtDispatch = new LatencyHistogram();
+    private final LatencyHistogram modelRefresh = new LatencyHistogram();
+    private final AtomicLong journalBytes = new AtomicLong();
+    private final AtomicLong snapshotBytes = new AtomicLong();
+    private final AtomicLong persistenceFailures = new AtomicLong();
+    private volatile String lastPersistenceError;
+    
+    private String name = "TaskManager";
+    private ObjectName registered;
+    private ScheduledExecutorService dumper;
+    
+    public TaskMetrics() {
+        for (int i = 0; i < operations.length; i++) {
+            operations[i] = new LatencyHistogram();
+        }
+    }
+    
+    // Time an operation that started at a System.nanoTime() reading
+    void record(Operation operation, long startNanos) {
+        long nanos = System.nanoTime() - startNanos;
+        operations[operation.ordinal()].record(nanos);
+        if (FLIGHT_RECORDER != null) {
+            FLIGHT_RECORDER.operation(operation.label, nanos);
+        }
+    }
+    
+    void recordJournalWrite(long bytes, long startNanos) {
+        long nanos = System.nanoTime() - startNanos;
+        journalWrites.record(nanos);
+        journalBytes.addAndGet(bytes);
+        if (FLIGHT_RECORDER != null) {
+            FLIGHT_RECORDER.persistence("journal", bytes, nanos, null);
+        }
+    }
+    
+    void recordSnapshotWrite(long bytes, long startNanos) {
+        long nanos = System.nanoTime() - startNanos;
+        snapshotWrites.record(nanos);
+        snapshotBytes.addAndGet(bytes);
+        if (FLIGHT_RECORDER != null) {
+            FLIGHT_RECORDER.persistence("snapshot", bytes, nanos, null);
+        }
+    }
+    
+    // A journal or snapshot write that failed, which otherwise only shows up on standard error
+    void recordPersistenceFailure(String kind, String message) {
+        persistenceFailures.incrementAndGet();
+        lastPersistenceError = kind + ": " + message;
+        if (FLIGHT_RECORDER != null) {
+            FLIGHT_RECORDER.persistence(kind, 0, 0, message);
+        }
+    }
+    
+    // Time one event on the event dispatch thread
+    void recordEdtDispatch(String eventType, long startNanos) {
+        long nanos = System.nanoTime() - startNanos;
+        edtDispatch.record(nanos);
+        if (FLIGHT_RECORDER != null && nanos >= EDT_EVENT_THRESHOLD_NANOS) {
+            FLIGHT_RECORDER.edtDispatch(eventType, nanos);
+        }
+    }
+    
+    // Time applying a change to the list model, including the repaint requests it triggers
+    void recordModelRefresh(long startNanos) {
+        modelRefresh.recordSince(startNanos);
+    }
+    
+    LatencyHistogram.Snapshot snapshot(Operation operation) {
+        return operations[operation.ordinal()].snapshot();
+    }
+    
+    public Map<String, Latency> getOperations() {
+        Map<String, Latency> result = new LinkedHashMap<>();
+        for (Operation operation : Operation.values()) {
+            LatencyHistogram.Snapshot snapshot = snapshot(operation);
+            if (snapshot.getCount() > 0) {
+                result.put(operation.label, new Latency(snapshot));
+            }
+        }
+        return result;
+    }
+    
+    public Latency getJournalWriteLatency() {
+        return new Latency(journalWrites.snapshot());
+    }
+    
+    public long getJournalBytesWritten() {
+        return journalBytes.get();
+    }
+    
+    public Latency getSnapshotWriteLatency() {
+        return new Latency(snapshotWrites.snapshot());
+    }
+    
+    public long getSnapshotBytesWritten() {
+        return snapshotBytes.get();
+    }
+    
+    public long getPersistenceFailures() {
+        return persistenceFailures.get();
+    }
+    
+    public String getLastPersistenceError() {
+        return lastPersistenceError;
+    }
+    
+    public Latency getEdtDispatchLatency() {
+        return new Latency(edtDispatch.snapshot());
+    }
+    
+    public Latency getModelRefreshLatency() {
+        return new Latency(modelRefresh.snapshot());
+    }
+    
+    // Everything recorded so far as text, one line per timing that has been used
+    public String dump() {
+        StringBuilder text = new StringBuilder(1024);
+        text.append("Metrics for ").append(name).append('\n');
+        for (Map.Entry<String, Latency> entry : getOperations().entrySet()) {
+            appendLine(text, entry.getKey(), entry.getValue());
+        }
+        appendLine(text, "journal write", getJournalWriteLatency());
+        appendLine(text, "snapshot write", getSnapshotWriteLatency());
+        appendLine(text, "EDT dispatch", getEdtDispatchLatency());
+        appendLine(text, "model refresh", getModelRefreshLatency());
+        text.append(String.format("  %-16s journal=%d snapshot=%d%n", "bytes written", getJournalBytesWritten(),
+                                  getSnapshotBytesWritten()));
+        text.append(String.format("  %-16s %d%n", "save failures", getPersistenceFailures()));
+        if (lastPersistenceError != null) {
+            text.append(String.format("  %-16s %s%n", "last failure", lastPersistenceError));
+        }
+        return text.toString();
+    }
+    
+    public void reset() {
+        for (LatencyHistogram histogram : operations) {
+            histogram.reset();
+        }
+        journalWrites.reset();
+        snapshotWrites.reset();
+        edtDispatch.reset();
+        modelRefresh.reset();
+        journalBytes.set(0);
+        snapshotBytes.set(0);
+        persistenceFailures.set(0);
+        lastPersistenceError = null;
+    }
+    
+    // Register as an MXBean named after the data file, and dump every todo.metrics.dumpSeconds if that is set
+    public synchronized void expose(String name) {
+        this.name = name;
+        if (registered == null) {
+            try {
+                ObjectName objectName = new ObjectName("todo:type=TaskManager,name=" + ObjectName.quote(name));
+                ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+                registered = objectName;
+            } catch (JMException e) {
+                System.err.println("Error registering metrics: " + e.getMessage());
+            }
+        }
+        long seconds = Long.getLong(DUMP_PROPERTY, 0L);
+        if (seconds > 0) {
+            startPeriodicDump(seconds, System.out);
+        }
+    }
+    
+    public synchronized void startPeriodicDump(long periodSeconds, final PrintStream out) {
+        if (dumper != null) {
+            return;
+        }
+        dumper = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "TaskMetrics-dump");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        dumper.scheduleAtFixedRate(new Runnable() {
+            public void run() {
+                out.print(dump());
+            }
+        }, periodSeconds, periodSeconds, TimeUnit.SECONDS);
+    }
+    
+    // Stop dumping and unregister from JMX, when the manager is closed
+    synchronized void close() {
+        if (dumper != null) {
+            dumper.shutdown();
+            dumper = null;
+        }
+        if (registered != null) {
+            try {
+                ManagementFactory.getPlatformMBeanServer().unregisterMBean(registered);
+            } catch (JMException e) {
+                System.err.println("Error unregistering metrics: " + e.getMessage());
+            }
+            registered = null;
+        }
+    }
+    
+    private static void appendLine(StringBuilder text, String label, Latency latency) {
+        if (latency.getCount() > 0) {
+            text.append(String.format("  %-16s %s%n", label, latency));
+        }
+    }
+    
+    private static double micros(long nanos) {
+        return Math.round(nanos / 100.0) / 10.0;
+    }
+    
+    // TaskFlightEvents is built for Java 11, so it is loaded by name and fails to load on older runtimes
+    private static EventSink flightRecorder() {
+        try {
+            Class.forName("jdk.jfr.Event");
+            return (EventSink) Class.forName("todo.TaskFlightEvents").getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException | LinkageError e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,31 @@
+package todo;
+
+import java.util.Map;
+
+/**
+ * Management interface of TaskMetrics, as shown in JConsole or VisualVM
+ * Latencies are in microseconds.
+ */
+public interface TaskMetricsMXBean {
+    Map<String, TaskMetrics.Latency> getOperations();
+    
+    TaskMetrics.Latency getJournalWriteLatency();
+    
+    long getJournalBytesWritten();
+    
+    TaskMetrics.Latency getSnapshotWriteLatency();
+    
+    long getSnapshotBytesWritten();
+    
+    long getPersistenceFailures();
+    
+    String getLastPersistenceError();
+    
+    TaskMetrics.Latency getEdtDispatchLatency();
+    
+    TaskMetrics.Latency getModelRefreshLatency();
+    
+    String dump();
+    
+    void reset();
+}
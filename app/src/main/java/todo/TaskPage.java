@@ -0,0 +1,69 @@
+package todo;
+
+import java.util.*;
+
+/**
+ * TaskPage is one page of a sorted, filtered task view
+ * The cursor of a page picks up right after its last task, so paging stays
+ * stable while tasks are added or removed between requests: nothing is
+ * skipped or shown twice because positions shifted.
+ */
+public class TaskPage {
+    private final List<Task> tasks;
+    private final String nextCursor;
+    
+    TaskPage(List<Task> tasks, String nextCursor) {
+        this.tasks = Collections.unmodifiableList(tasks);
+        this.nextCursor = nextCursor;
+    }
+    
+    public List<Task> getTasks() {
+        return tasks;
+    }
+    
+    // Cursor for the following page, or null if this is the last one
+    public String getNextCursor() {
+        return nextCursor;
+    }
+    
+    public boolean hasMore() {
+        return nextCursor != null;
+    }
+    
+    // The cursor that continues a view after a task
+    static String cursorAfter(TaskSort sort, Task task) {
+        switch (sort) {
+            case PRIORITY: return sort + ":" + task.getId() + ":" + task.getPriorityLevel().ordinal();
+            case DUE_DATE: return sort + ":" + task.getId() + ":" + task.getDueDay();
+            case TITLE: return sort + ":" + task.getId() + ":" + task.getTitle();
+            default: return sort + ":" + task.getId();
+        }
+    }
+    
+    // A stand-in for the task a cursor continues after, compared with the view's comparator
+    static Task probe(TaskSort sort, String cursor) {
+        String[] parts = cursor.split(":", 3);
+        if (parts.length < 2 || !parts[0].equals(sort.name()) || (sort != TaskSort.ID && parts.length < 3)) {
+            throw new IllegalArgumentException("Cursor does not belong to a " + sort + " view: " + cursor);
+        }
+        try {
+            Task probe = new Task(Integer.parseInt(parts[1]), null, null, Priority.NONE, null, null);
+            switch (sort) {
+                case PRIORITY:
+                    probe.setPriority(Priority.ofOrdinal(Integer.parseInt(parts[2])));
+                    break;
+                case DUE_DATE:
+                    probe.setDueDay(Integer.parseInt(parts[2]));
+                    break;
+                case TITLE:
+                    probe.setTitle(parts[2]);
+                    break;
+                default:
+                    break;
+            }
+            return probe;
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException("Malformed cursor: " + cursor, e);
+        }
+    }
+}
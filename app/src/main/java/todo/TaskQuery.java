@@ -0,0 +1,340 @@
+package todo;
+
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.BiConsumer;
+import java.util.function.BinaryOperator;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+import java.util.stream.Collector;
+import java.util.stream.Collectors;
+
+/**
+ * TaskQuery is a composable query over a list of tasks
+ * It filters, then sorts, then limits, then projects each task, in that
+ * order whatever order the calls were made in. Aggregates run over the
+ * projected rows, and statistics over the tasks themselves. A query is
+ * immutable, so each call returns a new one and a query can be kept and
+ * run again.
+ *
+ *   List<String> titles = TaskQuery.where(new TaskFilter(false, "Work", null))
+ *       .sortedBy(TaskSort.DUE_DATE).limit(10).select(Task::getTitle).run(tasks);
+ *
+ * Lists of PARALLEL_THRESHOLD tasks or more are split into ranges that are
+ * scanned on the common fork-join pool; shorter lists, and runtimes with a
+ * single core, are scanned on the calling thread. Ranges are joined left to
+ * right and sorting is stable, so a query returns the same rows in the same
+ * order either way. Predicates, comparators and projections may then be
+ * called from several threads at once and must not change the tasks.
+ */
+public final class TaskQuery<R> {
+    // Lists with fewer tasks than this are always scanned on the calling thread
+    public static final int PARALLEL_THRESHOLD = 20000;
+    // Tasks one fork-join leaf scans on its own
+    private static final int LEAF_SIZE = 4096;
+    private static final int NO_LIMIT = -1;
+    
+    private static final Function<Task, Task> IDENTITY = new Function<Task, Task>() {
+        public Task apply(Task task) {
+            return task;
+        }
+    };
+    
+    // Null to match every task, and to keep the source order
+    private final Predicate<? super Task> predicate;
+    private final Comparator<? super Task> order;
+    private final int limit;
+    private final Function<? super Task, ? extends R> projection;
+    
+    private TaskQuery(Predicate<? super Task> predicate, Comparator<? super Task> order, int limit,
+                      Function<? super Task, ? extends R> projection) {
+        this.predicate = predicate;
+        this.order = order;
+        this.limit = limit;
+        this.projection = projection;
+    }
+    
+    // Every task, in source order
+    public static TaskQuery<Task> all() {
+        return new TaskQuery<Task>(null, null, NO_LIMIT, IDENTITY);
+    }
+    
+    public static TaskQuery<Task> where(Predicate<? super Task> predicate) {
+        return all().and(predicate);
+    }
+    
+    public static TaskQuery<Task> where(final TaskFilter filter) {
+        return all().and(matching(filter));
+    }
+    
+    // Tasks a TaskFilter matches, as a predicate
+    public static Predicate<Task> matching(final TaskFilter filter) {
+        return new Predicate<Task>() {
+            public boolean test(Task task) {
+                return filter.matches(task);
+            }
+        };
+    }
+    
+    // Tasks whose title or description contains a term ignoring case, as searchTasks matches them
+    public static Predicate<Task> containing(String term) {
+        final String folded = SearchIndex.fold(term);
+        return new Predicate<Task>() {
+            public boolean test(Task task) {
+                return SearchIndex.matches(task, folded);
+            }
+        };
+    }
+    
+    // Also require a predicate, on top of any given before
+    public TaskQuery<R> and(final Predicate<? super Task> next) {
+        if (predicate == null) {
+            return new TaskQuery<R>(next, order, limit, projection);
+        }
+        final Predicate<? super Task> first = predicate;
+        return new TaskQuery<R>(new Predicate<Task>() {
+            public boolean test(Task task) {
+                return first.test(task) && next.test(task);
+            }
+        }, order, limit, projection);
+    }
+    
+    public TaskQuery<R> sortedBy(Comparator<? super Task> comparator) {
+        return new TaskQuery<R>(predicate, comparator, limit, projection);
+    }
+    
+    public TaskQuery<R> sortedBy(TaskSort sort) {
+        return sortedBy(sort.comparator());
+    }
+    
+    // Keep only the first tasks after sorting
+    public TaskQuery<R> limit(int maxRows) {
+        if (maxRows < 0) {
+            throw new IllegalArgumentException("Limit must not be negative: " + maxRows);
+        }
+        return new TaskQuery<R>(predicate, order, maxRows, projection);
+    }
+    
+    // Turn each task that makes it through into a row, replacing any projection given before
+    public <S> TaskQuery<S> select(Function<? super Task, ? extends S> rowOf) {
+        return new TaskQuery<S>(predicate, order, limit, rowOf);
+    }
+    
+    // The rows of the query over a list of tasks
+    public List<R> run(List<? extends Task> tasks) {
+        List<Task> matches = matches(tasks);
+        ArrayList<R> rows = new ArrayList<>(matches.size());
+        for (Task task : matches) {
+            rows.add(projection.apply(task));
+        }
+        return rows;
+    }
+    
+    // Number of rows run would return, without collecting them
+    public int count(List<? extends Task> tasks) {
+        if (limit != NO_LIMIT) {
+            return matches(tasks).size();
+        }
+        return reduce(tasks, Collectors.counting()).intValue();
+    }
+    
+    // Collect the rows, such as into groups with Collectors.groupingBy; the collector sees them in order
+    public <A, T> T aggregate(List<? extends Task> tasks, Collector<? super R, A, T> collector) {
+        Collector<Task, ?, T> rows = Collectors.mapping(projection, collector);
+        if (order != null || limit != NO_LIMIT) {
+            return collect(matches(tasks), rows);
+        }
+        return reduce(tasks, rows);
+    }
+    
+    // Count the tasks the query keeps, whatever they are projected to
+    public TaskStatistics statistics(List<? extends Task> tasks) {
+        Collector<Task, TaskStatistics, TaskStatistics> counts = Collector.of(
+            new Supplier<TaskStatistics>() {
+                public TaskStatistics get() {
+                    return new TaskStatistics();
+                }
+            },
+            new BiConsumer<TaskStatistics, Task>() {
+                public void accept(TaskStatistics statistics, Task task) {
+                    statistics.add(task);
+                }
+            },
+            new BinaryOperator<TaskStatistics>() {
+                public TaskStatistics apply(TaskStatistics left, TaskStatistics right) {
+                    left.addAll(right);
+                    return left;
+                }
+            });
+        if (limit != NO_LIMIT) {
+            return collect(matches(tasks), counts);
+        }
+        return reduce(tasks, counts);
+    }
+    
+    // The tasks that pass the predicate, sorted and limited
+    private List<Task> matches(List<? extends Task> tasks) {
+        if (limit == 0) {
+            return new ArrayList<>();
+        }
+        List<? extends Task> source = randomAccess(tasks);
+        if (isParallel(source)) {
+            return ForkJoinPool.commonPool().invoke(new Scan(source, 0, source.size()));
+        }
+        return new Scan(source, 0, source.size()).scan();
+    }
+    
+    // Fold every matching task into a collector, range by range
+    private <A, T> T reduce(List<? extends Task> tasks, Collector<? super Task, A, T> collector) {
+        List<? extends Task> source = randomAccess(tasks);
+        Reduce<A> reduce = new Reduce<>(source, 0, source.size(), collector);
+        A result = isParallel(source) ? ForkJoinPool.commonPool().invoke(reduce) : reduce.fold();
+        return collector.finisher().apply(result);
+    }
+    
+    private static <A, T> T collect(List<Task> tasks, Collector<? super Task, A, T> collector) {
+        A container = collector.supplier().get();
+        for (Task task : tasks) {
+            collector.accumulator().accept(container, task);
+        }
+        return collector.finisher().apply(container);
+    }
+    
+    private boolean test(Task task) {
+        return predicate == null || predicate.test(task);
+    }
+    
+    private static boolean isParallel(List<?> source) {
+        return source.size() >= PARALLEL_THRESHOLD && ForkJoinPool.getCommonPoolParallelism() > 1;
+    }
+    
+    // Ranges are read by index, so a list without fast positional access is copied first
+    private static List<? extends Task> randomAccess(List<? extends Task> tasks) {
+        return tasks instanceof RandomAccess ? tasks : new ArrayList<Task>(tasks);
+    }
+    
+    /**
+     * Matching tasks of a range, split in halves while the range is large
+     * With a sort each range is sorted on its own and the halves are merged,
+     * with a limit each keeps only its own first rows, so a top ten over
+     * millions of tasks never holds more than ten per range.
+     */
+    private final class Scan extends RecursiveTask<List<Task>> {
+        private static final long serialVersionUID = 1L;
+        private final List<? extends Task> source;
+        private final int from;
+        private final int to;
+        
+        Scan(List<? extends Task> source, int from, int to) {
+            this.source = source;
+            this.from = from;
+            this.to = to;
+        }
+        
+        @Override
+        protected List<Task> compute() {
+            if (to - from <= LEAF_SIZE) {
+                return scan();
+            }
+            int middle = (from + to) >>> 1;
+            Scan left = new Scan(source, from, middle);
+            left.fork();
+            List<Task> right = new Scan(source, middle, to).compute();
+            return join(left.join(), right);
+        }
+        
+        // Scan the whole range on this thread
+        List<Task> scan() {
+            ArrayList<Task> found = new ArrayList<>();
+            for (int i = from; i < to; i++) {
+                Task task = source.get(i);
+                if (test(task)) {
+                    found.add(task);
+                    if (order == null && found.size() == limit) {
+                        break;
+                    }
+                }
+            }
+            if (order != null) {
+                Collections.sort(found, order);
+                if (limit != NO_LIMIT && found.size() > limit) {
+                    return new ArrayList<>(found.subList(0, limit));
+                }
+            }
+            return found;
+        }
+        
+        // Rows of the left range come before equal rows of the right one
+        private List<Task> join(List<Task> left, List<Task> right) {
+            if (order == null) {
+                if (limit != NO_LIMIT && left.size() >= limit) {
+                    return left;
+                }
+                ArrayList<Task> joined = new ArrayList<>(left.size() + right.size());
+                joined.addAll(left);
+                joined.addAll(limit != NO_LIMIT ? right.subList(0, Math.min(right.size(), limit - left.size())) : right);
+                return joined;
+            }
+            int size = left.size() + right.size();
+            if (limit != NO_LIMIT) {
+                size = Math.min(size, limit);
+            }
+            ArrayList<Task> merged = new ArrayList<>(size);
+            int l = 0;
+            int r = 0;
+            while (merged.size() < size) {
+                if (r == right.size() || (l < left.size() && order.compare(left.get(l), right.get(r)) <= 0)) {
+                    merged.add(left.get(l++));
+                } else {
+                    merged.add(right.get(r++));
+                }
+            }
+            return merged;
+        }
+    }
+    
+    /**
+     * A collector's container for the matching tasks of a range, combined left to right
+     */
+    private final class Reduce<A> extends RecursiveTask<A> {
+        private static final long serialVersionUID = 1L;
+        private final List<? extends Task> source;
+        private final int from;
+        private final int to;
+        private final Collector<? super Task, A, ?> collector;
+        
+        Reduce(List<? extends Task> source, int from, int to, Collector<? super Task, A, ?> collector) {
+            this.source = source;
+            this.from = from;
+            this.to = to;
+            this.collector = collector;
+        }
+        
+        @Override
+        protected A compute() {
+            if (to - from <= LEAF_SIZE) {
+                return fold();
+            }
+            int middle = (from + to) >>> 1;
+            Reduce<A> left = new Reduce<>(source, from, middle, collector);
+            left.fork();
+            A right = new Reduce<>(source, middle, to, collector).compute();
+            return collector.combiner().apply(left.join(), right);
+        }
+        
+        // Fold the whole range on this thread
+        A fold() {
+            A container = collector.supplier().get();
+            BiConsumer<A, ? super Task> accumulator = collector.accumulator();
+            for (int i = from; i < to; i++) {
+                Task task = source.get(i);
+                if (test(task)) {
+                    accumulator.accept(container, task);
+                }
+            }
+            return container;
+        }
+    }
+}
@@ -0,0 +1,214 @@
+package todo;
+
+import javax.swing.*;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
+import java.awt.*;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * TaskSearchPanel narrows the task list to a search term, status and priority
+ * Typing only restarts a timer on the EDT; once input has been quiet for
+ * DEBOUNCE_MILLIS the query runs on a background thread, and its results
+ * are published to the TaskListModel in a single update. Each query is
+ * numbered, and one that a newer query has superseded is dropped, whether
+ * it is still queued, running or waiting to be published.
+ *
+ * Search Archive looks the term up among archived tasks instead and lists
+ * them in a dialog, since they are no longer in the task list.
+ *
+ * Queries read the manager from another thread, so it must be a
+ * ConcurrentTaskManager.
+ */
+public class TaskSearchPanel extends JPanel {
+    private static final long serialVersionUID = 1L;
+    
+    // Milliseconds of quiet input before a query runs
+    static final int DEBOUNCE_MILLIS = 150;
+    // Results filtered between checks for a newer query
+    private static final int CANCEL_CHECK_INTERVAL = 4096;
+    private static final String ANY = "Any";
+    
+    private final TaskManager taskManager;
+    private final TaskListModel listModel;
+    // Run on the EDT after new results are shown
+    private final Runnable onResults;
+    private final JTextField searchField;
+    private final JComboBox<String> statusCombo;
+    private final JComboBox<String> priorityCombo;
+    private final Timer debounce;
+    private final ExecutorService searcher;
+    // Number of the latest query, results of any other are not shown
+    private final AtomicInteger generation = new AtomicInteger();
+    private Future<?> running;
+    
+    public TaskSearchPanel(TaskManager taskManager, TaskListModel listModel, Runnable onResults) {
+        super(new FlowLayout(FlowLayout.LEFT));
+        this.taskManager = taskManager;
+        this.listModel = listModel;
+        this.onResults = onResults;
+        setBorder(BorderFactory.createTitledBorder("Search"));
+        
+        searchField = new JTextField(18);
+        statusCombo = new JComboBox<>(new String[]{ANY, "Pending", "Completed"});
+        priorityCombo = new JComboBox<>(new String[]{ANY, "High", "Medium", "Low"});
+        JButton clearButton = new JButton("Clear");
+        JButton archiveButton = new JButton("Search Archive");
+        add(searchField);
+        add(new JLabel("Status:"));
+        add(statusCombo);
+        add(new JLabel("Priority:"));
+        add(priorityCombo);
+        add(clearButton);
+        add(archiveButton);
+        
+        debounce = new Timer(DEBOUNCE_MILLIS, new ActionListener() {
+            public void actionPerformed(ActionEvent e) {
+                runQuery();
+            }
+        });
+        debounce.setRepeats(false);
+        searcher = Executors.newSingleThreadExecutor(new ThreadFactory() {
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "TaskSearch");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        
+        searchField.getDocument().addDocumentListener(new DocumentListener() {
+            public void insertUpdate(DocumentEvent e) {
+                debounce.restart();
+            }
+            
+            public void removeUpdate(DocumentEvent e) {
+                debounce.restart();
+            }
+            
+            public void changedUpdate(DocumentEvent e) {
+                debounce.restart();
+            }
+        });
+        ActionListener restart = new ActionListener() {
+            public void actionPerformed(ActionEvent e) {
+                debounce.restart();
+            }
+        };
+        statusCombo.addActionListener(restart);
+        priorityCombo.addActionListener(restart);
+        clearButton.addActionListener(new ActionListener() {
+            public void actionPerformed(ActionEvent e) {
+                searchField.setText("");
+                statusCombo.setSelectedIndex(0);
+                priorityCombo.setSelectedIndex(0);
+            }
+        });
+        archiveButton.addActionListener(new ActionListener() {
+            public void actionPerformed(ActionEvent e) {
+                searchArchive();
+            }
+        });
+        
+        // Results go stale when tasks change, so search again once the changes settle
+        taskManager.addTaskChangeListener(new TaskChangeListener() {
+            public void taskChanged(TaskChangeEvent event) {
+                if (listModel.isFiltered()) {
+                    debounce.restart();
+                }
+            }
+        }, TaskListModel.ON_EDT, true);
+    }
+    
+    // Stop searching, when the window closes
+    public void shutdown() {
+        debounce.stop();
+        searcher.shutdownNow();
+    }
+    
+    // Read the criteria on the EDT and hand the query to the background thread
+    private void runQuery() {
+        final String term = searchField.getText().trim();
+        String status = (String) statusCombo.getSelectedItem();
+        String priority = (String) priorityCombo.getSelectedItem();
+        final TaskFilter filter = new TaskFilter(ANY.equals(status) ? null : "Completed".equals(status), null,
+                                                 ANY.equals(priority) ? null : Priority.of(priority));
+        final int query = generation.incrementAndGet();
+        if (running != null) {
+            running.cancel(false);
+        }
+        if (term.isEmpty() && filter.getCompleted() == null && filter.getPriority() == null) {
+            running = null;
+            listModel.showAll();
+            onResults.run();
+            return;
+        }
+        running = searcher.submit(new Runnable() {
+            public void run() {
+                final int[] ids = find(term, filter, query);
+                if (ids == null) {
+                    return;
+                }
+                SwingUtilities.invokeLater(new Runnable() {
+                    public void run() {
+                        if (query == generation.get()) {
+                            listModel.showResults(ids);
+                            onResults.run();
+                        }
+                    }
+                });
+            }
+        });
+    }
+    
+    // Search archived tasks for the term in the background and list them in a dialog
+    private void searchArchive() {
+        final String term = searchField.getText().trim();
+        searcher.submit(new Runnable() {
+            public void run() {
+                final List<Task> found = taskManager.searchArchive(term);
+                SwingUtilities.invokeLater(new Runnable() {
+                    public void run() {
+                        JList<String> list = new JList<>(new AbstractListModel<String>() {
+                            public int getSize() {
+                                return found.size();
+                            }
+                            
+                            public String getElementAt(int index) {
+                                return found.get(index).getDisplayText();
+                            }
+                        });
+                        list.setVisibleRowCount(15);
+                        JScrollPane scrollPane = new JScrollPane(list);
+                        scrollPane.setPreferredSize(new Dimension(600, 300));
+                        JOptionPane.showMessageDialog(TaskSearchPanel.this, scrollPane,
+                                                      "Archived tasks: " + found.size(), JOptionPane.PLAIN_MESSAGE);
+                    }
+                });
+            }
+        });
+    }
+    
+    // Ids of the matching tasks in id order, or null once a newer query has started
+    private int[] find(String term, TaskFilter filter, int query) {
+        List<Task> candidates = term.isEmpty()
+            ? taskManager.query(TaskQuery.where(filter))
+            : taskManager.searchTasks(term);
+        int[] ids = new int[candidates.size()];
+        int count = 0;
+        for (int i = 0; i < candidates.size(); i++) {
+            if (i % CANCEL_CHECK_INTERVAL == 0 && query != generation.get()) {
+                return null;
+            }
+            Task task = candidates.get(i);
+            if (filter.matches(task)) {
+                ids[count++] = task.getId();
+            }
+        }
+        return query == generation.get() ? Arrays.copyOf(ids, count) : null;
+    }
+}
@@ -0,0 +1,573 @@
+package todo;
+
+import com.sun.net.httpserver.Headers;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.*;
+import java.lang.reflect.Method;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * TaskServer serves a TaskManager as a local HTTP JSON API, without the GUI
+ * It runs on the JDK's built-in HTTP server with a thread per request:
+ * virtual threads on Java 21 and later, a cached pool of platform threads
+ * before that. Tasks are sent and received as the same JSON objects a JSON
+ * Lines export writes.
+ *
+ *   GET    /tasks?sort=&completed=&category=&priority=&cursor=&limit=
+ *   GET    /tasks/search?q=&limit=
+ *   GET    /archive/search?q=&limit=  completed tasks the archive policy moved out
+ *   POST   /tasks
+ *   GET    /tasks/{id}, PUT /tasks/{id}, DELETE /tasks/{id}
+ *   POST   /tasks/{id}/toggle
+ *   POST   /undo, POST /redo
+ *   GET    /stats
+ *   GET    /metrics                latency percentiles of every route
+ *
+ * Any web page the user has open can send requests to a local port, so the
+ * server refuses a Host that is not localhost or an IP address (a DNS name
+ * rebound to this machine), an Origin other than the Host (another site's
+ * page), and task bodies that are not application/json, which a plain form
+ * can't send.
+ */
+public class TaskServer {
+    private static final int DEFAULT_PORT = 8080;
+    private static final int DEFAULT_LIMIT = 50;
+    private static final int MAX_LIMIT = 1000;
+    private static final int MAX_BODY = 1 << 20;
+    
+    static {
+        // The JDK server writes headers and body separately, so with Nagle's algorithm on, every small
+        // response waits out the client's delayed ACK; it reads this once, when the first server is made
+        if (System.getProperty("sun.net.httpserver.nodelay") == null) {
+            System.setProperty("sun.net.httpserver.nodelay", "true");
+        }
+    }
+    
+    /**
+     * What a request asks for, each with its own latency histogram
+     */
+    private enum Route {
+        LIST("GET /tasks"),
+        SEARCH("GET /tasks/search"),
+        ARCHIVE_SEARCH("GET /archive/search"),
+        CREATE("POST /tasks"),
+        GET("GET /tasks/{id}"),
+        UPDATE("PUT /tasks/{id}"),
+        DELETE("DELETE /tasks/{id}"),
+        TOGGLE("POST /tasks/{id}/toggle"),
+        UNDO("POST /undo"),
+        REDO("POST /redo"),
+        STATS("GET /stats"),
+        METRICS("GET /metrics"),
+        NOT_FOUND("not found"),
+        NOT_ALLOWED("method not allowed");
+        
+        private final String label;
+        
+        Route(String label) {
+            this.label = label;
+        }
+    }
+    
+    /**
+     * A request that can't be served, answered with its status and message
+     */
+    private static class RequestException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+        
+        private final int status;
+        
+        RequestException(int status, String message) {
+            super(message);
+            this.status = status;
+        }
+    }
+    
+    private final TaskManager manager;
+    private final HttpServer server;
+    private final ExecutorService workers;
+    private final boolean virtualThreads;
+    private final LatencyHistogram[] latencies = new LatencyHistogram[Route.values().length];
+    private final long startedAt = System.nanoTime();
+    
+    // The manager is shared between request threads, so it should be a ConcurrentTaskManager
+    public TaskServer(TaskManager manager, InetSocketAddress address) throws IOException {
+        this.manager = manager;
+        for (int i = 0; i < latencies.length; i++) {
+            latencies[i] = new LatencyHistogram();
+        }
+        ExecutorService virtual = newVirtualThreadExecutor();
+        virtualThreads = virtual != null;
+        workers = virtual != null ? virtual : Executors.newCachedThreadPool(new ThreadFactory() {
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "TaskServer-worker");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        server = HttpServer.create(address, 1024);
+        server.setExecutor(workers);
+        server.createContext("/", new HttpHandler() {
+            public void handle(HttpExchange exchange) throws IOException {
+                serve(exchange);
+            }
+        });
+    }
+    
+    public void start() {
+        server.start();
+    }
+    
+    // Stop accepting requests, give running ones a moment to finish, and stop the worker threads
+    public void stop() {
+        server.stop(1);
+        workers.shutdown();
+    }
+    
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+    
+    // One thread per request; Executors.newVirtualThreadPerTaskExecutor is looked up at run time
+    // so the server still builds and runs on Java 8, or null where there are no virtual threads
+    private static ExecutorService newVirtualThreadExecutor() {
+        try {
+            Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) factory.invoke(null);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            return null;
+        }
+    }
+    
+    private void serve(HttpExchange exchange) throws IOException {
+        long start = System.nanoTime();
+        Route route = Route.NOT_FOUND;
+        try {
+            String[] path = segments(exchange.getRequestURI().getRawPath());
+            route = route(exchange.getRequestMethod(), path);
+            checkCaller(route, exchange);
+            StringBuilder body = new StringBuilder(256);
+            int status = execute(route, path, exchange, body);
+            send(exchange, status, body);
+        } catch (RequestException e) {
+            send(exchange, e.status, error(e.getMessage()));
+        } catch (IllegalArgumentException e) {
+            send(exchange, 400, error(e.getMessage()));
+        } catch (RuntimeException e) {
+            System.err.println("Error handling request: " + e.getMessage());
+            send(exchange, 500, error("internal error"));
+        } finally {
+            exchange.close();
+            latencies[route.ordinal()].recordSince(start);
+        }
+    }
+    
+    private static Route route(String method, String[] path) {
+        if (path.length == 0) {
+            return Route.NOT_FOUND;
+        }
+        String resource = path[0];
+        if (resource.equals("tasks")) {
+            if (path.length == 1) {
+                return pick(method, "GET", Route.LIST, "POST", Route.CREATE);
+            }
+            if (path.length == 2 && path[1].equals("search")) {
+                return pick(method, "GET", Route.SEARCH, null, null);
+            }
+            if (path.length == 2) {
+                if (method.equals("PUT")) {
+                    return Route.UPDATE;
+                }
+                return pick(method, "GET", Route.GET, "DELETE", Route.DELETE);
+            }
+            if (path.length == 3 && path[2].equals("toggle")) {
+                return pick(method, "POST", Route.TOGGLE, null, null);
+            }
+        } else if (resource.equals("archive")) {
+            if (path.length == 2 && path[1].equals("search")) {
+                return pick(method, "GET", Route.ARCHIVE_SEARCH, null, null);
+            }
+        } else if (path.length == 1) {
+            if (resource.equals("undo")) {
+                return pick(method, "POST", Route.UNDO, null, null);
+            }
+            if (resource.equals("redo")) {
+                return pick(method, "POST", Route.REDO, null, null);
+            }
+            if (resource.equals("stats")) {
+                return pick(method, "GET", Route.STATS, null, null);
+            }
+            if (resource.equals("metrics")) {
+                return pick(method, "GET", Route.METRICS, null, null);
+            }
+        }
+        return Route.NOT_FOUND;
+    }
+    
+    private static Route pick(String method, String first, Route firstRoute, String second, Route secondRoute) {
+        if (method.equals(first)) {
+            return firstRoute;
+        }
+        if (method.equals(second)) {
+            return secondRoute;
+        }
+        return Route.NOT_ALLOWED;
+    }
+    
+    // Serve a route into the body, returning the status
+    private int execute(Route route, String[] path, HttpExchange exchange, StringBuilder body) throws IOException {
+        Map<String, String> query;
+        Task task;
+        switch (route) {
+            case LIST:
+                query = query(exchange);
+                TaskPage page = manager.getPage(sort(query.get("sort")), filter(query), query.get("cursor"), limit(query));
+                appendTasks(body.append("{\"tasks\":"), page.getTasks(), page.getTasks().size());
+                TaskTransfer.appendJson(body.append(",\"next\":"), page.getNextCursor());
+                body.append('}');
+                return 200;
+            case SEARCH:
+                query = query(exchange);
+                String term = query.get("q");
+                if (term == null) {
+                    throw new IllegalArgumentException("q is required");
+                }
+                List<Task> found = manager.searchTasks(term);
+                appendTasks(body.append("{\"tasks\":"), found, limit(query));
+                body.append(",\"total\":").append(found.size()).append('}');
+                return 200;
+            case ARCHIVE_SEARCH:
+                query = query(exchange);
+                term = query.get("q");
+                if (term == null) {
+                    throw new IllegalArgumentException("q is required");
+                }
+                found = manager.searchArchive(term);
+                appendTasks(body.append("{\"tasks\":"), found, limit(query));
+                body.append(",\"total\":").append(found.size()).append('}');
+                return 200;
+            case CREATE:
+                Task draft = TaskTransfer.taskFromJson(readBody(exchange));
+                task = manager.addTask(draft.getTitle(), draft.getDescription(), draft.getPriority(),
+                                       draft.getDueDate(), draft.getCategory(), draft.isCompleted());
+                exchange.getResponseHeaders().set("Location", "/tasks/" + task.getId());
+                TaskTransfer.appendJson(body, task);
+                return 201;
+            case GET:
+                task = manager.getTaskById(id(path));
+                if (task == null) {
+                    throw new RequestException(404, "no such task");
+                }
+                TaskTransfer.appendJson(body, task);
+                return 200;
+            case UPDATE:
+                int taskId = id(path);
+                Task fields = TaskTransfer.taskFromJson(readBody(exchange));
+                if (!manager.updateTask(taskId, fields.getTitle(), fields.getDescription(), fields.getPriority(),
+                                        fields.getDueDate(), fields.getCategory())) {
+                    throw new RequestException(404, "no such task");
+                }
+                return found(manager.getTaskById(taskId), body);
+            case DELETE:
+                if (!manager.removeTask(id(path))) {
+                    throw new RequestException(404, "no such task");
+                }
+                return 204;
+            case TOGGLE:
+                if (!manager.toggleTaskCompletion(id(path))) {
+                    throw new RequestException(404, "no such task");
+                }
+                return found(manager.getTaskById(id(path)), body);
+            case UNDO:
+                body.append("{\"changed\":").append(manager.undo()).append('}');
+                return 200;
+            case REDO:
+                body.append("{\"changed\":").append(manager.redo()).append('}');
+                return 200;
+            case STATS:
+                appendStatistics(body);
+                return 200;
+            case METRICS:
+                appendMetrics(body);
+                return 200;
+            case NOT_ALLOWED:
+                throw new RequestException(405, "method not allowed");
+            default:
+                throw new RequestException(404, "not found");
+        }
+    }
+    
+    // Refuse requests a web page on another site could have made, see the class comment
+    private static void checkCaller(Route route, HttpExchange exchange) {
+        Headers headers = exchange.getRequestHeaders();
+        String host = headers.getFirst("Host");
+        if (host == null || !isLocalHost(host)) {
+            throw new RequestException(403, "requests must be addressed to localhost or an IP address");
+        }
+        String origin = headers.getFirst("Origin");
+        if (origin != null && !origin.equalsIgnoreCase("http://" + host)) {
+            throw new RequestException(403, "cross-origin requests are not allowed");
+        }
+        if (route == Route.CREATE || route == Route.UPDATE) {
+            String type = headers.getFirst("Content-Type");
+            if (type == null || !type.trim().toLowerCase(Locale.ROOT).startsWith("application/json")) {
+                throw new RequestException(415, "tasks must be sent as application/json");
+            }
+        }
+    }
+    
+    // Whether a Host header names this machine without DNS: localhost, an IPv4 address or a bracketed IPv6 one
+    private static boolean isLocalHost(String host) {
+        String name = host.trim();
+        if (name.startsWith("[")) {
+            return name.indexOf(']') > 1;
+        }
+        int colon = name.indexOf(':');
+        if (colon >= 0) {
+            name = name.substring(0, colon);
+        }
+        if (name.equalsIgnoreCase("localhost")) {
+            return true;
+        }
+        String[] parts = name.split("\\.", -1);
+        if (parts.length != 4) {
+            return false;
+        }
+        for (String part : parts) {
+            if (part.isEmpty() || part.length() > 3) {
+                return false;
+            }
+            for (int i = 0; i < part.length(); i++) {
+                if (part.charAt(i) < '0' || part.charAt(i) > '9') {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+    
+    // A task that was just changed, unless another request removed it since
+    private static int found(Task task, StringBuilder body) {
+        if (task == null) {
+            throw new RequestException(404, "no such task");
+        }
+        TaskTransfer.appendJson(body, task);
+        return 200;
+    }
+    
+    private void appendStatistics(StringBuilder body) {
+        TaskStatistics stats = manager.getStatistics(new TaskStatistics());
+        body.append("{\"total\":").append(stats.getTotal())
+            .append(",\"completed\":").append(stats.getCompleted())
+            .append(",\"pending\":").append(stats.getPending())
+            .append(",\"priorities\":{");
+        boolean first = true;
+        for (Priority priority : Priority.values()) {
+            if (priority != Priority.NONE) {
+                TaskTransfer.appendJson(body.append(first ? "" : ","), priority.getLabel());
+                body.append(':').append(stats.getPriorityCount(priority));
+                first = false;
+            }
+        }
+        body.append("},\"categories\":{");
+        first = true;
+        for (String category : new TreeSet<>(manager.getCategories())) {
+            TaskTransfer.appendJson(body.append(first ? "" : ","), category);
+            body.append(':').append(stats.getCategoryCount(category));
+            first = false;
+        }
+        body.append("}}");
+    }
+    
+    // Request counts and latency percentiles in microseconds for every route that has been used,
+    // then the same for the manager operations behind them, and what persistence has cost
+    private void appendMetrics(StringBuilder body) {
+        body.append("{\"uptimeSeconds\":").append((System.nanoTime() - startedAt) / 1000000000L)
+            .append(",\"virtualThreads\":").append(virtualThreads)
+            .append(",\"routes\":{");
+        boolean first = true;
+        for (Route route : Route.values()) {
+            first = appendLatency(body, first, route.label, latencies[route.ordinal()].snapshot());
+        }
+        body.append("},\"operations\":{");
+        first = true;
+        TaskMetrics metrics = manager.getMetrics();
+        for (TaskMetrics.Operation operation : TaskMetrics.Operation.values()) {
+            first = appendLatency(body, first, operation.getLabel(), metrics.snapshot(operation));
+        }
+        body.append("},\"journalBytes\":").append(metrics.getJournalBytesWritten())
+            .append(",\"snapshotBytes\":").append(metrics.getSnapshotBytesWritten())
+            .append(",\"saveFailures\":").append(metrics.getPersistenceFailures())
+            .append('}');
+    }
+    
+    // Append one named latency summary unless nothing was recorded, returning whether the object is still empty
+    private static boolean appendLatency(StringBuilder body, boolean first, String name, LatencyHistogram.Snapshot snapshot) {
+        if (snapshot.getCount() == 0) {
+            return first;
+        }
+        TaskTransfer.appendJson(body.append(first ? "" : ","), name);
+        body.append(":{\"count\":").append(snapshot.getCount());
+        appendMicros(body, "mean", snapshot.getMean());
+        appendMicros(body, "p50", snapshot.getPercentile(0.50));
+        appendMicros(body, "p90", snapshot.getPercentile(0.90));
+        appendMicros(body, "p99", snapshot.getPercentile(0.99));
+        appendMicros(body, "p999", snapshot.getPercentile(0.999));
+        appendMicros(body, "max", snapshot.getMax());
+        body.append('}');
+        return false;
+    }
+    
+    private static void appendMicros(StringBuilder body, String name, long nanos) {
+        body.append(",\"").append(name).append("Micros\":").append(Math.round(nanos / 100.0) / 10.0);
+    }
+    
+    private static void appendTasks(StringBuilder body, List<Task> tasks, int limit) {
+        body.append('[');
+        int count = Math.min(limit, tasks.size());
+        for (int i = 0; i < count; i++) {
+            if (i > 0) {
+                body.append(',');
+            }
+            TaskTransfer.appendJson(body, tasks.get(i));
+        }
+        body.append(']');
+    }
+    
+    private static TaskSort sort(String name) {
+        if (name == null) {
+            return TaskSort.ID;
+        }
+        try {
+            return TaskSort.valueOf(name.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("unknown sort '" + name + "'");
+        }
+    }
+    
+    private static TaskFilter filter(Map<String, String> query) {
+        String completed = query.get("completed");
+        String category = query.get("category");
+        String label = query.get("priority");
+        if (completed == null && category == null && label == null) {
+            return TaskFilter.ANY;
+        }
+        Priority priority = null;
+        if (label != null) {
+            priority = Priority.parse(label);
+            if (priority == null) {
+                throw new IllegalArgumentException("unknown priority '" + label + "'");
+            }
+        }
+        return new TaskFilter(completed != null ? Boolean.valueOf(completed) : null, category, priority);
+    }
+    
+    private static int limit(Map<String, String> query) {
+        String value = query.get("limit");
+        if (value == null) {
+            return DEFAULT_LIMIT;
+        }
+        try {
+            int limit = Integer.parseInt(value);
+            if (limit > 0) {
+                return Math.min(limit, MAX_LIMIT);
+            }
+        } catch (NumberFormatException e) {
+            // Reported below
+        }
+        throw new IllegalArgumentException("limit must be a positive number, not '" + value + "'");
+    }
+    
+    private static int id(String[] path) {
+        try {
+            return Integer.parseInt(path[1]);
+        } catch (NumberFormatException e) {
+            throw new RequestException(404, "no such task");
+        }
+    }
+    
+    private static String[] segments(String path) {
+        String trimmed = path == null ? "" : path;
+        while (trimmed.startsWith("/")) {
+            trimmed = trimmed.substring(1);
+        }
+        while (trimmed.endsWith("/")) {
+            trimmed = trimmed.substring(0, trimmed.length() - 1);
+        }
+        return trimmed.isEmpty() ? new String[0] : trimmed.split("/");
+    }
+    
+    private static Map<String, String> query(HttpExchange exchange) throws UnsupportedEncodingException {
+        Map<String, String> values = new HashMap<>();
+        String raw = exchange.getRequestURI().getRawQuery();
+        if (raw == null) {
+            return values;
+        }
+        for (String pair : raw.split("&")) {
+            int equals = pair.indexOf('=');
+            String name = equals >= 0 ? pair.substring(0, equals) : pair;
+            String value = equals >= 0 ? pair.substring(equals + 1) : "";
+            values.put(URLDecoder.decode(name, "UTF-8"), URLDecoder.decode(value, "UTF-8"));
+        }
+        return values;
+    }
+    
+    private static String readBody(HttpExchange exchange) throws IOException {
+        InputStream in = exchange.getRequestBody();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int read;
+        while ((read = in.read(buffer)) > 0) {
+            bytes.write(buffer, 0, read);
+            if (bytes.size() > MAX_BODY) {
+                throw new RequestException(413, "request body is larger than " + MAX_BODY + " bytes");
+            }
+        }
+        return new String(bytes.toByteArray(), StandardCharsets.UTF_8);
+    }
+    
+    private static StringBuilder error(String message) {
+        StringBuilder body = new StringBuilder(64).append("{\"error\":");
+        TaskTransfer.appendJson(body, message);
+        return body.append('}');
+    }
+    
+    private static void send(HttpExchange exchange, int status, CharSequence body) throws IOException {
+        if (status == 204) {
+            exchange.sendResponseHeaders(status, -1);
+            return;
+        }
+        byte[] bytes = body.toString().getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(status, bytes.length);
+        OutputStream out = exchange.getResponseBody();
+        out.write(bytes);
+    }
+    
+    // Serve tasks.dat (or the file given) on the loopback interface: TaskServer [port] [dataFile]
+    public static void main(String[] args) throws IOException {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_PORT;
+        String dataFile = args.length > 1 ? args[1] : "tasks.dat";
+        final ConcurrentTaskManager manager = new ConcurrentTaskManager(dataFile);
+        manager.getMetrics().expose(dataFile);
+        final TaskServer server = new TaskServer(manager, new InetSocketAddress(InetAddress.getLoopbackAddress(), port));
+        Runtime.getRuntime().addShutdownHook(new Thread(new Runnable() {
+            public void run() {
+                server.stop();
+                manager.close();
+            }
+        }, "TaskServer-shutdown"));
+        server.start();
+        System.out.println("Serving " + dataFile + " at http://" + InetAddress.getLoopbackAddress().getHostAddress()
+                           + ":" + server.getPort() + "/tasks"
+                           + (server.virtualThreads ? " on virtual threads" : ""));
+    }
+}
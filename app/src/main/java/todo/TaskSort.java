@@ -0,0 +1,53 @@
+package todo;
+
+import java.util.Comparator;
+
+/**
+ * TaskSort is an order for paged task views
+ * Every order falls back to the id, so no two tasks compare equal and a page
+ * boundary is always well defined.
+ */
+public enum TaskSort {
+    // Oldest first
+    ID(new Comparator<Task>() {
+        public int compare(Task a, Task b) {
+            return Integer.compare(a.getId(), b.getId());
+        }
+    }),
+    // High, Medium, Low, then tasks without a priority
+    PRIORITY(new Comparator<Task>() {
+        public int compare(Task a, Task b) {
+            int order = a.getPriorityLevel().compareTo(b.getPriorityLevel());
+            return order != 0 ? order : Integer.compare(a.getId(), b.getId());
+        }
+    }),
+    // Soonest due first, tasks without a due date last
+    DUE_DATE(new Comparator<Task>() {
+        public int compare(Task a, Task b) {
+            int order = Long.compare(dueKey(a), dueKey(b));
+            return order != 0 ? order : Integer.compare(a.getId(), b.getId());
+        }
+    }),
+    // Alphabetical, ignoring case
+    TITLE(new Comparator<Task>() {
+        public int compare(Task a, Task b) {
+            int order = String.CASE_INSENSITIVE_ORDER.compare(String.valueOf(a.getTitle()), String.valueOf(b.getTitle()));
+            return order != 0 ? order : Integer.compare(a.getId(), b.getId());
+        }
+    });
+    
+    private final Comparator<Task> comparator;
+    
+    TaskSort(Comparator<Task> comparator) {
+        this.comparator = comparator;
+    }
+    
+    public Comparator<Task> comparator() {
+        return comparator;
+    }
+    
+    // Sorts tasks without a due date after every dated one
+    private static long dueKey(Task task) {
+        return task.getDueDay() == Task.NO_DUE_DAY ? Long.MAX_VALUE : task.getDueDay();
+    }
+}
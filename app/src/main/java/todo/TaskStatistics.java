@@ -0,0 +1,134 @@
+package todo;
+
+import java.util.*;
+
+/**
+ * TaskStatistics holds task counts that are kept up to date on every change
+ * TaskManager owns a live instance; callers poll it by copying into their own
+ * instance with TaskManager.getStatistics, which allocates nothing once the
+ * categories have been seen
+ *
+ * Counts are kept in arrays indexed by priority ordinal and by category key
+ * from the CategoryRegistry, so counting a task is a pair of array updates.
+ */
+public class TaskStatistics {
+    private int total;
+    private int completed;
+    private final int[] byPriority = new int[Priority.values().length];
+    private int[] byCategory = new int[16];
+    
+    // Count a task that was added or changed
+    void add(Task task) {
+        adjust(task, 1);
+    }
+    
+    // Uncount a task before it is removed or changed
+    void remove(Task task) {
+        adjust(task, -1);
+    }
+    
+    void clear() {
+        total = 0;
+        completed = 0;
+        Arrays.fill(byPriority, 0);
+        Arrays.fill(byCategory, 0);
+    }
+    
+    // Copy every count into another instance, reusing its counters
+    void copyTo(TaskStatistics target) {
+        target.total = total;
+        target.completed = completed;
+        System.arraycopy(byPriority, 0, target.byPriority, 0, byPriority.length);
+        if (target.byCategory.length < byCategory.length) {
+            target.byCategory = new int[byCategory.length];
+        }
+        System.arraycopy(byCategory, 0, target.byCategory, 0, byCategory.length);
+        Arrays.fill(target.byCategory, byCategory.length, target.byCategory.length, 0);
+    }
+    
+    // Add every count of another instance, as when counts taken in parts are combined
+    void addAll(TaskStatistics other) {
+        total += other.total;
+        completed += other.completed;
+        for (int i = 0; i < byPriority.length; i++) {
+            byPriority[i] += other.byPriority[i];
+        }
+        for (int key = other.byCategory.length - 1; key >= 0; key--) {
+            if (other.byCategory[key] != 0) {
+                counters(key)[key] += other.byCategory[key];
+            }
+        }
+    }
+    
+    // Set the fixed counts, used when they were read from a snapshot header
+    void restore(int total, int completed, int high, int medium, int low) {
+        this.total = total;
+        this.completed = completed;
+        byPriority[Priority.HIGH.ordinal()] = high;
+        byPriority[Priority.MEDIUM.ordinal()] = medium;
+        byPriority[Priority.LOW.ordinal()] = low;
+        byPriority[Priority.NONE.ordinal()] = total - high - medium - low;
+    }
+    
+    // Set the count of a lower-cased category, used when it was read from a snapshot header
+    void restoreCategory(String name, int count) {
+        int key = CategoryRegistry.keyOf(CategoryRegistry.idOf(name));
+        counters(key)[key] = count;
+    }
+    
+    // Add to the count of a category key, used when counting outside the running totals
+    void addCategory(int key, int count) {
+        counters(key)[key] += count;
+    }
+    
+    // Counts per category key, the array may be longer than the registry
+    int[] categoryCounts() {
+        return byCategory;
+    }
+    
+    public int getTotal() {
+        return total;
+    }
+    
+    public int getCompleted() {
+        return completed;
+    }
+    
+    public int getPending() {
+        return total - completed;
+    }
+    
+    // Count of tasks with a priority, ignoring case
+    public int getPriorityCount(String priority) {
+        Priority level = Priority.parse(priority);
+        return level != null ? byPriority[level.ordinal()] : 0;
+    }
+    
+    public int getPriorityCount(Priority priority) {
+        return byPriority[priority.ordinal()];
+    }
+    
+    // Count of tasks in a category, ignoring case
+    public int getCategoryCount(String category) {
+        int key = CategoryRegistry.find(category);
+        return key >= 0 && key < byCategory.length ? byCategory[key] : 0;
+    }
+    
+    private void adjust(Task task, int delta) {
+        total += delta;
+        if (task.isCompleted()) {
+            completed += delta;
+        }
+        byPriority[task.getPriorityLevel().ordinal()] += delta;
+        int key = CategoryRegistry.keyOf(task.getCategoryId());
+        counters(key)[key] += delta;
+    }
+    
+    // The category counters, grown to hold a key
+    private int[] counters(int key) {
+        if (key >= byCategory.length) {
+            byCategory = Arrays.copyOf(byCategory, Math.max(key + 1, byCategory.length * 2));
+        }
+        return byCategory;
+    }
+}
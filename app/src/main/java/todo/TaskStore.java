@@ -0,0 +1,407 @@
+package todo;
+
+import java.util.*;
+
+/**
+ * TaskStore keeps tasks in insertion order with constant-time access by id
+ * An IntIntMap maps each id to its slot, removed slots are left empty and
+ * squeezed out when the array is full, so deletes don't shift the whole
+ * array. A RankTree over the slots turns display positions into slots and
+ * back without squeezing them out first.
+ *
+ * Slots are kept in ascending id order. New tasks have the highest id and
+ * are appended. A removed task's empty slot is remembered until it is
+ * squeezed out, so undoing the removal puts the task straight back there;
+ * only a lower id with no slot left is inserted by shifting the tasks after
+ * it.
+ *
+ * A store opened over a MappedTaskFile starts with every slot unloaded and
+ * decodes a task from the file the first time it is accessed. A task the
+ * file can't give back, its block being damaged, is dropped from the store
+ * then and counted as lost.
+ */
+public class TaskStore implements Iterable<Task> {
+    private Task[] slots;
+    private int end;
+    private int removed;
+    // Highest id ever appended, a task with a lower one has to be inserted in order
+    private int maxId = Integer.MIN_VALUE;
+    private final IntIntMap slotById;
+    // Empty slots of removed tasks that haven't been squeezed out yet, by the id they held
+    private final IntIntMap gapById = new IntIntMap();
+    // Which slots hold a task, for positional access across the empty ones
+    private final RankTree ranks;
+    
+    // File the unloaded tasks come from, and the record behind each slot (-1 once loaded or removed)
+    private MappedTaskFile backing;
+    private int[] records;
+    // Tasks dropped because their records were damaged
+    private int lost;
+    
+    public TaskStore() {
+        this(16);
+    }
+    
+    public TaskStore(int expectedSize) {
+        slots = new Task[Math.max(expectedSize, 16)];
+        slotById = new IntIntMap(expectedSize);
+        ranks = new RankTree(slots.length);
+    }
+    
+    // Open a store over a mapped snapshot without decoding any task
+    public TaskStore(MappedTaskFile backing) {
+        this(backing.size());
+        this.backing = backing;
+        records = new int[slots.length];
+        Arrays.fill(records, -1);
+        for (int i = 0; i < backing.size(); i++) {
+            records[i] = i;
+            slotById.put(backing.idAt(i), i);
+        }
+        end = backing.size();
+        ranks.reset(slots.length, end);
+        if (end > 0) {
+            maxId = backing.idAt(end - 1);
+        }
+    }
+    
+    // Number of tasks in the store
+    public int size() {
+        return end - removed;
+    }
+    
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+    
+    // Add a task in id order, replacing any task that already has the same id
+    public void add(Task task) {
+        int slot = slotById.get(task.getId(), -1);
+        if (slot >= 0) {
+            slots[slot] = task;
+            if (records != null) {
+                records[slot] = -1;
+            }
+            return;
+        }
+        if (task.getId() < maxId) {
+            int gap = gapById.get(task.getId(), -1);
+            if (gap >= 0 && gap < end && !isLive(gap)) {
+                gapById.remove(task.getId());
+                slots[gap] = task;
+                slotById.put(task.getId(), gap);
+                ranks.add(gap, 1);
+                removed--;
+            } else {
+                insert(task);
+            }
+            return;
+        }
+        ensureRoom();
+        slots[end] = task;
+        slotById.put(task.getId(), end);
+        ranks.add(end, 1);
+        end++;
+        maxId = task.getId();
+    }
+    
+    // Put a task with a lower id than the last one where its id belongs, shifting the tasks after it
+    private void insert(Task task) {
+        compactIfNeeded();
+        ensureRoom();
+        int position = positionAfter(task.getId());
+        System.arraycopy(slots, position, slots, position + 1, end - position);
+        slots[position] = task;
+        if (records != null) {
+            System.arraycopy(records, position, records, position + 1, end - position);
+            records[position] = -1;
+        }
+        end++;
+        for (int i = position; i < end; i++) {
+            slotById.put(idAt(i), i);
+        }
+        ranks.reset(slots.length, end);
+    }
+    
+    // Make room for one more slot at the end
+    private void ensureRoom() {
+        if (end == slots.length) {
+            if (removed > 0) {
+                compact();
+            }
+            if (end == slots.length) {
+                int capacity = slots.length + (slots.length >> 1);
+                slots = Arrays.copyOf(slots, capacity);
+                if (records != null) {
+                    records = Arrays.copyOf(records, capacity);
+                    Arrays.fill(records, end, capacity, -1);
+                }
+                ranks.reset(capacity, end);
+            }
+        }
+    }
+    
+    // Get a task by id, or null if there is none
+    public Task get(int id) {
+        int slot = slotById.get(id, -1);
+        return slot >= 0 ? load(slot) : null;
+    }
+    
+    // The task with an id if it has been decoded, null if there is none or it is still in the backing file
+    public Task peek(int id) {
+        int slot = slotById.get(id, -1);
+        return slot >= 0 ? slots[slot] : null;
+    }
+    
+    public boolean contains(int id) {
+        return slotById.containsKey(id);
+    }
+    
+    // Remove a task by id and return it, or null if there was none
+    public Task remove(int id) {
+        int slot = slotById.get(id, -1);
+        if (slot < 0) {
+            return null;
+        }
+        Task task = load(slot);
+        if (task != null) {
+            empty(slot, id);
+        }
+        return task;
+    }
+    
+    private void empty(int slot, int id) {
+        slots[slot] = null;
+        slotById.remove(id);
+        ranks.add(slot, -1);
+        if (slot == end - 1) {
+            end--;
+        } else {
+            removed++;
+            gapById.put(id, slot);
+        }
+    }
+    
+    // Get the task at a display position
+    public Task getAt(int index) {
+        if (index < 0 || index >= size()) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size());
+        }
+        Task task = load(removed == 0 ? index : ranks.slotAt(index));
+        // A lost task leaves a gap, the task now at this position is the next one
+        return task != null || index >= size() ? task : getAt(index);
+    }
+    
+    // The task at a display position if it has been decoded, null if it is still in the backing file
+    public Task peekAt(int index) {
+        if (index < 0 || index >= size()) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size());
+        }
+        return slots[removed == 0 ? index : ranks.slotAt(index)];
+    }
+    
+    // Get the display position of a task, or -1 if it is not in the store
+    public int indexOf(int id) {
+        int slot = slotById.get(id, -1);
+        if (slot < 0 || removed == 0) {
+            return slot;
+        }
+        return ranks.countBefore(slot);
+    }
+    
+    // Whether some tasks are still to be decoded from a mapped snapshot, which keeps the file mapped
+    public boolean isMapped() {
+        return backing != null;
+    }
+    
+    // Number of tasks dropped so far because their records in the backing file were damaged
+    public int lostCount() {
+        return lost;
+    }
+    
+    // Decode every task still in the backing file and let go of the file
+    public void loadAll() {
+        if (records != null) {
+            for (int i = 0; i < end; i++) {
+                load(i);
+            }
+            backing = null;
+            records = null;
+        }
+    }
+    
+    // Whether removed tasks have left empty slots that are still to be squeezed out
+    public boolean hasGaps() {
+        return removed > 0;
+    }
+    
+    // Display position of the first task with an id above the given one, size() if there is none
+    public int positionAfter(int id) {
+        // Every task in a slot below low has an id up to the given one, every task from high on a higher id
+        int low = 0;
+        int high = end;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            int live = removed == 0 ? mid : liveFrom(mid);
+            if (live >= high) {
+                high = mid;
+            } else if (idAt(live) <= id) {
+                low = live + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return removed == 0 ? low : ranks.countBefore(low);
+    }
+    
+    // The first slot from a slot on that holds a task, end if there is none
+    private int liveFrom(int slot) {
+        int before = ranks.countBefore(slot);
+        return before < size() ? ranks.slotAt(before) : end;
+    }
+    
+    public void clear() {
+        Arrays.fill(slots, 0, end, null);
+        end = 0;
+        removed = 0;
+        maxId = Integer.MIN_VALUE;
+        slotById.clear();
+        gapById.clear();
+        ranks.reset(slots.length, 0);
+        backing = null;
+        records = null;
+    }
+    
+    // Copy the tasks into a new list, in display order
+    public ArrayList<Task> toList() {
+        ArrayList<Task> list = new ArrayList<>(size());
+        for (int i = 0; i < end; i++) {
+            Task task = isLive(i) ? load(i) : null;
+            if (task != null) {
+                list.add(task);
+            }
+        }
+        return list;
+    }
+    
+    @Override
+    public Iterator<Task> iterator() {
+        return new Cursor(true);
+    }
+    
+    // Iterate in display order without keeping tasks decoded from the backing file,
+    // for one-off passes over every task such as an export
+    public Iterator<Task> uncachedIterator() {
+        return new Cursor(false);
+    }
+    
+    // Walks the live slots, fetching each task ahead so lost ones are skipped
+    private class Cursor implements Iterator<Task> {
+        private final boolean cache;
+        private int cursor;
+        private Task next;
+        
+        Cursor(boolean cache) {
+            this.cache = cache;
+            advance();
+        }
+        
+        private void advance() {
+            next = null;
+            while (next == null && cursor < end) {
+                if (!isLive(cursor)) {
+                    cursor++;
+                } else if (cache || slots[cursor] != null) {
+                    next = load(cursor++);
+                } else {
+                    next = backing.load(records[cursor]);
+                    if (next == null) {
+                        drop(cursor);
+                    }
+                    cursor++;
+                }
+            }
+        }
+        
+        public boolean hasNext() {
+            return next != null;
+        }
+        
+        public Task next() {
+            if (next == null) {
+                throw new NoSuchElementException();
+            }
+            Task task = next;
+            advance();
+            return task;
+        }
+    }
+    
+    // Id of the task in a live slot, without decoding it
+    private int idAt(int slot) {
+        Task task = slots[slot];
+        return task != null ? task.getId() : backing.idAt(records[slot]);
+    }
+    
+    private boolean isLive(int slot) {
+        return slots[slot] != null || (records != null && records[slot] >= 0);
+    }
+    
+    // Get the task in a slot, decoding it from the backing file the first time
+    private Task load(int slot) {
+        Task task = slots[slot];
+        if (task == null && records != null && records[slot] >= 0) {
+            task = backing.load(records[slot]);
+            if (task == null) {
+                drop(slot);
+                return null;
+            }
+            slots[slot] = task;
+            records[slot] = -1;
+        }
+        return task;
+    }
+    
+    // Drop the unloaded task in a slot that the backing file couldn't give back
+    private void drop(int slot) {
+        int id = backing.idAt(records[slot]);
+        records[slot] = -1;
+        empty(slot, id);
+        lost++;
+    }
+    
+    private void compactIfNeeded() {
+        if (removed > 0) {
+            compact();
+        }
+    }
+    
+    // Squeeze out empty slots and re-point the id map at the new positions
+    private void compact() {
+        int write = 0;
+        for (int read = 0; read < end; read++) {
+            if (isLive(read)) {
+                if (write != read) {
+                    slots[write] = slots[read];
+                    int id;
+                    if (records != null) {
+                        records[write] = records[read];
+                        id = records[write] >= 0 ? backing.idAt(records[write]) : slots[write].getId();
+                    } else {
+                        id = slots[write].getId();
+                    }
+                    slotById.put(id, write);
+                }
+                write++;
+            }
+        }
+        Arrays.fill(slots, write, end, null);
+        if (records != null) {
+            Arrays.fill(records, write, end, -1);
+        }
+        end = write;
+        removed = 0;
+        gapById.clear();
+        ranks.reset(slots.length, end);
+    }
+}
@@ -0,0 +1,535 @@
+package todo;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * TaskTransfer reads and writes tasks as CSV or JSON Lines for bulk import and export
+ * Input is split into records on the calling thread while the records are parsed
+ * and validated in parallel chunks, a few at a time, and each chunk's tasks are
+ * handed on in input order as soon as it is done; output is written one task at
+ * a time, so neither direction builds a second copy of the task list
+ *
+ * Both formats use the fields id, title, description, priority, dueDate,
+ * category and completed. CSV input needs a header row naming its columns.
+ * Imported tasks are given fresh ids, so an id on input is ignored.
+ */
+public class TaskTransfer {
+    public enum Format {
+        CSV, JSON_LINES
+    }
+    
+    private static final String[] FIELDS = {"id", "title", "description", "priority", "dueDate", "category", "completed"};
+    private static final int TITLE = 1;
+    private static final int DESCRIPTION = 2;
+    private static final int PRIORITY = 3;
+    private static final int DUE_DATE = 4;
+    private static final int CATEGORY = 5;
+    private static final int COMPLETED = 6;
+    
+    // Records validated per parallel task, and the number of error messages kept
+    private static final int CHUNK_SIZE = 4096;
+    private static final int MAX_ERRORS = 100;
+    // Chunks read ahead of the oldest one still being validated
+    private static final int MAX_IN_FLIGHT = ForkJoinPool.getCommonPoolParallelism() + 1;
+    
+    /**
+     * Outcome of reading an import: the valid tasks and what was rejected
+     */
+    public static class ImportResult {
+        private final ArrayList<Task> tasks;
+        private final int imported;
+        private final int rejected;
+        private final List<String> errors;
+        
+        ImportResult(ArrayList<Task> tasks, int imported, int rejected, List<String> errors) {
+            this.tasks = tasks;
+            this.imported = imported;
+            this.rejected = rejected;
+            this.errors = errors;
+        }
+        
+        // Tasks that passed validation, numbered once TaskManager has added them;
+        // empty when they were handed to a consumer instead
+        public List<Task> getTasks() {
+            return tasks;
+        }
+        
+        public int getImported() {
+            return imported;
+        }
+        
+        public int getRejected() {
+            return rejected;
+        }
+        
+        // Messages for the first rejected records, each naming the line it started on
+        public List<String> getErrors() {
+            return errors;
+        }
+    }
+    
+    /**
+     * Records of one chunk, with the line each starts on, and what validating them produced
+     */
+    private static class Chunk {
+        final ArrayList<String> records = new ArrayList<>(CHUNK_SIZE);
+        final int[] lines = new int[CHUNK_SIZE];
+        final ArrayList<Task> tasks = new ArrayList<>(CHUNK_SIZE);
+        final ArrayList<String> errors = new ArrayList<>();
+        int rejected;
+    }
+    
+    /**
+     * What the chunks handed on so far added up to
+     */
+    private static class Tally {
+        int imported;
+        int rejected;
+        final ArrayList<String> errors = new ArrayList<>();
+        
+        void take(Chunk chunk, Consumer<List<Task>> consumer) {
+            if (!chunk.tasks.isEmpty()) {
+                consumer.accept(chunk.tasks);
+            }
+            imported += chunk.tasks.size();
+            rejected += chunk.rejected;
+            for (String error : chunk.errors) {
+                if (errors.size() < MAX_ERRORS) {
+                    errors.add(error);
+                }
+            }
+        }
+    }
+    
+    private TaskTransfer() {
+    }
+    
+    // Read and validate every record into the result, rejected records are counted and skipped
+    public static ImportResult read(Reader in, Format format) throws IOException {
+        final ArrayList<Task> tasks = new ArrayList<>();
+        ImportResult result = read(in, format, new Consumer<List<Task>>() {
+            public void accept(List<Task> chunk) {
+                tasks.addAll(chunk);
+            }
+        });
+        return new ImportResult(tasks, result.getImported(), result.getRejected(), result.getErrors());
+    }
+    
+    // Read and validate every record, handing the valid tasks to a consumer a chunk at a time in input order;
+    // rejected records are counted and skipped
+    public static ImportResult read(Reader in, Format format, Consumer<List<Task>> consumer) throws IOException {
+        BufferedReader reader = in instanceof BufferedReader ? (BufferedReader) in : new BufferedReader(in, 1 << 16);
+        Tally tally = new Tally();
+        int[] columns = null;
+        int line = 0;
+        if (format == Format.CSV) {
+            String header = reader.readLine();
+            if (header == null) {
+                return new ImportResult(new ArrayList<Task>(), 0, 0, tally.errors);
+            }
+            line++;
+            columns = columns(parseCsv(header));
+        }
+        
+        ArrayDeque<CompletableFuture<Chunk>> pending = new ArrayDeque<>();
+        Chunk chunk = new Chunk();
+        StringBuilder record = new StringBuilder();
+        boolean inQuotes = false;
+        String text;
+        while ((text = reader.readLine()) != null) {
+            line++;
+            if (record.length() == 0 && text.trim().isEmpty()) {
+                continue;
+            }
+            if (record.length() > 0) {
+                record.append('\n');
+            } else {
+                chunk.lines[chunk.records.size()] = line;
+            }
+            record.append(text);
+            // A quoted CSV field may span lines, keep reading until its quotes are balanced
+            if (format == Format.CSV) {
+                inQuotes ^= hasOddQuotes(text);
+                if (inQuotes) {
+                    continue;
+                }
+            }
+            chunk.records.add(record.toString());
+            record.setLength(0);
+            if (chunk.records.size() == CHUNK_SIZE) {
+                pending.add(validateAsync(chunk, format, columns));
+                chunk = new Chunk();
+                // Chunks are handed on in input order, waiting for the oldest once enough are ahead of it
+                while (!pending.isEmpty() && (pending.size() > MAX_IN_FLIGHT || pending.peek().isDone())) {
+                    tally.take(pending.poll().join(), consumer);
+                }
+            }
+        }
+        if (record.length() > 0) {
+            chunk.records.add(record.toString());
+        }
+        if (!chunk.records.isEmpty()) {
+            pending.add(validateAsync(chunk, format, columns));
+        }
+        while (!pending.isEmpty()) {
+            tally.take(pending.poll().join(), consumer);
+        }
+        return new ImportResult(new ArrayList<Task>(), tally.imported, tally.rejected, tally.errors);
+    }
+    
+    // Write tasks one at a time in the given format
+    public static void write(Writer out, Iterator<Task> tasks, Format format) throws IOException {
+        BufferedWriter writer = out instanceof BufferedWriter ? (BufferedWriter) out : new BufferedWriter(out, 1 << 16);
+        StringBuilder line = new StringBuilder(256);
+        if (format == Format.CSV) {
+            for (int i = 0; i < FIELDS.length; i++) {
+                if (i > 0) {
+                    line.append(',');
+                }
+                line.append(FIELDS[i]);
+            }
+            writer.append(line).append('\n');
+        }
+        while (tasks.hasNext()) {
+            Task task = tasks.next();
+            line.setLength(0);
+            if (format == Format.CSV) {
+                line.append(task.getId());
+                appendCsv(line.append(','), task.getTitle());
+                appendCsv(line.append(','), task.getDescription());
+                appendCsv(line.append(','), task.getPriority());
+                appendCsv(line.append(','), task.getDueDate());
+                appendCsv(line.append(','), task.getCategory());
+                line.append(',').append(task.isCompleted());
+            } else {
+                appendJson(line, task);
+            }
+            writer.append(line).append('\n');
+        }
+        writer.flush();
+    }
+    
+    // Append a task as one JSON object, the same one a JSON Lines export writes
+    static void appendJson(StringBuilder line, Task task) {
+        line.append("{\"id\":").append(task.getId());
+        appendJson(line.append(",\"title\":"), task.getTitle());
+        appendJson(line.append(",\"description\":"), task.getDescription());
+        appendJson(line.append(",\"priority\":"), task.getPriority());
+        appendJson(line.append(",\"dueDate\":"), task.getDueDate());
+        appendJson(line.append(",\"category\":"), task.getCategory());
+        line.append(",\"completed\":").append(task.isCompleted()).append('}');
+    }
+    
+    // Parse and validate one JSON object into a draft task, as an import would;
+    // throws IllegalArgumentException saying what is wrong with it
+    static Task taskFromJson(String json) {
+        String[] values = new String[FIELDS.length];
+        parseJson(json, values);
+        return toTask(values);
+    }
+    
+    private static CompletableFuture<Chunk> validateAsync(final Chunk chunk, final Format format, final int[] columns) {
+        return CompletableFuture.supplyAsync(new Supplier<Chunk>() {
+            public Chunk get() {
+                validate(chunk, format, columns);
+                return chunk;
+            }
+        });
+    }
+    
+    // Parse and validate the records of a chunk into draft tasks, runs on a pool thread
+    private static void validate(Chunk chunk, Format format, int[] columns) {
+        for (int i = 0; i < chunk.records.size(); i++) {
+            String[] values = new String[FIELDS.length];
+            try {
+                if (format == Format.CSV) {
+                    List<String> cells = parseCsv(chunk.records.get(i));
+                    for (int c = 0; c < cells.size() && c < columns.length; c++) {
+                        if (columns[c] >= 0) {
+                            values[columns[c]] = cells.get(c);
+                        }
+                    }
+                } else {
+                    parseJson(chunk.records.get(i), values);
+                }
+                chunk.tasks.add(toTask(values));
+            } catch (IllegalArgumentException e) {
+                chunk.rejected++;
+                if (chunk.errors.size() < MAX_ERRORS) {
+                    chunk.errors.add("Line " + chunk.lines[i] + ": " + e.getMessage());
+                }
+            }
+        }
+        chunk.records.clear();
+    }
+    
+    // Build a draft task, filling in the same defaults as the add form
+    private static Task toTask(String[] values) {
+        String title = trimmed(values[TITLE]);
+        if (title.isEmpty()) {
+            throw new IllegalArgumentException("title is required");
+        }
+        String label = trimmed(values[PRIORITY]);
+        // None is accepted, it is what an export writes for a task without a priority
+        Priority priority = label.isEmpty() ? Priority.MEDIUM : Priority.parse(label);
+        if (priority == null) {
+            throw new IllegalArgumentException("unknown priority '" + label + "'");
+        }
+        String dueDate = trimmed(values[DUE_DATE]);
+        if (dueDate.isEmpty()) {
+            dueDate = Task.NO_DUE_DATE;
+        }
+        String category = trimmed(values[CATEGORY]);
+        if (category.isEmpty()) {
+            category = "General";
+        }
+        String description = values[DESCRIPTION] == null ? "" : values[DESCRIPTION];
+        
+        Task task = new Task(0, title, description, priority, dueDate, category);
+        task.setCompleted(parseCompleted(trimmed(values[COMPLETED])));
+        return task;
+    }
+    
+    private static boolean parseCompleted(String value) {
+        if (value.isEmpty() || value.equalsIgnoreCase("false") || value.equalsIgnoreCase("no") || value.equals("0")) {
+            return false;
+        }
+        if (value.equalsIgnoreCase("true") || value.equalsIgnoreCase("yes") || value.equals("1")) {
+            return true;
+        }
+        throw new IllegalArgumentException("completed must be true or false, not '" + value + "'");
+    }
+    
+    private static String trimmed(String value) {
+        return value == null ? "" : value.trim();
+    }
+    
+    // Map each header column to its field, -1 for columns that are not task fields
+    private static int[] columns(List<String> header) throws IOException {
+        int[] columns = new int[header.size()];
+        boolean hasTitle = false;
+        for (int c = 0; c < columns.length; c++) {
+            columns[c] = -1;
+            for (int f = 0; f < FIELDS.length; f++) {
+                if (FIELDS[f].equalsIgnoreCase(header.get(c).trim())) {
+                    columns[c] = f;
+                    hasTitle |= f == TITLE;
+                }
+            }
+        }
+        if (!hasTitle) {
+            throw new IOException("CSV header has no title column");
+        }
+        return columns;
+    }
+    
+    // Whether a line has an odd number of quotes, which opens or closes a quoted field across lines
+    private static boolean hasOddQuotes(String line) {
+        boolean odd = false;
+        for (int i = 0; i < line.length(); i++) {
+            if (line.charAt(i) == '"') {
+                odd = !odd;
+            }
+        }
+        return odd;
+    }
+    
+    // Split one CSV record into cells, "" inside a quoted cell is a literal quote
+    private static List<String> parseCsv(String record) {
+        ArrayList<String> cells = new ArrayList<>(FIELDS.length);
+        StringBuilder cell = new StringBuilder();
+        boolean inQuotes = false;
+        for (int i = 0; i < record.length(); i++) {
+            char c = record.charAt(i);
+            if (inQuotes) {
+                if (c != '"') {
+                    cell.append(c);
+                } else if (i + 1 < record.length() && record.charAt(i + 1) == '"') {
+                    cell.append('"');
+                    i++;
+                } else {
+                    inQuotes = false;
+                }
+            } else if (c == '"') {
+                inQuotes = true;
+            } else if (c == ',') {
+                cells.add(cell.toString());
+                cell.setLength(0);
+            } else {
+                cell.append(c);
+            }
+        }
+        cells.add(cell.toString());
+        return cells;
+    }
+    
+    private static void appendCsv(StringBuilder line, String value) {
+        if (value == null) {
+            return;
+        }
+        boolean quote = false;
+        for (int i = 0; i < value.length() && !quote; i++) {
+            char c = value.charAt(i);
+            quote = c == ',' || c == '"' || c == '\n' || c == '\r';
+        }
+        if (!quote) {
+            line.append(value);
+            return;
+        }
+        line.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"') {
+                line.append('"');
+            }
+            line.append(c);
+        }
+        line.append('"');
+    }
+    
+    // Parse one flat JSON object, keeping the values of the task fields as strings
+    private static void parseJson(String record, String[] values) {
+        JsonCursor cursor = new JsonCursor(record);
+        cursor.expect('{');
+        if (!cursor.consume('}')) {
+            do {
+                String name = cursor.string();
+                cursor.expect(':');
+                String value = cursor.value();
+                for (int f = 0; f < FIELDS.length; f++) {
+                    if (FIELDS[f].equals(name)) {
+                        values[f] = value;
+                    }
+                }
+            } while (cursor.consume(','));
+            cursor.expect('}');
+        }
+        cursor.end();
+    }
+    
+    // Append a string as a JSON string literal, or null
+    static void appendJson(StringBuilder line, String value) {
+        if (value == null) {
+            line.append("null");
+            return;
+        }
+        line.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"': line.append("\\\""); break;
+                case '\\': line.append("\\\\"); break;
+                case '\n': line.append("\\n"); break;
+                case '\r': line.append("\\r"); break;
+                case '\t': line.append("\\t"); break;
+                default:
+                    if (c < 0x20) {
+                        line.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        line.append(c);
+                    }
+            }
+        }
+        line.append('"');
+    }
+    
+    /**
+     * Reads the tokens of a flat JSON object, nested values are rejected
+     */
+    private static class JsonCursor {
+        private final String text;
+        private int pos;
+        
+        JsonCursor(String text) {
+            this.text = text;
+        }
+        
+        void expect(char c) {
+            if (!consume(c)) {
+                throw new IllegalArgumentException("expected '" + c + "' at column " + (pos + 1));
+            }
+        }
+        
+        boolean consume(char c) {
+            skipSpace();
+            if (pos < text.length() && text.charAt(pos) == c) {
+                pos++;
+                return true;
+            }
+            return false;
+        }
+        
+        void end() {
+            skipSpace();
+            if (pos < text.length()) {
+                throw new IllegalArgumentException("unexpected text after the object at column " + (pos + 1));
+            }
+        }
+        
+        // A string, number, boolean or null, as text; null for JSON null
+        String value() {
+            skipSpace();
+            if (pos < text.length() && text.charAt(pos) == '"') {
+                return string();
+            }
+            int start = pos;
+            while (pos < text.length() && ",} \t\r\n".indexOf(text.charAt(pos)) < 0) {
+                pos++;
+            }
+            String literal = text.substring(start, pos);
+            if (literal.isEmpty() || literal.charAt(0) == '{' || literal.charAt(0) == '[') {
+                throw new IllegalArgumentException("unsupported value at column " + (start + 1));
+            }
+            return literal.equals("null") ? null : literal;
+        }
+        
+        String string() {
+            expect('"');
+            StringBuilder value = new StringBuilder();
+            while (pos < text.length()) {
+                char c = text.charAt(pos++);
+                if (c == '"') {
+                    return value.toString();
+                }
+                if (c != '\\') {
+                    value.append(c);
+                    continue;
+                }
+                if (pos >= text.length()) {
+                    break;
+                }
+                char escape = text.charAt(pos++);
+                switch (escape) {
+                    case 'n': value.append('\n'); break;
+                    case 'r': value.append('\r'); break;
+                    case 't': value.append('\t'); break;
+                    case 'b': value.append('\b'); break;
+                    case 'f': value.append('\f'); break;
+                    case 'u':
+                        if (pos + 4 > text.length()) {
+                            throw new IllegalArgumentException("bad unicode escape at column " + pos);
+                        }
+                        try {
+                            value.append((char) Integer.parseInt(text.substring(pos, pos + 4), 16));
+                        } catch (NumberFormatException e) {
+                            throw new IllegalArgumentException("bad unicode escape at column " + pos);
+                        }
+                        pos += 4;
+                        break;
+                    default: value.append(escape);
+                }
+            }
+            throw new IllegalArgumentException("unterminated string");
+        }
+        
+        private void skipSpace() {
+            while (pos < text.length() && Character.isWhitespace(text.charAt(pos))) {
+                pos++;
+            }
+        }
+    }
+}
@@ -1,3 +1,5 @@
+package todo;
+
 import javax.swing.*;
 import java.awt.*;
 import java.awt.event.*;
@@ -8,6 +10,7 @@ import java.util.ArrayList;
  * Uses JFrame, JButton, JTextField for Add/Delete functionality
  */
 public class TodoGUI extends JFrame {
+    private static final long serialVersionUID = 1L;
     
     // GUI Components
     private JTextField taskField;
@@ -0,0 +1,89 @@
+package todo;
+
+import jdk.jfr.*;
+
+/**
+ * TaskFlightEvents emits TaskMetrics timings as Java Flight Recorder events
+ * It is compiled for Java 11 from its own source directory, since jdk.jfr is
+ * not part of the Java 8 API the rest of the application builds against, and
+ * TaskMetrics only loads it by name on runtimes where that succeeds. Each
+ * event is built only while a recording has it enabled.
+ *
+ *   java -XX:StartFlightRecording:filename=todo.jfr -jar todo-app.jar
+ */
+final class TaskFlightEvents implements TaskMetrics.EventSink {
+    @Name("todo.TaskOperation")
+    @Label("Task Operation")
+    @Category("Todo")
+    @Description("A TaskManager operation and how long it took")
+    static class OperationEvent extends Event {
+        @Label("Operation")
+        String operation;
+        
+        @Label("Time")
+        @Timespan(Timespan.NANOSECONDS)
+        long time;
+    }
+    
+    @Name("todo.Persistence")
+    @Label("Task Persistence")
+    @Category("Todo")
+    @Description("A journal or snapshot write, or a failure to write one")
+    static class PersistenceEvent extends Event {
+        @Label("Kind")
+        String kind;
+        
+        @Label("Bytes")
+        @DataAmount
+        long bytes;
+        
+        @Label("Time")
+        @Timespan(Timespan.NANOSECONDS)
+        long time;
+        
+        @Label("Error")
+        String error;
+    }
+    
+    @Name("todo.EdtDispatch")
+    @Label("Slow EDT Event")
+    @Category("Todo")
+    @Description("An event that kept the Swing event dispatch thread busy for a millisecond or more")
+    static class EdtDispatchEvent extends Event {
+        @Label("Event Type")
+        String eventType;
+        
+        @Label("Time")
+        @Timespan(Timespan.NANOSECONDS)
+        long time;
+    }
+    
+    public void operation(String operation, long nanos) {
+        OperationEvent event = new OperationEvent();
+        if (event.isEnabled()) {
+            event.operation = operation;
+            event.time = nanos;
+            event.commit();
+        }
+    }
+    
+    public void persistence(String kind, long bytes, long nanos, String error) {
+        PersistenceEvent event = new PersistenceEvent();
+        if (event.isEnabled()) {
+            event.kind = kind;
+            event.bytes = bytes;
+            event.time = nanos;
+            event.error = error;
+            event.commit();
+        }
+    }
+    
+    public void edtDispatch(String eventType, long nanos) {
+        EdtDispatchEvent event = new EdtDispatchEvent();
+        if (event.isEnabled()) {
+            event.eventType = eventType;
+            event.time = nanos;
+            event.commit();
+        }
+    }
+}
@@ -0,0 +1,167 @@
+package todo;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ConcurrentTaskManagerTest {
+    @TempDir
+    File dir;
+    
+    private String fill(int count) throws Exception {
+        String file = new File(dir, "tasks.dat").getPath();
+        TaskManager manager = new TaskManager(file);
+        for (int i = 0; i < count; i++) {
+            manager.addTask("Task " + i, i % 2 == 0 ? "even" : "odd", "High", null, "Work");
+        }
+        manager.flush().get();
+        manager.close();
+        return file;
+    }
+    
+    @Test
+    void firstReadSeesEveryLoadedTask() throws Exception {
+        ConcurrentTaskManager manager = new ConcurrentTaskManager(fill(500));
+        try {
+            assertEquals(250, manager.searchTasks("even").size());
+            assertEquals(500, manager.getTasksByCategory("work").size());
+            assertEquals("Task 7", manager.getTaskById(8).getTitle());
+        } finally {
+            manager.close();
+        }
+    }
+    
+    @Test
+    void changesWhileTasksArePreparedInTheBackgroundReachTheIndexes() throws Exception {
+        File file = new File(dir, "tasks.dat");
+        List<Task> written = new ArrayList<>();
+        for (int id = 1; id <= 5000; id++) {
+            written.add(new Task(id, "Task " + id, id % 2 == 0 ? "even" : "odd", "High", null, "Work"));
+        }
+        TaskFileFormat.write(file, written, 5001, 0);
+        ConcurrentTaskManager manager = new ConcurrentTaskManager(file.getPath());
+        try {
+            assertEquals("Task 4000", manager.getTaskById(4000).getTitle());
+            assertEquals("Task 4001", manager.getTaskAt(4000).getTitle());
+            assertEquals(4999, manager.indexOfTask(5000));
+            assertNull(manager.getTaskById(6000));
+            manager.updateTask(4500, "Task 4500", "odd now", "Low", null, "Work");
+            manager.removeTask(2);
+            manager.addTask("Task 5001", "even", "High", null, "Work");
+            
+            assertEquals(2499, manager.searchTasks("even").size());
+            assertEquals(1, manager.getTasksByPriority("Low").size());
+            assertEquals(5000, manager.getTasksByCategory("work").size());
+            assertEquals("Task 3", manager.getTaskAt(1).getTitle());
+        } finally {
+            manager.close();
+        }
+    }
+    
+    @Test
+    void tasksHandedOutNeverChange() throws Exception {
+        ConcurrentTaskManager manager = new ConcurrentTaskManager(fill(10));
+        try {
+            Task before = manager.getTaskById(3);
+            Task added = manager.addTask("New", "", "Low", null, null);
+            manager.toggleTaskCompletion(3);
+            manager.toggleTaskCompletion(added.getId());
+            
+            assertFalse(before.isCompleted());
+            assertFalse(added.isCompleted());
+            assertTrue(manager.getTaskById(3).isCompleted());
+            assertEquals(9, manager.getTasksByStatus(false).size());
+        } finally {
+            manager.close();
+        }
+    }
+    
+    @Test
+    void undoingAClearBeforeAnyReadRestoresIndexedTasks() throws Exception {
+        ConcurrentTaskManager manager = new ConcurrentTaskManager(fill(20));
+        try {
+            manager.clearAllTasks();
+            assertTrue(manager.getAllTasks().isEmpty());
+            assertTrue(manager.undo());
+            
+            List<Task> odd = manager.searchTasks("odd");
+            assertEquals(10, odd.size());
+            assertEquals(20, manager.getTasksByStatus(false).size());
+        } finally {
+            manager.close();
+        }
+    }
+    
+    @Test
+    void queriesSeeEachChange() throws Exception {
+        ConcurrentTaskManager manager = new ConcurrentTaskManager(fill(30));
+        try {
+            TaskQuery<Task> even = TaskQuery.where(TaskQuery.containing("even"));
+            assertEquals(15, manager.count(even));
+            manager.addTask("Another", "even", "Low", null, null);
+            assertEquals(16, manager.count(even));
+            manager.removeTask(1);
+            assertEquals(15, manager.query(even).size());
+        } finally {
+            manager.close();
+        }
+    }
+    
+    @Test
+    void slowExportDoesNotHoldUpChanges() throws Exception {
+        final ConcurrentTaskManager manager = new ConcurrentTaskManager(fill(30));
+        final CountDownLatch writing = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final StringBuilder exported = new StringBuilder();
+        // A client that stops reading until it is let go
+        final Writer stalled = new Writer() {
+            public void write(char[] buffer, int offset, int length) throws IOException {
+                writing.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    throw new IOException(e);
+                }
+                exported.append(buffer, offset, length);
+            }
+            
+            public void flush() {
+            }
+            
+            public void close() {
+            }
+        };
+        Thread export = new Thread(new Runnable() {
+            public void run() {
+                try {
+                    manager.exportTasks(stalled, TaskTransfer.Format.CSV);
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        });
+        try {
+            export.start();
+            assertTrue(writing.await(5, TimeUnit.SECONDS));
+            
+            manager.addTask("Added while exporting", "", "Low", null, null);
+            assertEquals(31, manager.getTotalCount());
+            
+            release.countDown();
+            export.join(5000);
+            assertFalse(exported.toString().contains("Added while exporting"));
+        } finally {
+            release.countDown();
+            manager.close();
+        }
+    }
+}
@@ -0,0 +1,114 @@
+package todo;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SearchIndexTest {
+    private static List<Integer> ids(Iterable<Task> tasks) {
+        List<Integer> ids = new ArrayList<>();
+        for (Task task : tasks) {
+            ids.add(task.getId());
+        }
+        return ids;
+    }
+    
+    // The ids searchTasks found before the index, by lower-casing every field
+    private static List<Integer> scan(TaskStore tasks, String term) {
+        List<Integer> ids = new ArrayList<>();
+        String lower = term.toLowerCase();
+        for (Task task : tasks) {
+            if (task.getTitle().toLowerCase().contains(lower) || task.getDescription().toLowerCase().contains(lower)) {
+                ids.add(task.getId());
+            }
+        }
+        return ids;
+    }
+    
+    private static TaskStore store(Task... tasks) {
+        TaskStore store = new TaskStore();
+        for (Task task : tasks) {
+            store.add(task);
+        }
+        return store;
+    }
+    
+    @Test
+    void matchesLikeLowerCasedContains() {
+        TaskStore tasks = store(
+            new Task(1, "Buy MILK", "from the shop", "High", null, "Home"),
+            new Task(2, "ÉCOLE", "Straße fegen", "Low", null, "Home"),
+            new Task(3, "İstanbul trip", "", "Low", null, "Travel"),
+            new Task(4, "x", "milkshake", "Low", null, "Home"));
+        SearchIndex index = new SearchIndex();
+        index.rebuild(tasks);
+        
+        for (String term : new String[] {"", "m", "mi", "milk", "MILK", "école", "École", "straße", "STRASSE",
+                                         "i̇st", "istanbul", "shake", "shop", "zz"}) {
+            assertEquals(scan(tasks, term), ids(index.search(term, tasks)), term);
+        }
+    }
+    
+    @Test
+    void followsTheTurkishLocaleLikeToLowerCase() {
+        Locale original = Locale.getDefault();
+        Locale.setDefault(new Locale("tr", "TR"));
+        try {
+            TaskStore tasks = store(new Task(1, "FIX IT", "", "High", null, null));
+            SearchIndex index = new SearchIndex();
+            index.rebuild(tasks);
+            
+            assertEquals(scan(tasks, "fix"), ids(index.search("fix", tasks)));
+            assertEquals(scan(tasks, "FIX"), ids(index.search("FIX", tasks)));
+        } finally {
+            Locale.setDefault(original);
+        }
+    }
+    
+    @Test
+    void keepsUpWithAddsAndRemovesInAnyOrder() {
+        Random random = new Random(7);
+        String[] words = {"review", "report", "milk", "deploy", "invoice", "Meeting", "garden", "refactor"};
+        TaskStore tasks = new TaskStore();
+        SearchIndex index = new SearchIndex();
+        // Enough tasks sharing grams that postings span several blocks
+        for (int i = 0; i < 3000; i++) {
+            int id = 1 + random.nextInt(5000);
+            Task old = tasks.remove(id);
+            if (old != null) {
+                index.remove(old);
+            }
+            if (random.nextInt(4) > 0) {
+                Task task = new Task(id, words[random.nextInt(words.length)] + " " + id,
+                                     words[random.nextInt(words.length)], "Low", null, null);
+                tasks.add(task);
+                index.add(task);
+            }
+        }
+        
+        for (String term : new String[] {"re", "mee", "milk", "invoice 12", "repo", "ing", " 4"}) {
+            assertEquals(scan(tasks, term), ids(index.search(term, tasks)), term);
+        }
+    }
+    
+    @Test
+    void findsEditedTextOnlyAfterReindexing() {
+        Task task = new Task(1, "Buy milk", "", "High", null, null);
+        TaskStore tasks = store(task);
+        SearchIndex index = new SearchIndex();
+        index.add(task);
+        
+        index.remove(task);
+        task.setTitle("Buy bread");
+        index.add(task);
+        
+        assertTrue(index.search("milk", tasks).isEmpty());
+        assertEquals(Arrays.asList(1), ids(index.search("BREAD", tasks)));
+    }
+}
@@ -0,0 +1,137 @@
+package todo;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TaskArchiveTest {
+    @TempDir
+    File dir;
+    
+    private String path() {
+        return new File(dir, "tasks.dat.archive").getPath();
+    }
+    
+    private static List<Task> completed(int from, int to, String title) {
+        List<Task> tasks = new ArrayList<>();
+        for (int id = from; id <= to; id++) {
+            Task task = new Task(id, title + " " + id, id % 2 == 0 ? "notes" : null, "Medium", "2024-01-0" + (id % 9 + 1), "Home");
+            task.setCompleted(true);
+            tasks.add(task);
+        }
+        return tasks;
+    }
+    
+    private static List<Integer> ids(List<Task> tasks) {
+        List<Integer> ids = new ArrayList<>();
+        for (Task task : tasks) {
+            ids.add(task.getId());
+        }
+        return ids;
+    }
+    
+    @Test
+    void roundTripsTasksThroughTheFile() throws IOException {
+        TaskArchive archive = new TaskArchive(path());
+        Task odd = new Task(7, "Ünïcode title", "desc", "High", "next week", null);
+        odd.setCompleted(true);
+        archive.add(Collections.singletonList(odd));
+        archive.add(completed(1, 5, "Paid bill"));
+        archive.flush();
+        
+        TaskArchive reopened = new TaskArchive(path());
+        assertEquals(6, reopened.size());
+        Task read = reopened.get(7);
+        assertEquals("Ünïcode title", read.getTitle());
+        assertEquals("desc", read.getDescription());
+        assertEquals("High", read.getPriority());
+        assertEquals("next week", read.getDueDate());
+        assertNull(read.getCategory());
+        assertTrue(read.isCompleted());
+        assertEquals("2024-01-04", reopened.get(3).getDueDate());
+        assertNull(reopened.get(99));
+    }
+    
+    @Test
+    void searchesAcrossSegmentsInIdOrder() throws IOException {
+        TaskArchive archive = new TaskArchive(path());
+        // More than one segment's worth, added out of order
+        archive.add(completed(5001, 9000, "Later"));
+        archive.add(completed(1, 5000, "Earlier"));
+        archive.flush();
+        archive.add(completed(9001, 9002, "Pending"));
+        
+        TaskArchive reopened = new TaskArchive(path());
+        assertEquals(9000, reopened.size());
+        List<Task> found = archive.search("ear");
+        assertEquals(5000, found.size());
+        assertEquals(1, found.get(0).getId());
+        assertEquals(Arrays.asList(9001, 9002), ids(archive.search("PENDING")));
+    }
+    
+    @Test
+    void laterCopyOfATaskDecidesWhetherItMatches() throws IOException {
+        TaskArchive archive = new TaskArchive(path());
+        archive.add(completed(1, 3, "Old title"));
+        archive.flush();
+        archive.add(completed(2, 2, "New title"));
+        archive.flush();
+        
+        assertEquals(Arrays.asList(1, 3), ids(archive.search("old")));
+        assertEquals(Arrays.asList(2), ids(archive.search("new")));
+        assertEquals(3, archive.size());
+    }
+    
+    @Test
+    void cutsOffATornSegmentBeforeTheNextAppend() throws IOException {
+        TaskArchive archive = new TaskArchive(path());
+        archive.add(completed(1, 10, "Kept"));
+        archive.flush();
+        try (FileOutputStream out = new FileOutputStream(path(), true)) {
+            out.write(new byte[] {'T', 'A', 'R', 'C', 0, 0, 0, 9});
+        }
+        
+        TaskArchive reopened = new TaskArchive(path());
+        assertEquals(10, reopened.size());
+        reopened.add(completed(11, 12, "Appended"));
+        reopened.flush();
+        assertEquals(12, new TaskArchive(path()).size());
+    }
+    
+    @Test
+    void managerLeavesArchivingOutOfStartup() throws Exception {
+        String file = new File(dir, "tasks.dat").getPath();
+        TaskManager manager = new TaskManager(file);
+        for (int i = 0; i < 10; i++) {
+            manager.addTask("Task " + i, "", "Low", null, null);
+        }
+        manager.toggleTaskCompletion(2);
+        manager.toggleTaskCompletion(4);
+        manager.close();
+        
+        System.setProperty(TaskArchive.Policy.KEEP_COMPLETED_PROPERTY, "0");
+        try {
+            manager = new TaskManager(file);
+        } finally {
+            System.clearProperty(TaskArchive.Policy.KEEP_COMPLETED_PROPERTY);
+        }
+        try {
+            assertEquals(10, manager.getTotalCount());
+            assertFalse(new File(path()).exists());
+            
+            assertEquals(2, manager.archiveCompleted());
+            assertEquals(8, manager.getTotalCount());
+            assertNull(manager.getTaskById(2));
+            assertEquals(Arrays.asList(2, 4), ids(manager.searchArchive("task")));
+        } finally {
+            manager.close();
+        }
+    }
+}
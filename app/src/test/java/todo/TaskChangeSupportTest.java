@@ -0,0 +1,136 @@
+package todo;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TaskChangeSupportTest {
+    /**
+     * Holds what it is given until the test runs it
+     */
+    private static final class HeldExecutor implements Executor {
+        final ArrayDeque<Runnable> held = new ArrayDeque<>();
+        boolean rejecting;
+        
+        public void execute(Runnable command) {
+            if (rejecting) {
+                throw new RejectedExecutionException("shut down");
+            }
+            held.add(command);
+        }
+        
+        void runAll() {
+            while (!held.isEmpty()) {
+                held.poll().run();
+            }
+        }
+    }
+    
+    /**
+     * Writes down every event it is told about
+     */
+    private static final class Recorder implements TaskChangeListener {
+        final List<String> events = new ArrayList<>();
+        
+        public void taskChanged(TaskChangeEvent event) {
+            events.add(event.toString());
+        }
+    }
+    
+    private static TaskChangeEvent event(TaskChangeEvent.Type type, int id, int index) {
+        return new TaskChangeEvent(type, new Task(id, "Task " + id, "", "Low", null, null), index);
+    }
+    
+    @Test
+    void repeatedUpdatesOfOneTaskKeepOnlyTheLatest() {
+        TaskChangeSupport support = new TaskChangeSupport();
+        HeldExecutor executor = new HeldExecutor();
+        Recorder recorder = new Recorder();
+        support.add(recorder, executor, true);
+        
+        support.publish(event(TaskChangeEvent.Type.UPDATED, 4, 0));
+        support.publish(event(TaskChangeEvent.Type.UPDATED, 4, 1));
+        support.publish(event(TaskChangeEvent.Type.UPDATED, 4, 2));
+        assertEquals(1, executor.held.size());
+        executor.runAll();
+        
+        assertEquals(Arrays.asList("UPDATED 4 at 2"), recorder.events);
+    }
+    
+    @Test
+    void changesThatPileUpBeforeTheListenerRunsBecomeOneBulk() {
+        TaskChangeSupport support = new TaskChangeSupport();
+        HeldExecutor executor = new HeldExecutor();
+        Recorder recorder = new Recorder();
+        support.add(recorder, executor, true);
+        
+        support.publish(event(TaskChangeEvent.Type.UPDATED, 4, 0));
+        support.publish(event(TaskChangeEvent.Type.UPDATED, 5, 1));
+        support.publish(event(TaskChangeEvent.Type.ADDED, 6, 2));
+        support.publish(event(TaskChangeEvent.Type.REMOVED, 4, 0));
+        support.publish(TaskChangeEvent.BULK);
+        support.publish(event(TaskChangeEvent.Type.UPDATED, 5, 0));
+        assertEquals(1, executor.held.size());
+        executor.runAll();
+        assertEquals(Arrays.asList("BULK"), recorder.events);
+        
+        // Once delivered, the next change is passed on as it is
+        support.publish(event(TaskChangeEvent.Type.ADDED, 7, 1));
+        executor.runAll();
+        assertEquals(Arrays.asList("BULK", "ADDED 7 at 1"), recorder.events);
+    }
+    
+    @Test
+    void withoutCoalescingEveryChangeArrivesInOrder() {
+        TaskChangeSupport support = new TaskChangeSupport();
+        HeldExecutor executor = new HeldExecutor();
+        Recorder queued = new Recorder();
+        Recorder direct = new Recorder();
+        support.add(queued, executor, false);
+        support.add(direct, null, false);
+        
+        support.publish(event(TaskChangeEvent.Type.UPDATED, 4, 0));
+        support.publish(event(TaskChangeEvent.Type.UPDATED, 4, 0));
+        support.publish(event(TaskChangeEvent.Type.ADDED, 6, 2));
+        List<String> expected = Arrays.asList("UPDATED 4 at 0", "UPDATED 4 at 0", "ADDED 6 at 2");
+        assertEquals(expected, direct.events);
+        assertTrue(queued.events.isEmpty());
+        assertEquals(1, executor.held.size());
+        executor.runAll();
+        assertEquals(expected, queued.events);
+    }
+    
+    @Test
+    void aListenerThatFailsOrCannotBeScheduledLeavesTheOthersAlone() {
+        TaskChangeSupport support = new TaskChangeSupport();
+        HeldExecutor executor = new HeldExecutor();
+        Recorder queued = new Recorder();
+        Recorder direct = new Recorder();
+        support.add(new TaskChangeListener() {
+            public void taskChanged(TaskChangeEvent event) {
+                throw new IllegalStateException("listener failed");
+            }
+        }, null, false);
+        support.add(queued, executor, true);
+        support.add(direct, null, false);
+        
+        executor.rejecting = true;
+        support.publish(event(TaskChangeEvent.Type.ADDED, 1, 0));
+        assertEquals(Arrays.asList("ADDED 1 at 0"), direct.events);
+        
+        // The rejected event is dropped and the next one is scheduled afresh
+        executor.rejecting = false;
+        support.publish(event(TaskChangeEvent.Type.ADDED, 2, 1));
+        executor.runAll();
+        assertEquals(Arrays.asList("ADDED 2 at 1"), queued.events);
+        
+        assertTrue(support.remove(direct));
+        assertFalse(support.remove(direct));
+        support.publish(TaskChangeEvent.BULK);
+        assertEquals(Arrays.asList("ADDED 1 at 0", "ADDED 2 at 1"), direct.events);
+    }
+}
@@ -0,0 +1,185 @@
+package todo;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TaskColumnsTest {
+    private static final String[] CATEGORIES = {null, "Work", "Home", "Errands"};
+    private static final String[] DUE_DATES = {null, "2024-03-01", "2025-12-31", "someday"};
+    
+    private static Task task(Random random, int id) {
+        StringBuilder title = new StringBuilder("Task " + id);
+        for (int i = random.nextInt(40); i > 0; i--) {
+            title.append(i % 7 == 0 ? "é" : "x");
+        }
+        Task task = new Task(id, title.toString(), random.nextInt(4) == 0 ? null : "About " + id,
+                Priority.values()[random.nextInt(Priority.values().length)],
+                DUE_DATES[random.nextInt(DUE_DATES.length)], CATEGORIES[random.nextInt(CATEGORIES.length)]);
+        task.setCompleted(random.nextBoolean());
+        return task;
+    }
+    
+    private static void assertSameTask(Task expected, Task actual) {
+        assertEquals(expected.getId(), actual.getId());
+        assertEquals(expected.getTitle(), actual.getTitle());
+        assertEquals(expected.getDescription(), actual.getDescription());
+        assertEquals(expected.getPriorityLevel(), actual.getPriorityLevel());
+        assertEquals(expected.getDueDate(), actual.getDueDate());
+        assertEquals(expected.getCategory(), actual.getCategory());
+        assertEquals(expected.isCompleted(), actual.isCompleted());
+    }
+    
+    // Check every way of reading the columns against the tasks they should hold
+    private static void assertHolds(TreeMap<Integer, Task> expected, TaskColumns columns) {
+        assertEquals(expected.size(), columns.size());
+        int position = 0;
+        for (Task task : expected.values()) {
+            assertEquals(position, columns.indexOf(task.getId()));
+            assertEquals(task.getId(), columns.idAt(position));
+            assertEquals(task.getTitle(), columns.titleAt(position));
+            assertEquals(task.getDescription(), columns.descriptionAt(position));
+            assertSameTask(task, columns.get(task.getId()));
+            assertSameTask(task, columns.getAt(position));
+            position++;
+        }
+        Iterator<Task> tasks = columns.iterator();
+        for (Task task : expected.values()) {
+            assertSameTask(task, tasks.next());
+        }
+        assertFalse(tasks.hasNext());
+    }
+    
+    private static void assertSameStatistics(Collection<Task> tasks, TaskStatistics actual) {
+        TaskStatistics expected = new TaskStatistics();
+        for (Task task : tasks) {
+            expected.add(task);
+        }
+        assertEquals(expected.getTotal(), actual.getTotal());
+        assertEquals(expected.getCompleted(), actual.getCompleted());
+        assertEquals(expected.getPending(), actual.getPending());
+        for (Priority priority : Priority.values()) {
+            assertEquals(expected.getPriorityCount(priority), actual.getPriorityCount(priority));
+        }
+        for (String category : CATEGORIES) {
+            if (category != null) {
+                assertEquals(expected.getCategoryCount(category), actual.getCategoryCount(category));
+            }
+        }
+    }
+    
+    @Test
+    void keepsTasksInIdOrderAcrossAddsReplacesAndRemoves() {
+        Random random = new Random(7);
+        TaskColumns columns = new TaskColumns();
+        TreeMap<Integer, Task> expected = new TreeMap<>();
+        for (int i = 0; i < 3000; i++) {
+            int id = 1 + random.nextInt(500);
+            int action = random.nextInt(3);
+            if (action == 0) {
+                assertEquals(expected.remove(id) != null, columns.remove(id));
+            } else if (action == 1 && expected.containsKey(id)) {
+                boolean done = random.nextBoolean();
+                expected.get(id).setCompleted(done);
+                assertTrue(columns.setCompleted(id, done));
+            } else {
+                Task task = task(random, id);
+                columns.add(task);
+                expected.put(id, task);
+            }
+            if (i % 500 == 0) {
+                assertHolds(expected, columns);
+            }
+        }
+        assertHolds(expected, columns);
+        assertFalse(columns.remove(501));
+        assertFalse(columns.setCompleted(501, true));
+        assertNull(columns.get(501));
+    }
+    
+    @Test
+    void keepsTextWhenReplacedTextIsSqueezedOut() {
+        TaskColumns columns = new TaskColumns();
+        TreeMap<Integer, Task> expected = new TreeMap<>();
+        Random random = new Random(11);
+        for (int id = 1; id <= 20; id++) {
+            Task task = task(random, id);
+            columns.add(task);
+            expected.put(id, task);
+        }
+        StringBuilder padding = new StringBuilder();
+        for (int i = 0; i < 500; i++) {
+            padding.append("ü");
+        }
+        // Each round leaves a long title behind as garbage, well past the point the pool is squeezed
+        for (int round = 0; round < 50; round++) {
+            int id = 1 + round % 20;
+            Task task = new Task(id, "Round " + round + padding, "Longer " + padding, Priority.HIGH, null, "Work");
+            columns.add(task);
+            expected.put(id, task);
+            if (round % 3 == 0) {
+                columns.remove(id + 20);
+                expected.remove(id + 20);
+            }
+            assertHolds(expected, columns);
+        }
+        
+        columns.clear();
+        assertTrue(columns.isEmpty());
+        assertEquals(-1, columns.indexOf(1));
+        Task task = task(random, 1);
+        columns.add(task);
+        assertSameTask(task, columns.get(1));
+    }
+    
+    @Test
+    void countsMatchWhatTheTasksThemselvesSay() {
+        Random random = new Random(3);
+        List<Task> tasks = new ArrayList<>();
+        for (int id = 1; id <= 2000; id++) {
+            tasks.add(task(random, id));
+        }
+        TaskColumns columns = TaskColumns.of(tasks);
+        assertSameStatistics(tasks, columns.statistics());
+        
+        for (int id = 1; id <= 2000; id += 3) {
+            columns.remove(id);
+        }
+        for (int id = 2; id <= 2000; id += 5) {
+            if (columns.contains(id)) {
+                columns.setCompleted(id, !columns.get(id).isCompleted());
+            }
+        }
+        List<Task> remaining = new ArrayList<>();
+        for (Task task : columns) {
+            remaining.add(task);
+        }
+        assertSameStatistics(remaining, columns.statistics(new TaskStatistics()));
+        
+        List<TaskFilter> filters = new ArrayList<>();
+        filters.add(TaskFilter.ANY);
+        for (String category : CATEGORIES) {
+            for (Priority priority : new Priority[]{null, Priority.HIGH, Priority.NONE}) {
+                for (Boolean done : new Boolean[]{null, Boolean.TRUE, Boolean.FALSE}) {
+                    filters.add(new TaskFilter(done, category, priority));
+                }
+            }
+        }
+        for (TaskFilter filter : filters) {
+            List<Integer> matching = new ArrayList<>();
+            for (Task task : remaining) {
+                if (filter.matches(task)) {
+                    matching.add(task.getId());
+                }
+            }
+            assertEquals(matching.size(), columns.count(filter));
+            List<Integer> selected = new ArrayList<>();
+            for (Task task : columns.select(filter)) {
+                selected.add(task.getId());
+            }
+            assertEquals(matching, selected);
+        }
+    }
+}
@@ -0,0 +1,253 @@
+package todo;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.*;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TaskFileFormatTest {
+    @TempDir
+    File dir;
+    
+    private static List<Task> tasks(int count) {
+        List<Task> tasks = new ArrayList<>();
+        for (int i = 1; i <= count; i++) {
+            Task task = new Task(i, String.format("Task %05d", i), i % 3 == 0 ? null : "Details " + i,
+                                 i % 2 == 0 ? "High" : "Low", i % 5 == 0 ? "2025-08-01" : null, "Work");
+            task.setCompleted(i % 4 == 0);
+            tasks.add(task);
+        }
+        return tasks;
+    }
+    
+    private static List<Task> loadAll(TaskFileFormat.Snapshot snapshot) {
+        if (snapshot.tasks != null) {
+            return snapshot.tasks;
+        }
+        List<Task> tasks = new ArrayList<>();
+        for (int i = 0; i < snapshot.mapped.size(); i++) {
+            tasks.add(snapshot.mapped.load(i));
+        }
+        return tasks;
+    }
+    
+    private static void assertSameTask(Task expected, Task actual) {
+        assertEquals(expected.getId(), actual.getId());
+        assertEquals(expected.getTitle(), actual.getTitle());
+        assertEquals(expected.getDescription(), actual.getDescription());
+        assertEquals(expected.isCompleted(), actual.isCompleted());
+        assertEquals(expected.getPriority(), actual.getPriority());
+        assertEquals(expected.getDueDate(), actual.getDueDate());
+        assertEquals(expected.getCategory(), actual.getCategory());
+    }
+    
+    // Position of some text in a file
+    private static int find(File file, String text) throws IOException {
+        byte[] bytes = Files.readAllBytes(file.toPath());
+        byte[] target = text.getBytes(StandardCharsets.UTF_8);
+        for (int i = 0; i + target.length <= bytes.length; i++) {
+            int j = 0;
+            while (j < target.length && bytes[i + j] == target[j]) {
+                j++;
+            }
+            if (j == target.length) {
+                return i;
+            }
+        }
+        return fail("No " + text + " in " + file);
+    }
+    
+    // Overwrite the first byte of some text in a file
+    private static void corrupt(File file, String text, byte with) throws IOException {
+        int position = find(file, text);
+        try (RandomAccessFile out = new RandomAccessFile(file, "rw")) {
+            out.seek(position);
+            out.write(with);
+        }
+    }
+    
+    @Test
+    void roundTripsEveryField() throws IOException {
+        File file = new File(dir, "tasks.dat");
+        List<Task> written = tasks(2500);
+        TaskFileFormat.write(file, written, 2501, 7);
+        
+        TaskFileFormat.Snapshot snapshot = TaskFileFormat.read(file);
+        assertNotNull(snapshot.mapped);
+        assertFalse(snapshot.salvaged);
+        assertEquals(2501, snapshot.nextId);
+        assertEquals(7, snapshot.generation);
+        assertEquals(2500, snapshot.statistics.getTotal());
+        assertEquals(625, snapshot.statistics.getCompleted());
+        List<Task> read = loadAll(snapshot);
+        assertEquals(written.size(), read.size());
+        for (int i = 0; i < written.size(); i++) {
+            assertSameTask(written.get(i), read.get(i));
+        }
+    }
+    
+    @Test
+    void checksBlocksOnlyWhenTheirTasksAreDecoded() throws IOException {
+        File file = new File(dir, "tasks.dat");
+        TaskFileFormat.write(file, tasks(2500), 2501, 0);
+        // A task in the second block, tasks 1025 to 2048
+        corrupt(file, "Task 01500", (byte) 'X');
+        
+        TaskFileFormat.Snapshot snapshot = TaskFileFormat.read(file);
+        assertNotNull(snapshot.mapped);
+        final int[] damaged = new int[1];
+        snapshot.mapped.setDamageListener(new Runnable() {
+            public void run() {
+                damaged[0]++;
+            }
+        });
+        
+        assertNotNull(snapshot.mapped.load(0));
+        assertNotNull(snapshot.mapped.load(2400));
+        assertEquals(0, damaged[0]);
+        // Every task of the damaged block is lost, not only the one whose bytes changed
+        assertNull(snapshot.mapped.load(1024));
+        assertNull(snapshot.mapped.load(1499));
+        assertEquals(1, damaged[0]);
+    }
+    
+    @Test
+    void salvagesFromTheFooterWhenTheHeaderIsDamaged() throws IOException {
+        File file = new File(dir, "tasks.dat");
+        List<Task> written = tasks(100);
+        TaskFileFormat.write(file, written, 101, 3);
+        byte[] bytes = Files.readAllBytes(file.toPath());
+        bytes[12] ^= 0x55;
+        Files.write(file.toPath(), bytes);
+        
+        TaskFileFormat.Snapshot snapshot = TaskFileFormat.read(file);
+        assertTrue(snapshot.salvaged);
+        assertEquals(0, snapshot.lost);
+        assertEquals(101, snapshot.nextId);
+        assertEquals(100, snapshot.tasks.size());
+        assertSameTask(written.get(41), snapshot.tasks.get(41));
+    }
+    
+    @Test
+    void salvagesTheWholeBlocksOfATruncatedFile() throws IOException {
+        File file = new File(dir, "tasks.dat");
+        TaskFileFormat.write(file, tasks(3000), 3001, 0);
+        // Cut in the middle of the third block
+        int cut = find(file, "Task 02500");
+        try (RandomAccessFile out = new RandomAccessFile(file, "rw")) {
+            out.setLength(cut);
+        }
+        
+        TaskFileFormat.Snapshot snapshot = TaskFileFormat.read(file);
+        assertTrue(snapshot.salvaged);
+        assertEquals(2048, snapshot.tasks.size());
+        assertEquals(952, snapshot.lost);
+        assertEquals(2048, snapshot.tasks.get(2047).getId());
+    }
+    
+    @Test
+    void readsBlockByBlockWhatIsTooLargeToMap() throws IOException {
+        File file = new File(dir, "tasks.dat");
+        List<Task> written = tasks(2500);
+        TaskFileFormat.write(file, written, 2501, 4);
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            TaskFileFormat.Snapshot snapshot = TaskFileFormat.readStreamed(channel);
+            assertFalse(snapshot.salvaged);
+            assertEquals(2501, snapshot.nextId);
+            assertEquals(4, snapshot.generation);
+            assertEquals(2500, snapshot.tasks.size());
+            for (int i = 0; i < written.size(); i++) {
+                assertSameTask(written.get(i), snapshot.tasks.get(i));
+            }
+        }
+        
+        corrupt(file, "Task 01500", (byte) 'X');
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            TaskFileFormat.Snapshot snapshot = TaskFileFormat.readStreamed(channel);
+            assertTrue(snapshot.salvaged);
+            assertEquals(1024, snapshot.lost);
+            assertEquals(1024, snapshot.tasks.get(1023).getId());
+            assertEquals(2049, snapshot.tasks.get(1024).getId());
+        }
+    }
+    
+    @Test
+    void managerRefusesToStartOverAFileItCannotRead() throws IOException {
+        File file = new File(dir, "tasks.dat");
+        byte[] bytes = "TODO not really a task file".getBytes(StandardCharsets.UTF_8);
+        Files.write(file.toPath(), bytes);
+        try {
+            new TaskManager(file.getPath());
+            fail("Expected UncheckedIOException");
+        } catch (UncheckedIOException e) {
+            // Expected
+        }
+        assertArrayEquals(bytes, Files.readAllBytes(file.toPath()));
+    }
+    
+    @Test
+    void replacesAFileOnceItsStoreLetsGoOfTheMapping() throws IOException {
+        File file = new File(dir, "tasks.dat");
+        TaskFileFormat.write(file, tasks(1500), 1501, 0);
+        TaskStore store = new TaskStore(TaskFileFormat.read(file).mapped);
+        store.remove(3);
+        assertTrue(store.isMapped());
+        
+        store.loadAll();
+        assertFalse(store.isMapped());
+        assertEquals(1499, store.size());
+        TaskFileFormat.replace(file, store.toList(), 1501, 1);
+        
+        TaskFileFormat.Snapshot snapshot = TaskFileFormat.read(file);
+        assertEquals(1, snapshot.generation);
+        assertEquals("Task 00004", loadAll(snapshot).get(2).getTitle());
+        assertFalse(new File(dir, "tasks.dat.tmp").exists());
+    }
+    
+    @Test
+    void managerRewritesASnapshotFoundDamagedWhileReading() throws Exception {
+        File file = new File(dir, "tasks.dat");
+        TaskFileFormat.write(file, tasks(2500), 2501, 0);
+        corrupt(file, "Task 01500", (byte) 'X');
+        
+        TaskManager manager = new TaskManager(file.getPath());
+        assertEquals("Task 00010", manager.getTaskById(10).getTitle());
+        assertFalse(new File(dir, "tasks.dat.damaged").exists());
+        // The second block, tasks 1025 to 2048, is dropped rather than decoded
+        assertNull(manager.getTaskById(1500));
+        assertTrue(new File(dir, "tasks.dat.damaged").exists());
+        assertEquals(2500 - 1024, manager.getTotalCount());
+        assertEquals(2049, manager.getTaskAt(1024).getId());
+        manager.addTask("After", "", "Low", null, null);
+        assertEquals(2500 - 1024 + 1, manager.getAllTasks().size());
+        manager.close();
+        
+        TaskFileFormat.Snapshot snapshot = TaskFileFormat.read(file);
+        assertNotNull(snapshot.mapped);
+        assertEquals(2500 - 1024 + 1, snapshot.mapped.size());
+        final int[] damaged = new int[1];
+        snapshot.mapped.setDamageListener(new Runnable() {
+            public void run() {
+                damaged[0]++;
+            }
+        });
+        List<Task> read = loadAll(snapshot);
+        assertEquals(1024, read.get(1023).getId());
+        assertEquals(2049, read.get(1024).getId());
+        assertEquals(0, damaged[0]);
+        
+        TaskManager reopened = new TaskManager(file.getPath());
+        assertEquals(2500 - 1024 + 1, reopened.getTotalCount());
+        assertNull(reopened.getTaskById(1500));
+        assertEquals("After", reopened.getTaskById(2501).getTitle());
+        reopened.close();
+    }
+}
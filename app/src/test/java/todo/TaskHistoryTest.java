@@ -0,0 +1,141 @@
+package todo;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TaskHistoryTest {
+    @TempDir
+    File dir;
+    
+    // Everything a change could have touched, in display order
+    private static String state(TaskManager manager) {
+        StringBuilder state = new StringBuilder();
+        for (Task task : manager.getAllTasks()) {
+            state.append(task.getId()).append(' ').append(task.getTitle()).append(' ').append(task.getPriority())
+                 .append(task.isCompleted() ? " done" : "").append('\n');
+        }
+        return state.toString();
+    }
+    
+    // Make one change of every kind, returning the state before the first and after each one
+    private static List<String> changeEverything(TaskManager manager) throws Exception {
+        List<String> states = new ArrayList<>();
+        states.add(state(manager));
+        manager.addTask("First", "", "Low", null, "Work");
+        states.add(state(manager));
+        manager.addTask("Second", "", "High", null, "Home");
+        states.add(state(manager));
+        manager.updateTask(1, "First, renamed", "now with notes", "Medium", "2025-08-01", "Work");
+        states.add(state(manager));
+        manager.toggleTaskCompletion(2);
+        states.add(state(manager));
+        manager.importTasks(new StringReader("title,priority\nImported A,Low\nImported B,High\n"), TaskTransfer.Format.CSV);
+        states.add(state(manager));
+        manager.removeTask(1);
+        states.add(state(manager));
+        manager.clearAllTasks();
+        states.add(state(manager));
+        manager.addTask("After the clear", "", "Low", null, null);
+        states.add(state(manager));
+        return states;
+    }
+    
+    private static void assertUndoesAndRedoesEverything(TaskManager manager) throws Exception {
+        List<String> states = changeEverything(manager);
+        for (int i = states.size() - 2; i >= 0; i--) {
+            assertTrue(manager.undo());
+            assertEquals(states.get(i), state(manager));
+        }
+        assertFalse(manager.undo());
+        for (int i = 1; i < states.size(); i++) {
+            assertTrue(manager.redo());
+            assertEquals(states.get(i), state(manager));
+        }
+        assertFalse(manager.redo());
+    }
+    
+    @Test
+    void undoesAndRedoesEveryKindOfChange() throws Exception {
+        TaskManager manager = new TaskManager(new File(dir, "tasks.dat").getPath());
+        try {
+            assertUndoesAndRedoesEverything(manager);
+        } finally {
+            manager.close();
+        }
+    }
+    
+    @Test
+    void undoesAndRedoesEveryKindOfChangeWhenShared() throws Exception {
+        ConcurrentTaskManager manager = new ConcurrentTaskManager(new File(dir, "tasks.dat").getPath());
+        try {
+            assertUndoesAndRedoesEverything(manager);
+        } finally {
+            manager.close();
+        }
+    }
+    
+    @Test
+    void undoneChangesStayUndoneAfterReopening() throws Exception {
+        String file = new File(dir, "tasks.dat").getPath();
+        TaskManager manager = new TaskManager(file);
+        List<String> states = changeEverything(manager);
+        manager.undo();
+        manager.undo();
+        manager.undo();
+        String undone = state(manager);
+        assertEquals(states.get(states.size() - 4), undone);
+        manager.close();
+        
+        manager = new TaskManager(file);
+        try {
+            assertEquals(undone, state(manager));
+            assertFalse(manager.canUndo());
+        } finally {
+            manager.close();
+        }
+    }
+    
+    @Test
+    void aNewChangeDropsWhatCouldBeRedone() throws Exception {
+        TaskManager manager = new TaskManager(new File(dir, "tasks.dat").getPath());
+        try {
+            manager.addTask("Kept", "", "Low", null, null);
+            manager.addTask("Undone", "", "Low", null, null);
+            manager.undo();
+            assertTrue(manager.canRedo());
+            manager.addTask("Instead", "", "Low", null, null);
+            
+            assertFalse(manager.canRedo());
+            assertFalse(manager.redo());
+            assertEquals("1 Kept Low\n3 Instead Low\n", state(manager));
+        } finally {
+            manager.close();
+        }
+    }
+    
+    @Test
+    void forgetsTheOldestChangesOnceFull() {
+        TaskHistory history = new TaskHistory(3);
+        for (int id = 1; id <= 5; id++) {
+            history.record(TaskHistory.toggled(id));
+        }
+        assertEquals(5, history.undo().id);
+        assertEquals(4, history.undo().id);
+        
+        IntSet held = new IntSet();
+        history.collectIds(held);
+        assertEquals(3, held.size());
+        assertTrue(held.contains(3) && held.contains(4) && held.contains(5));
+        
+        assertEquals(3, history.undo().id);
+        assertNull(history.undo());
+        assertEquals(3, history.redo().id);
+    }
+}
@@ -0,0 +1,80 @@
+package todo;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TaskIndexTest {
+    private static List<Integer> ids(Iterable<Task> tasks) {
+        List<Integer> ids = new ArrayList<>();
+        for (Task task : tasks) {
+            ids.add(task.getId());
+        }
+        return ids;
+    }
+    
+    @Test
+    void findsCategoriesIgnoringCase() {
+        TaskIndex index = new TaskIndex();
+        index.add(new Task(1, "a", null, "High", null, "Work"));
+        index.add(new Task(2, "b", null, "Low", null, "WORK"));
+        index.add(new Task(3, "c", null, "Low", null, "Home"));
+        
+        assertEquals(Arrays.asList(1, 2), ids(index.byCategory("work")));
+        assertEquals(Arrays.asList(3), ids(index.byCategory("HOME")));
+        assertTrue(index.byCategory("Garden").isEmpty());
+    }
+    
+    @Test
+    void keepsNullCategoryApartFromEmpty() {
+        TaskIndex index = new TaskIndex();
+        index.add(new Task(1, "a", null, "High", null, null));
+        index.add(new Task(2, "b", null, "High", null, ""));
+        
+        assertEquals(Arrays.asList(1), ids(index.byCategory(null)));
+        assertEquals(Arrays.asList(2), ids(index.byCategory("")));
+    }
+    
+    @Test
+    void followsRemovalsAndChanges() {
+        TaskIndex index = new TaskIndex();
+        Task task = new Task(1, "a", null, "High", null, "Work");
+        index.add(task);
+        index.remove(task);
+        task.toggleCompleted();
+        task.setPriority("Low");
+        index.add(task);
+        
+        assertTrue(index.byPriority("High").isEmpty());
+        assertEquals(Arrays.asList(1), ids(index.byPriority("low")));
+        assertEquals(Arrays.asList(1), ids(index.byStatus(true)));
+        assertTrue(index.byStatus(false).isEmpty());
+        
+        index.remove(task);
+        assertTrue(index.byCategory("Work").isEmpty());
+        assertTrue(index.categories().isEmpty());
+    }
+    
+    @Test
+    void returnsDueRangeSoonestFirst() {
+        TaskIndex index = new TaskIndex();
+        index.add(new Task(1, "a", null, "High", "2026-03-05", null));
+        index.add(new Task(2, "b", null, "High", "2026-03-01", null));
+        Task done = new Task(3, "c", null, "High", "2026-03-03", null);
+        done.toggleCompleted();
+        index.add(done);
+        index.add(new Task(4, "d", null, "High", "2026-04-01", null));
+        index.add(new Task(5, "e", null, "High", null, null));
+        int from = (int) LocalDate.of(2026, 3, 1).toEpochDay();
+        int to = (int) LocalDate.of(2026, 3, 31).toEpochDay();
+        
+        assertEquals(Arrays.asList(2, 3, 1), ids(index.dueBetween(from, to, false)));
+        assertEquals(Arrays.asList(2, 1), ids(index.dueBetween(from, to, true)));
+        assertTrue(index.dueBetween(to, from, false).isEmpty());
+    }
+}
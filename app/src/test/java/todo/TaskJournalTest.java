@@ -0,0 +1,168 @@
+package todo;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TaskJournalTest {
+    @TempDir
+    File dir;
+    
+    // Replays records as readable strings
+    private static class Recorder implements TaskJournal.Replayer {
+        final List<String> records = new ArrayList<>();
+        
+        public void replayAdd(Task task) {
+            records.add("add " + task.getId() + " " + task.getTitle() + " " + task.isCompleted());
+        }
+        
+        public void replayRemove(int id) {
+            records.add("remove " + id);
+        }
+        
+        public void replayToggle(int id) {
+            records.add("toggle " + id);
+        }
+        
+        public void replayUpdate(Task task) {
+            records.add("update " + task.getId() + " " + task.getTitle());
+        }
+        
+        public void replayClear() {
+            records.add("clear");
+        }
+    }
+    
+    private String base() {
+        return new File(dir, "tasks.dat").getPath();
+    }
+    
+    private File segment(long generation) {
+        return new File(base() + "." + generation + ".log");
+    }
+    
+    private List<String> replay() throws IOException {
+        Recorder recorder = new Recorder();
+        TaskJournal journal = new TaskJournal(base());
+        journal.open(0, recorder);
+        journal.close();
+        return recorder.records;
+    }
+    
+    private TaskJournal openEmpty() throws IOException {
+        TaskJournal journal = new TaskJournal(base());
+        journal.open(0, new Recorder());
+        return journal;
+    }
+    
+    @Test
+    void replaysEveryRecordType() throws Exception {
+        TaskJournal journal = openEmpty();
+        journal.logAdd(new Task(1, "one", null, "High", null, "Work"));
+        journal.logAddAll(Arrays.asList(new Task(2, "two", "d", "Low", "2026-01-01", null)));
+        journal.logToggle(1);
+        journal.logUpdate(new Task(2, "two!", null, "Low", null, null));
+        journal.logRemove(1);
+        journal.logClear();
+        journal.close();
+        
+        assertEquals(Arrays.asList("add 1 one false", "add 2 two false", "toggle 1", "update 2 two!", "remove 1", "clear"),
+                     replay());
+    }
+    
+    @Test
+    void keepsStringsLongerThanWriteUtfAllows() throws Exception {
+        char[] chars = new char[70000];
+        Arrays.fill(chars, 'é');
+        String title = new String(chars);
+        TaskJournal journal = openEmpty();
+        journal.logAdd(new Task(1, title, title, "High", null, null)).get();
+        journal.close();
+        
+        assertEquals(Arrays.asList("add 1 " + title + " false"), replay());
+    }
+    
+    @Test
+    void stopsAtZeroFilledTailAndAppendsAfterLastRecord() throws Exception {
+        TaskJournal journal = openEmpty();
+        journal.logAdd(new Task(1, "one", null, "High", null, null));
+        journal.logToggle(1);
+        journal.close();
+        long intact = segment(0).length();
+        try (FileOutputStream out = new FileOutputStream(segment(0), true)) {
+            out.write(new byte[4096]);
+        }
+        
+        Recorder recorder = new Recorder();
+        journal = new TaskJournal(base());
+        journal.open(0, recorder);
+        assertEquals(Arrays.asList("add 1 one false", "toggle 1"), recorder.records);
+        assertEquals(intact, segment(0).length());
+        journal.logRemove(1);
+        journal.close();
+        
+        assertEquals(Arrays.asList("add 1 one false", "toggle 1", "remove 1"), replay());
+    }
+    
+    @Test
+    void stopsAtTruncatedRecord() throws Exception {
+        TaskJournal journal = openEmpty();
+        journal.logAdd(new Task(1, "one", null, "High", null, null));
+        journal.logAdd(new Task(2, "two", null, "High", null, null));
+        journal.close();
+        byte[] bytes = Files.readAllBytes(segment(0).toPath());
+        Files.write(segment(0).toPath(), Arrays.copyOf(bytes, bytes.length - 3));
+        
+        assertEquals(Arrays.asList("add 1 one false"), replay());
+    }
+    
+    @Test
+    void rejectsImpossibleStringLength() throws Exception {
+        TaskJournal journal = openEmpty();
+        journal.logToggle(1);
+        journal.close();
+        try (DataOutputStream out = new DataOutputStream(new FileOutputStream(segment(0), true))) {
+            out.writeByte(6);
+            out.writeInt(2);
+            out.writeInt(Integer.MAX_VALUE);
+        }
+        
+        assertEquals(Arrays.asList("toggle 1"), replay());
+    }
+    
+    @Test
+    void stopsAtAnUnknownRecordType() throws Exception {
+        TaskJournal journal = openEmpty();
+        journal.logToggle(1);
+        journal.close();
+        try (DataOutputStream out = new DataOutputStream(new FileOutputStream(segment(0), true))) {
+            out.writeByte(1);
+            out.writeInt(7);
+        }
+        
+        assertEquals(Arrays.asList("toggle 1"), replay());
+    }
+    
+    @Test
+    void replaysFromSnapshotGenerationAndDropsOlderSegments() throws Exception {
+        TaskJournal journal = openEmpty();
+        journal.logToggle(1);
+        long closed = journal.rotate();
+        journal.logToggle(2);
+        journal.close();
+        
+        Recorder recorder = new Recorder();
+        journal = new TaskJournal(base());
+        journal.open(closed + 1, recorder);
+        journal.close();
+        assertEquals(Arrays.asList("toggle 2"), recorder.records);
+        assertFalse(segment(closed).exists());
+    }
+}
@@ -0,0 +1,95 @@
+package todo;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TaskMetricsTest {
+    @Test
+    void smallDurationsAreCountedExactly() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        LatencyHistogram.Snapshot empty = histogram.snapshot();
+        assertEquals(0, empty.getCount());
+        assertEquals(0, empty.getPercentile(0.99));
+        assertEquals(0, empty.getMax());
+        
+        for (int nanos = 10; nanos >= 1; nanos--) {
+            histogram.record(nanos);
+        }
+        histogram.record(-5);
+        LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+        assertEquals(11, snapshot.getCount());
+        assertEquals(0, snapshot.getPercentile(0.0));
+        assertEquals(5, snapshot.getPercentile(0.5));
+        assertEquals(10, snapshot.getPercentile(1.0));
+        assertEquals(10, snapshot.getMax());
+        assertEquals(5, snapshot.getMean());
+    }
+    
+    @Test
+    void percentilesStayWithinABucketOfTheTrueValue() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        Random random = new Random(5);
+        long[] values = new long[100000];
+        for (int i = 0; i < values.length; i++) {
+            // Mostly around a microsecond, with a tail out to tens of milliseconds
+            values[i] = random.nextInt(10) == 0 ? 1000 + random.nextInt(50000000) : 500 + random.nextInt(1500);
+            histogram.record(values[i]);
+        }
+        Arrays.sort(values);
+        LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+        assertEquals(values.length, snapshot.getCount());
+        for (double fraction : new double[]{0.5, 0.9, 0.95, 0.99, 0.999, 1.0}) {
+            long expected = values[(int) Math.ceil(fraction * values.length) - 1];
+            long reported = snapshot.getPercentile(fraction);
+            assertTrue(reported >= expected, fraction + ": " + reported + " < " + expected);
+            assertTrue(reported <= expected + expected / 16, fraction + ": " + reported + " far above " + expected);
+        }
+        assertEquals(snapshot.getPercentile(1.0), snapshot.getMax());
+        
+        // A snapshot keeps its counts when the histogram moves on
+        histogram.reset();
+        assertEquals(0, histogram.snapshot().getCount());
+        assertEquals(values.length, snapshot.getCount());
+    }
+    
+    @Test
+    void countsFailedSavesAndRemembersTheLast() {
+        TaskMetrics metrics = new TaskMetrics();
+        assertEquals(0, metrics.getPersistenceFailures());
+        assertNull(metrics.getLastPersistenceError());
+        assertFalse(metrics.dump().contains("last failure"));
+        
+        metrics.recordPersistenceFailure("journal", "disk full");
+        metrics.recordPersistenceFailure("snapshot", "permission denied");
+        assertEquals(2, metrics.getPersistenceFailures());
+        assertEquals("snapshot: permission denied", metrics.getLastPersistenceError());
+        String dump = metrics.dump();
+        assertTrue(dump.contains(String.format("  %-16s %d%n", "save failures", 2)));
+        assertTrue(dump.contains("snapshot: permission denied"));
+        
+        metrics.reset();
+        assertEquals(0, metrics.getPersistenceFailures());
+        assertNull(metrics.getLastPersistenceError());
+    }
+    
+    @Test
+    void reportsOnlyTheOperationsThatRan() {
+        TaskMetrics metrics = new TaskMetrics();
+        long start = System.nanoTime();
+        metrics.record(TaskMetrics.Operation.ADD, start);
+        metrics.record(TaskMetrics.Operation.ADD, start);
+        metrics.record(TaskMetrics.Operation.SEARCH, start);
+        metrics.recordJournalWrite(128, start);
+        
+        Map<String, TaskMetrics.Latency> operations = metrics.getOperations();
+        assertEquals(Arrays.asList("add", "search"), new ArrayList<>(operations.keySet()));
+        assertEquals(2, operations.get("add").getCount());
+        assertTrue(operations.get("add").getP50Micros() <= operations.get("add").getMaxMicros());
+        assertEquals(1, metrics.getJournalWriteLatency().getCount());
+        assertEquals(128, metrics.getJournalBytesWritten());
+        assertEquals(0, metrics.getSnapshotWriteLatency().getCount());
+    }
+}
@@ -0,0 +1,127 @@
+package todo;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TaskPageTest {
+    private static final String[] PRIORITIES = {"High", "Medium", "Low", ""};
+    
+    @TempDir
+    File dir;
+    
+    private static Task add(TaskManager manager, Random random) {
+        String due = random.nextInt(3) == 0 ? null : String.format("2025-%02d-%02d", 1 + random.nextInt(12), 1 + random.nextInt(28));
+        Task task = manager.addTask((char) ('a' + random.nextInt(26)) + " task", "", PRIORITIES[random.nextInt(4)],
+                                    due, random.nextBoolean() ? "Work" : "Home");
+        if (random.nextInt(3) == 0) {
+            manager.toggleTaskCompletion(task.getId());
+        }
+        return task;
+    }
+    
+    // Page through a view while tasks come and go, checking nothing is skipped or shown twice
+    private void pageWhileChanging(TaskSort sort, TaskFilter filter, long seed) {
+        TaskManager manager = new TaskManager(new File(dir, sort + "-" + seed + ".dat").getPath());
+        try {
+            Random random = new Random(seed);
+            for (int i = 0; i < 60; i++) {
+                add(manager, random);
+            }
+            Set<Integer> untouched = new HashSet<>();
+            for (Task task : manager.getAllTasks()) {
+                untouched.add(task.getId());
+            }
+            Set<Integer> removedUnseen = new HashSet<>();
+            List<Task> seen = new ArrayList<>();
+            Set<Integer> seenIds = new HashSet<>();
+            String cursor = null;
+            do {
+                TaskPage page = manager.getPage(sort, filter, cursor, 7);
+                assertTrue(page.getTasks().size() <= 7);
+                for (Task task : page.getTasks()) {
+                    assertTrue(filter.matches(task));
+                    assertFalse(removedUnseen.contains(task.getId()));
+                    assertTrue(seenIds.add(task.getId()), "shown twice: " + task.getId());
+                    seen.add(task);
+                }
+                cursor = page.getNextCursor();
+                assertEquals(cursor != null, page.hasMore());
+                if (cursor == null) {
+                    break;
+                }
+                
+                // Remove the task the cursor continues after, one not shown yet, and add another
+                int last = page.getTasks().get(page.getTasks().size() - 1).getId();
+                manager.removeTask(last);
+                untouched.remove(last);
+                List<Task> all = manager.getAllTasks();
+                Task victim = all.get(random.nextInt(all.size()));
+                if (!seenIds.contains(victim.getId())) {
+                    manager.removeTask(victim.getId());
+                    untouched.remove(victim.getId());
+                    removedUnseen.add(victim.getId());
+                }
+                add(manager, random);
+            } while (true);
+            
+            for (int i = 1; i < seen.size(); i++) {
+                assertTrue(sort.comparator().compare(seen.get(i - 1), seen.get(i)) < 0);
+            }
+            for (Integer id : untouched) {
+                Task task = manager.getTaskById(id);
+                assertEquals(filter.matches(task), seenIds.contains(id), "task " + id);
+            }
+        } finally {
+            manager.close();
+        }
+    }
+    
+    @Test
+    void pagesInIdOrderAcrossInsertsAndRemoves() {
+        pageWhileChanging(TaskSort.ID, TaskFilter.ANY, 1);
+        pageWhileChanging(TaskSort.ID, new TaskFilter(false, null, null), 2);
+    }
+    
+    @Test
+    void pagesInEverySortOrderAcrossInsertsAndRemoves() {
+        for (TaskSort sort : TaskSort.values()) {
+            pageWhileChanging(sort, TaskFilter.ANY, 3);
+            pageWhileChanging(sort, new TaskFilter(null, "work", null), 4);
+            pageWhileChanging(sort, new TaskFilter(true, null, Priority.HIGH), 5);
+        }
+    }
+    
+    @Test
+    void rejectsCursorsOfOtherViewsAndMalformedOnes() {
+        TaskManager manager = new TaskManager(new File(dir, "tasks.dat").getPath());
+        try {
+            Random random = new Random(6);
+            for (int i = 0; i < 10; i++) {
+                add(manager, random);
+            }
+            String cursor = manager.getPage(TaskSort.PRIORITY, TaskFilter.ANY, null, 3).getNextCursor();
+            assertNotNull(cursor);
+            for (String bad : new String[]{cursor.replace("PRIORITY", "TITLE"), "PRIORITY:x:1", "PRIORITY:4", "ID"}) {
+                try {
+                    manager.getPage(TaskSort.PRIORITY, TaskFilter.ANY, bad, 3);
+                    fail("Accepted cursor " + bad);
+                } catch (IllegalArgumentException e) {
+                    // Expected
+                }
+            }
+            try {
+                manager.getPage(TaskSort.ID, TaskFilter.ANY, null, 0);
+                fail("Accepted an empty page size");
+            } catch (IllegalArgumentException e) {
+                // Expected
+            }
+        } finally {
+            manager.close();
+        }
+    }
+}
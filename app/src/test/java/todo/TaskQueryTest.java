@@ -0,0 +1,129 @@
+package todo;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TaskQueryTest {
+    private static final String[] PRIORITIES = {"High", "Medium", "Low", null};
+    private static final String[] CATEGORIES = {"Work", "Home", null, "Errands", "work"};
+    
+    // Lots of tasks that tie on priority, so a sort that is not stable shows
+    private static List<Task> tasks(int count) {
+        Random random = new Random(3);
+        List<Task> tasks = new ArrayList<>();
+        for (int id = 1; id <= count; id++) {
+            Task task = new Task(id, "Task " + random.nextInt(count), random.nextInt(7) == 0 ? "report" : "",
+                                 PRIORITIES[random.nextInt(PRIORITIES.length)], null,
+                                 CATEGORIES[random.nextInt(CATEGORIES.length)]);
+            task.setCompleted(random.nextInt(3) == 0);
+            tasks.add(task);
+        }
+        return tasks;
+    }
+    
+    private static final Predicate<Task> PENDING = new Predicate<Task>() {
+        public boolean test(Task task) {
+            return !task.isCompleted();
+        }
+    };
+    
+    // Priority only, so equal priorities keep their source order
+    private static final Comparator<Task> BY_PRIORITY = new Comparator<Task>() {
+        public int compare(Task a, Task b) {
+            return a.getPriorityLevel().compareTo(b.getPriorityLevel());
+        }
+    };
+    
+    private static final Function<Task, Integer> ID = new Function<Task, Integer>() {
+        public Integer apply(Task task) {
+            return task.getId();
+        }
+    };
+    
+    // What a query should return, worked out one step at a time on the calling thread
+    private static List<Integer> expected(List<Task> tasks, Predicate<Task> predicate, Comparator<Task> order, int limit) {
+        List<Task> found = new ArrayList<>();
+        for (Task task : tasks) {
+            if (predicate.test(task)) {
+                found.add(task);
+            }
+        }
+        if (order != null) {
+            Collections.sort(found, order);
+        }
+        List<Integer> ids = new ArrayList<>();
+        for (Task task : found.subList(0, limit < 0 ? found.size() : Math.min(limit, found.size()))) {
+            ids.add(task.getId());
+        }
+        return ids;
+    }
+    
+    // Check one query over a list large enough to be split and one small enough not to be
+    private static void assertRuns(Predicate<Task> predicate, Comparator<Task> order, int limit) {
+        TaskQuery<Task> query = TaskQuery.where(predicate);
+        if (order != null) {
+            query = query.sortedBy(order);
+        }
+        if (limit >= 0) {
+            query = query.limit(limit);
+        }
+        for (List<Task> tasks : Arrays.asList(tasks(TaskQuery.PARALLEL_THRESHOLD * 3), tasks(1000))) {
+            List<Integer> ids = expected(tasks, predicate, order, limit);
+            assertEquals(ids, query.select(ID).run(tasks));
+            assertEquals(ids, query.select(ID).run(new LinkedList<>(tasks)));
+            assertEquals(ids.size(), query.count(tasks));
+            assertEquals(ids, query.select(ID).aggregate(tasks, Collectors.<Integer>toList()));
+        }
+    }
+    
+    @Test
+    void splitsLargeListsAcrossThePool() {
+        // Surefire runs with a parallel common pool even on a single core, see app/pom.xml
+        assertTrue(ForkJoinPool.getCommonPoolParallelism() > 1);
+    }
+    
+    @Test
+    void filtersSortsAndLimitsAlikeInParallelAndOnOneThread() {
+        assertRuns(PENDING, null, -1);
+        assertRuns(PENDING, null, 10);
+        assertRuns(PENDING, BY_PRIORITY, -1);
+        assertRuns(PENDING, BY_PRIORITY, 100);
+        assertRuns(TaskQuery.containing("REPORT"), TaskSort.TITLE.comparator(), 25);
+        assertRuns(PENDING, BY_PRIORITY, 0);
+    }
+    
+    @Test
+    void aggregatesAndCountsEveryMatchOnce() {
+        List<Task> tasks = tasks(TaskQuery.PARALLEL_THRESHOLD * 3);
+        Map<String, Long> expected = new HashMap<>();
+        TaskStatistics counted = new TaskStatistics();
+        for (Task task : tasks) {
+            if (PENDING.test(task)) {
+                String category = String.valueOf(task.getCategory());
+                expected.put(category, expected.containsKey(category) ? expected.get(category) + 1 : 1L);
+                counted.add(task);
+            }
+        }
+        TaskQuery<String> categories = TaskQuery.where(PENDING).select(new Function<Task, String>() {
+            public String apply(Task task) {
+                return String.valueOf(task.getCategory());
+            }
+        });
+        
+        assertEquals(expected, categories.aggregate(tasks, Collectors.groupingBy(Function.<String>identity(),
+                                                                                 Collectors.counting())));
+        TaskStatistics statistics = TaskQuery.where(PENDING).statistics(tasks);
+        assertEquals(counted.getTotal(), statistics.getTotal());
+        assertEquals(0, statistics.getCompleted());
+        assertEquals(counted.getPriorityCount(Priority.HIGH), statistics.getPriorityCount(Priority.HIGH));
+        assertEquals(counted.getCategoryCount("work"), statistics.getCategoryCount("work"));
+        assertEquals(counted.getTotal(), TaskQuery.where(PENDING).count(tasks));
+    }
+}
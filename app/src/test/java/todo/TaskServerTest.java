@@ -0,0 +1,94 @@
+package todo;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.*;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TaskServerTest {
+    @TempDir
+    File dir;
+    
+    private ConcurrentTaskManager manager;
+    private TaskServer server;
+    
+    @BeforeEach
+    void start() throws IOException {
+        manager = new ConcurrentTaskManager(new File(dir, "tasks.dat").getPath());
+        server = new TaskServer(manager, new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+        server.start();
+    }
+    
+    @AfterEach
+    void stop() {
+        server.stop();
+        manager.close();
+    }
+    
+    // Send a request with exactly the headers given and return the whole response
+    private String send(String method, String path, String headers, String body) throws IOException {
+        byte[] content = body.getBytes(StandardCharsets.UTF_8);
+        try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), server.getPort())) {
+            OutputStream out = socket.getOutputStream();
+            out.write((method + " " + path + " HTTP/1.1\r\n" + headers + "Content-Length: " + content.length
+                       + "\r\nConnection: close\r\n\r\n").getBytes(StandardCharsets.UTF_8));
+            out.write(content);
+            out.flush();
+            ByteArrayOutputStream response = new ByteArrayOutputStream();
+            InputStream in = socket.getInputStream();
+            byte[] buffer = new byte[4096];
+            int read;
+            while ((read = in.read(buffer)) > 0) {
+                response.write(buffer, 0, read);
+            }
+            return new String(response.toByteArray(), StandardCharsets.UTF_8);
+        }
+    }
+    
+    private String local() {
+        return "Host: localhost:" + server.getPort() + "\r\n";
+    }
+    
+    private static int status(String response) {
+        return Integer.parseInt(response.substring(9, 12));
+    }
+    
+    @Test
+    void createsACompletedTaskAsOneUndoableChange() throws IOException {
+        String response = send("POST", "/tasks", local() + "Content-Type: application/json\r\n",
+                               "{\"title\":\"Done already\",\"completed\":true}");
+        assertEquals(201, status(response));
+        assertTrue(response.contains("\"completed\":true"), response);
+        assertTrue(manager.getTaskById(1).isCompleted());
+        assertEquals(1, manager.getCompletedCount());
+        
+        assertTrue(manager.undo());
+        assertEquals(0, manager.getTotalCount());
+        assertFalse(manager.undo());
+    }
+    
+    @Test
+    void refusesRequestsFromOtherSites() throws IOException {
+        String json = "Content-Type: application/json\r\n";
+        String task = "{\"title\":\"Injected\"}";
+        assertEquals(403, status(send("GET", "/tasks", "Host: attacker.example:" + server.getPort() + "\r\n", "")));
+        assertEquals(403, status(send("POST", "/tasks", local() + json + "Origin: http://attacker.example\r\n", task)));
+        assertEquals(403, status(send("POST", "/undo", local() + "Origin: null\r\n", "")));
+        assertEquals(415, status(send("POST", "/tasks", local() + "Content-Type: text/plain\r\n", task)));
+        assertEquals(415, status(send("POST", "/tasks", local(), task)));
+        assertEquals(0, manager.getTotalCount());
+        
+        assertEquals(200, status(send("GET", "/tasks", "Host: 127.0.0.1:" + server.getPort() + "\r\n", "")));
+        assertEquals(200, status(send("GET", "/stats", "Host: [::1]\r\n", "")));
+        String origin = "Origin: http://localhost:" + server.getPort() + "\r\n";
+        assertEquals(201, status(send("POST", "/tasks", local() + json + origin, task)));
+    }
+}
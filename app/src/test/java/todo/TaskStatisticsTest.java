@@ -0,0 +1,108 @@
+package todo;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TaskStatisticsTest {
+    private static final String[] PRIORITIES = {"High", "Medium", "Low", ""};
+    private static final String[] CATEGORIES = {"Work", "Home", "Errands", null};
+    
+    @TempDir
+    File dir;
+    
+    // Check the running counts against a count of the tasks the manager holds
+    private static void assertCounts(TaskManager manager) {
+        TaskStatistics expected = new TaskStatistics();
+        for (Task task : manager.getAllTasks()) {
+            expected.add(task);
+        }
+        TaskStatistics actual = manager.getStatistics(new TaskStatistics());
+        assertEquals(expected.getTotal(), actual.getTotal());
+        assertEquals(expected.getCompleted(), actual.getCompleted());
+        assertEquals(expected.getPending(), actual.getPending());
+        for (Priority priority : Priority.values()) {
+            assertEquals(expected.getPriorityCount(priority), actual.getPriorityCount(priority), priority.toString());
+        }
+        for (String category : CATEGORIES) {
+            if (category != null) {
+                assertEquals(expected.getCategoryCount(category), actual.getCategoryCount(category), category);
+            }
+        }
+        
+        assertEquals(expected.getTotal(), manager.getTotalCount());
+        assertEquals(expected.getCompleted(), manager.getCompletedCount());
+        assertEquals(expected.getPending(), manager.getPendingCount());
+        Map<String, Integer> map = manager.getTaskStatistics();
+        assertEquals(expected.getTotal(), (int) map.get("total"));
+        assertEquals(expected.getCompleted(), (int) map.get("completed"));
+        assertEquals(expected.getPending(), (int) map.get("pending"));
+        assertEquals(expected.getPriorityCount(Priority.HIGH), (int) map.get("high"));
+        assertEquals(expected.getPriorityCount(Priority.MEDIUM), (int) map.get("medium"));
+        assertEquals(expected.getPriorityCount(Priority.LOW), (int) map.get("low"));
+    }
+    
+    @Test
+    void countsFollowTogglesUpdatesAndRemoves() throws Exception {
+        String file = new File(dir, "tasks.dat").getPath();
+        TaskManager manager = new TaskManager(file);
+        Random random = new Random(17);
+        List<Integer> ids = new ArrayList<>();
+        for (int i = 0; i < 40; i++) {
+            ids.add(manager.addTask("Task " + i, "", PRIORITIES[i % 4], null, CATEGORIES[i % 4]).getId());
+        }
+        assertCounts(manager);
+        
+        for (int i = 0; i < 400; i++) {
+            int id = ids.get(random.nextInt(ids.size()));
+            switch (random.nextInt(5)) {
+                case 0:
+                    manager.toggleTaskCompletion(id);
+                    break;
+                case 1:
+                    manager.updateTask(id, "Task " + id, "changed", PRIORITIES[random.nextInt(4)], null,
+                                       CATEGORIES[random.nextInt(4)]);
+                    break;
+                case 2:
+                    manager.removeTask(id);
+                    break;
+                case 3:
+                    manager.undo();
+                    break;
+                default:
+                    manager.redo();
+                    break;
+            }
+            assertCounts(manager);
+        }
+        
+        // A completed task moved to another priority and category is uncounted from where it ended up
+        Task task = manager.addTask("Last", "", "High", null, "Work");
+        manager.toggleTaskCompletion(task.getId());
+        manager.updateTask(task.getId(), "Last", "", "Low", null, "Home");
+        assertCounts(manager);
+        manager.removeTask(task.getId());
+        assertCounts(manager);
+        
+        TaskStatistics before = manager.getStatistics(new TaskStatistics());
+        manager.flush().get();
+        manager.close();
+        manager = new TaskManager(file);
+        try {
+            assertCounts(manager);
+            assertEquals(before.getCompleted(), manager.getCompletedCount());
+            manager.clearAllTasks();
+            assertCounts(manager);
+            assertEquals(0, manager.getTotalCount());
+            manager.undo();
+            assertEquals(before.getTotal(), manager.getTotalCount());
+            assertCounts(manager);
+        } finally {
+            manager.close();
+        }
+    }
+}
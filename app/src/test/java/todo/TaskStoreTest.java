@@ -0,0 +1,161 @@
+package todo;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TaskStoreTest {
+    @TempDir
+    File dir;
+    
+    private static Task task(int id) {
+        return new Task(id, "Task " + id, "", "Low", null, null);
+    }
+    
+    private static List<Integer> ids(Iterator<Task> tasks) {
+        List<Integer> ids = new ArrayList<>();
+        while (tasks.hasNext()) {
+            ids.add(tasks.next().getId());
+        }
+        return ids;
+    }
+    
+    // Check every way of reading the store against the ids it should hold
+    private static void assertHolds(TreeMap<Integer, Task> expected, TaskStore store) {
+        List<Integer> ids = new ArrayList<>(expected.keySet());
+        assertEquals(ids.size(), store.size());
+        assertEquals(ids, ids(store.iterator()));
+        assertEquals(ids, ids(store.uncachedIterator()));
+        assertEquals(ids, ids(store.toList().iterator()));
+        for (int i = 0; i < ids.size(); i++) {
+            assertEquals((int) ids.get(i), store.getAt(i).getId());
+            assertEquals(i, store.indexOf(ids.get(i)));
+            assertSame(expected.get(ids.get(i)), store.get(ids.get(i)));
+        }
+    }
+    
+    // Apply the same random adds, removes and re-adds to a store and to a sorted map
+    private static void mutate(TaskStore store, TreeMap<Integer, Task> expected, long seed, int maxId) {
+        Random random = new Random(seed);
+        for (int i = 0; i < 2000; i++) {
+            int id = 1 + random.nextInt(maxId);
+            if (random.nextBoolean()) {
+                Task removed = store.remove(id);
+                assertEquals(expected.remove(id), removed);
+            } else {
+                Task task = task(id);
+                store.add(task);
+                expected.put(id, task);
+            }
+            if (i % 250 == 0) {
+                assertHolds(expected, store);
+            }
+        }
+        assertHolds(expected, store);
+    }
+    
+    @Test
+    void keepsIdOrderThroughRemovesAndLowerIdsComingBack() {
+        TaskStore store = new TaskStore();
+        TreeMap<Integer, Task> expected = new TreeMap<>();
+        for (int id = 1; id <= 100; id++) {
+            store.add(task(id));
+            expected.put(id, store.get(id));
+        }
+        
+        mutate(store, expected, 11, 150);
+    }
+    
+    @Test
+    void replacesATaskWithTheSameId() {
+        TaskStore store = new TaskStore();
+        store.add(task(1));
+        store.add(task(2));
+        Task replacement = new Task(1, "Changed", "", "High", null, null);
+        store.add(replacement);
+        
+        assertEquals(2, store.size());
+        assertSame(replacement, store.getAt(0));
+        assertEquals(Arrays.asList(1, 2), ids(store.iterator()));
+    }
+    
+    @Test
+    void putsARemovedTaskBackInItsOwnSlot() {
+        TaskStore store = new TaskStore();
+        TreeMap<Integer, Task> expected = new TreeMap<>();
+        for (int id = 1; id <= 100; id++) {
+            store.add(task(id));
+            expected.put(id, store.get(id));
+        }
+        Task removed = store.remove(50);
+        store.remove(70);
+        expected.remove(70);
+        assertTrue(store.hasGaps());
+        
+        store.add(removed);
+        // The slot 50 left is filled again, only the one 70 left is still empty
+        assertTrue(store.hasGaps());
+        Task back = task(70);
+        store.add(back);
+        expected.put(70, back);
+        assertFalse(store.hasGaps());
+        assertHolds(expected, store);
+    }
+    
+    @Test
+    void readsPositionsAcrossRemovedSlotsWithoutSqueezingThem() {
+        TaskStore store = new TaskStore();
+        for (int id = 1; id <= 100; id++) {
+            store.add(task(id));
+        }
+        for (int id = 2; id <= 100; id += 2) {
+            store.remove(id);
+        }
+        assertTrue(store.hasGaps());
+        
+        assertEquals(25, store.positionAfter(50));
+        assertEquals(26, store.positionAfter(51));
+        assertEquals(0, store.positionAfter(0));
+        assertEquals(50, store.positionAfter(100));
+        assertEquals(51, store.getAt(25).getId());
+        assertEquals(25, store.indexOf(51));
+        assertTrue(store.hasGaps());
+        assertEquals(-1, store.indexOf(50));
+        try {
+            store.getAt(50);
+            fail("Read past the end");
+        } catch (IndexOutOfBoundsException e) {
+            // Expected
+        }
+    }
+    
+    @Test
+    void storeOverASnapshotKeepsItsOrderThroughChanges() throws IOException {
+        File file = new File(dir, "tasks.dat");
+        List<Task> written = new ArrayList<>();
+        for (int id = 1; id <= 3000; id += 3) {
+            written.add(task(id));
+        }
+        TaskFileFormat.write(file, written, 3001, 0);
+        TaskStore store = new TaskStore(TaskFileFormat.read(file).mapped);
+        
+        assertTrue(store.isMapped());
+        assertEquals("Task 301", store.get(301).getTitle());
+        assertNull(store.get(302));
+        TreeMap<Integer, Task> expected = new TreeMap<>();
+        for (Task task : written) {
+            expected.put(task.getId(), store.get(task.getId()));
+        }
+        mutate(store, expected, 5, 3000);
+        assertTrue(store.isMapped());
+        
+        store.loadAll();
+        assertFalse(store.isMapped());
+        assertHolds(expected, store);
+    }
+}
@@ -0,0 +1,83 @@
+package todo;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.*;
+import java.time.LocalDate;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TaskTest {
+    @Test
+    void nullDueDateMeansNoDueDate() {
+        Task task = new Task(1, "t", null, "High", null, "Work");
+        assertEquals(Task.NO_DUE_DAY, task.getDueDay());
+        assertEquals(Task.NO_DUE_DATE, task.getDueDate());
+        task.setDueDate("2026-03-01");
+        task.setDueDate(null);
+        assertEquals(Task.NO_DUE_DATE, task.getDueDate());
+    }
+    
+    @Test
+    void unknownPrioritiesAreRejectedRatherThanDropped() {
+        Task task = new Task(1, "t", null, "high", null, "Work");
+        assertEquals(Priority.HIGH, task.getPriorityLevel());
+        try {
+            task.setPriority("Urgent");
+            fail("Expected IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+            // Expected
+        }
+        assertEquals(Priority.HIGH, task.getPriorityLevel());
+        task.setPriority("None");
+        assertEquals(Priority.NONE, task.getPriorityLevel());
+        task.setPriority((String) null);
+        assertEquals(Priority.NONE, task.getPriorityLevel());
+    }
+    
+    @Test
+    void isoDatesAreKeptAsDays() {
+        Task task = new Task(1, "t", null, "High", "2026-03-01", "Work");
+        assertEquals(LocalDate.of(2026, 3, 1).toEpochDay(), task.getDueDay());
+        assertEquals("2026-03-01", task.getDueDate());
+        assertNull(task.getDueText());
+    }
+    
+    @Test
+    void otherDueTextIsKeptAsEntered() {
+        Task task = new Task(1, "t", null, "High", "next week", "Work");
+        assertEquals(Task.NO_DUE_DAY, task.getDueDay());
+        assertEquals("next week", task.getDueDate());
+        
+        task = new Task(2, "t", null, "High", "2026-3-1", "Work");
+        assertEquals(LocalDate.of(2026, 3, 1).toEpochDay(), task.getDueDay());
+        assertEquals("2026-3-1", task.getDueDate());
+    }
+    
+    @Test
+    void daysOutsideIntRangeAreNotDates() {
+        assertEquals(Task.NO_DUE_DAY, Task.parseDay("999999999-12-31"));
+        assertEquals(Task.NO_DUE_DAY, Task.parseDay("-5877641-06-23"));
+        assertEquals(Task.NO_DUE_DAY, Task.parseDay("2026-02-30"));
+        Task task = new Task(1, "t", null, "High", "999999999-12-31", "Work");
+        assertEquals("999999999-12-31", task.getDueDate());
+    }
+    
+    @Test
+    void serializedNullDueDateReadsAsNoDueDate() throws Exception {
+        Task task = new Task(1, "t", "d", "Low", null, "Home");
+        task.toggleCompleted();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(task);
+        }
+        Task read;
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+            read = (Task) in.readObject();
+        }
+        assertEquals(Task.NO_DUE_DATE, read.getDueDate());
+        assertTrue(read.isCompleted());
+        assertEquals("Home", read.getCategory());
+        assertEquals("Low", read.getPriority());
+    }
+}
@@ -0,0 +1,146 @@
+package todo;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TaskTransferTest {
+    private static List<Task> awkwardTasks() {
+        Task quoted = new Task(1, "Say \"hi\", then leave", "line one\nline two", "High", "2025-08-01", "Work");
+        quoted.setCompleted(true);
+        return Arrays.asList(
+            quoted,
+            new Task(2, "Ünïcode ✓ tab\there", "back\\slash \u0001", "Low", Task.NO_DUE_DATE, "Home"),
+            new Task(3, "Commas, commas", "", "Medium", "next week", "A, B"),
+            new Task(4, "No priority", "", Priority.NONE, Task.NO_DUE_DATE, "Home"));
+    }
+    
+    private static String export(List<Task> tasks, TaskTransfer.Format format) throws IOException {
+        StringWriter out = new StringWriter();
+        TaskTransfer.write(out, tasks.iterator(), format);
+        return out.toString();
+    }
+    
+    private static TaskTransfer.ImportResult read(String text, TaskTransfer.Format format) throws IOException {
+        return TaskTransfer.read(new StringReader(text), format);
+    }
+    
+    @Test
+    void roundTripsAwkwardTextThroughBothFormats() throws IOException {
+        for (TaskTransfer.Format format : TaskTransfer.Format.values()) {
+            List<Task> written = awkwardTasks();
+            TaskTransfer.ImportResult result = read(export(written, format), format);
+            
+            assertEquals(0, result.getRejected(), format.name());
+            assertEquals(written.size(), result.getImported(), format.name());
+            for (int i = 0; i < written.size(); i++) {
+                Task expected = written.get(i);
+                Task actual = result.getTasks().get(i);
+                assertEquals(expected.getTitle(), actual.getTitle(), format.name());
+                assertEquals(expected.getDescription(), actual.getDescription(), format.name());
+                assertEquals(expected.getPriority(), actual.getPriority(), format.name());
+                assertEquals(expected.getDueDate(), actual.getDueDate(), format.name());
+                assertEquals(expected.getCategory(), actual.getCategory(), format.name());
+                assertEquals(expected.isCompleted(), actual.isCompleted(), format.name());
+            }
+        }
+    }
+    
+    @Test
+    void readsCsvColumnsInAnyOrderAndFillsInDefaults() throws IOException {
+        TaskTransfer.ImportResult result = read("Category,notes,TITLE,completed\n"
+                                                + "Work,ignored,Write report,yes\n"
+                                                + ",,Water plants,\n", TaskTransfer.Format.CSV);
+        
+        assertEquals(2, result.getImported());
+        Task report = result.getTasks().get(0);
+        assertEquals("Write report", report.getTitle());
+        assertEquals("Work", report.getCategory());
+        assertTrue(report.isCompleted());
+        Task plants = result.getTasks().get(1);
+        assertEquals("General", plants.getCategory());
+        assertEquals("Medium", plants.getPriority());
+        assertEquals(Task.NO_DUE_DATE, plants.getDueDate());
+        assertEquals("", plants.getDescription());
+        
+        try {
+            read("name,priority\nx,High\n", TaskTransfer.Format.CSV);
+            fail("Read a CSV file without a title column");
+        } catch (IOException e) {
+            assertTrue(e.getMessage().contains("title"));
+        }
+    }
+    
+    @Test
+    void skipsBadRecordsAndNamesTheLineEachStartedOn() throws IOException {
+        TaskTransfer.ImportResult csv = read("title,description,priority,completed\n"
+                                             + "Fine,,Low,\n"
+                                             + "Spans,\"two\nlines\",Urgent,\n"
+                                             + ",no title,,\n"
+                                             + "\n"
+                                             + "Done,,,maybe\n"
+                                             + "Also fine,,High,no\n", TaskTransfer.Format.CSV);
+        assertEquals(2, csv.getImported());
+        assertEquals(3, csv.getRejected());
+        assertEquals(Arrays.asList("Line 3: unknown priority 'Urgent'", "Line 5: title is required",
+                                   "Line 7: completed must be true or false, not 'maybe'"), csv.getErrors());
+        
+        TaskTransfer.ImportResult json = read("{\"title\":\"Fine\"}\n{\"title\":\n{\"title\":\"Also fine\",\"completed\":true}\n",
+                                              TaskTransfer.Format.JSON_LINES);
+        assertEquals(2, json.getImported());
+        assertEquals(1, json.getRejected());
+        assertTrue(json.getErrors().get(0).startsWith("Line 2: "), json.getErrors().get(0));
+        assertTrue(json.getTasks().get(1).isCompleted());
+    }
+    
+    @Test
+    void keepsTheOrderOfTheFileAcrossParallelChunks() throws IOException {
+        List<Task> written = new ArrayList<>();
+        for (int id = 1; id <= 10000; id++) {
+            written.add(new Task(id, "Task " + id, "", "Low", Task.NO_DUE_DATE, "Bulk"));
+        }
+        for (TaskTransfer.Format format : TaskTransfer.Format.values()) {
+            List<Task> read = read(export(written, format), format).getTasks();
+            assertEquals(written.size(), read.size());
+            for (int i = 0; i < read.size(); i++) {
+                assertEquals(written.get(i).getTitle(), read.get(i).getTitle());
+            }
+        }
+    }
+    
+    @Test
+    void handsOnEachChunkInOrderAsItIsRead() throws IOException {
+        List<Task> written = new ArrayList<>();
+        for (int id = 1; id <= 10000; id++) {
+            // Every tenth description is quoted over several lines
+            written.add(new Task(id, "Task " + id, id % 10 == 0 ? "first, \"quoted\"\nsecond\nthird" : "",
+                                 "Low", Task.NO_DUE_DATE, "Bulk"));
+        }
+        final List<Task> read = new ArrayList<>();
+        final List<Integer> chunkSizes = new ArrayList<>();
+        TaskTransfer.ImportResult result = TaskTransfer.read(
+            new StringReader(export(written, TaskTransfer.Format.CSV)), TaskTransfer.Format.CSV,
+            new Consumer<List<Task>>() {
+                public void accept(List<Task> chunk) {
+                    chunkSizes.add(chunk.size());
+                    read.addAll(chunk);
+                }
+            });
+        
+        assertEquals(10000, result.getImported());
+        assertTrue(result.getTasks().isEmpty());
+        assertEquals(Arrays.asList(4096, 4096, 1808), chunkSizes);
+        for (int i = 0; i < written.size(); i++) {
+            assertEquals(written.get(i).getTitle(), read.get(i).getTitle());
+            assertEquals(written.get(i).getDescription(), read.get(i).getDescription());
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package todo.bench;
+
+import org.openjdk.jmh.annotations.*;
+import todo.ConcurrentTaskManager;
+import todo.Task;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks a ConcurrentTaskManager shared by many reader threads and one writer
+ * Run with -tg to change the split, e.g. -tg 15,1 on a 16-core machine
+ */
+@State(Scope.Group)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ConcurrentTaskManagerBenchmark {
+    @Param({"10000", "1000000"})
+    public int size;
+    
+    private File dir;
+    private ConcurrentTaskManager manager;
+    
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        dir = TaskFixtures.tempDir();
+        manager = TaskFixtures.concurrentManager(dir, size);
+    }
+    
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        manager.close();
+        TaskFixtures.delete(dir);
+    }
+    
+    @Benchmark
+    @Group("readHeavy")
+    @GroupThreads(7)
+    public Task getTaskById() {
+        return manager.getTaskById(ThreadLocalRandom.current().nextInt(size) + 1);
+    }
+    
+    @Benchmark
+    @Group("readHeavy")
+    @GroupThreads(1)
+    public boolean toggleTaskCompletion() {
+        return manager.toggleTaskCompletion(ThreadLocalRandom.current().nextInt(size) + 1);
+    }
+    
+    @Benchmark
+    @Group("searchHeavy")
+    @GroupThreads(7)
+    public ArrayList<Task> searchTasks() {
+        return manager.searchTasks("invoice number 4");
+    }
+    
+    @Benchmark
+    @Group("searchHeavy")
+    @GroupThreads(1)
+    public boolean updateTask() {
+        int id = ThreadLocalRandom.current().nextInt(size) + 1;
+        return manager.updateTask(id, "Task " + id + " updated", "Details about review number " + id,
+                                  "High", "No due date", "Category1");
+    }
+}
@@ -0,0 +1,104 @@
+package todo.bench;
+
+import org.openjdk.jmh.annotations.*;
+import todo.Task;
+import todo.TaskFileFormat;
+import todo.TaskManager;
+import todo.TaskTransfer;
+
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks writing a snapshot and opening a TaskManager over one
+ * openTaskManager only maps the file; loadAllTasks also decodes every task
+ * importTasks reads a CSV export into an empty TaskManager and waits until it is on disk
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 10)
+@Fork(1)
+public class PersistenceBenchmark {
+    @Param({"1000", "10000", "100000", "1000000"})
+    public int size;
+    
+    private File dir;
+    private File file;
+    private File csv;
+    private ArrayList<Task> tasks;
+    
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        dir = TaskFixtures.tempDir();
+        file = new File(dir, "tasks.dat");
+        tasks = TaskFixtures.tasks(size);
+        TaskFileFormat.write(file, tasks, size + 1, 0);
+        csv = new File(dir, "tasks.csv");
+        try (Writer out = new FileWriter(csv)) {
+            TaskTransfer.write(out, tasks.iterator(), TaskTransfer.Format.CSV);
+        }
+    }
+    
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        TaskFixtures.delete(dir);
+    }
+    
+    @Benchmark
+    public long saveTasks() throws IOException {
+        File target = new File(dir, "saved.dat");
+        TaskFileFormat.write(target, tasks, size + 1, 0);
+        return target.length();
+    }
+    
+    @Benchmark
+    public int openTaskManager() {
+        TaskManager manager = new TaskManager(file.getPath());
+        int count = manager.getTotalCount();
+        manager.close();
+        return count;
+    }
+    
+    @Benchmark
+    public int loadAllTasks() {
+        TaskManager manager = new TaskManager(file.getPath());
+        int count = manager.getAllTasks().size();
+        manager.close();
+        return count;
+    }
+    
+    @Benchmark
+    public int importTasks() throws IOException {
+        File target = new File(dir, "imported.dat");
+        TaskManager manager = new TaskManager(target.getPath());
+        int count;
+        try (FileReader in = new FileReader(csv)) {
+            count = manager.importTasks(in, TaskTransfer.Format.CSV).getImported();
+        }
+        manager.close();
+        for (File f : dir.listFiles()) {
+            if (f.getName().startsWith("imported.dat")) {
+                f.delete();
+            }
+        }
+        return count;
+    }
+    
+    @Benchmark
+    public long exportTasks() throws IOException {
+        TaskManager manager = new TaskManager(file.getPath());
+        File target = new File(dir, "exported.jsonl");
+        try (Writer out = new FileWriter(target)) {
+            manager.exportTasks(out, TaskTransfer.Format.JSON_LINES);
+        }
+        manager.close();
+        return target.length();
+    }
+}
@@ -0,0 +1,42 @@
+package todo.bench;
+
+import org.openjdk.jmh.annotations.*;
+import todo.Task;
+
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks rendering a task for the list, as done for every visible row
+ * getDisplayText mostly hits the cached text; renderDisplayText changes the
+ * task first so the text is built every time
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TaskBenchmark {
+    private ArrayList<Task> tasks;
+    private int next;
+    
+    @Setup(Level.Trial)
+    public void setUp() {
+        tasks = TaskFixtures.tasks(1024);
+    }
+    
+    @Benchmark
+    public String getDisplayText() {
+        next = (next + 1) & 1023;
+        return tasks.get(next).getDisplayText();
+    }
+    
+    @Benchmark
+    public String renderDisplayText() {
+        next = (next + 1) & 1023;
+        Task task = tasks.get(next);
+        task.toggleCompleted();
+        return task.getDisplayText();
+    }
+}
@@ -0,0 +1,81 @@
+package todo.bench;
+
+import org.openjdk.jmh.annotations.*;
+import todo.CategoryRegistry;
+import todo.Task;
+import todo.TaskColumns;
+import todo.TaskFilter;
+import todo.TaskStatistics;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks full scans over TaskColumns against the same scans over Task objects
+ * The object list is shuffled so, as in a long-running store, neighbouring
+ * tasks are not neighbours on the heap
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TaskColumnsBenchmark {
+    @Param({"10000", "1000000"})
+    public int size;
+    
+    private ArrayList<Task> objects;
+    private TaskColumns columns;
+    private TaskStatistics statistics;
+    private TaskFilter filter;
+    
+    @Setup(Level.Trial)
+    public void setUp() {
+        ArrayList<Task> tasks = TaskFixtures.tasks(size);
+        columns = TaskColumns.of(tasks);
+        objects = new ArrayList<>(tasks);
+        Collections.shuffle(objects, new Random(42));
+        statistics = new TaskStatistics();
+        filter = new TaskFilter(false, "category3", null);
+    }
+    
+    // The counts TaskStatistics holds, taken task by task
+    @Benchmark
+    public int statisticsFromObjects() {
+        int completed = 0;
+        int[] byPriority = new int[4];
+        int[] byCategory = new int[64];
+        for (Task task : objects) {
+            if (task.isCompleted()) {
+                completed++;
+            }
+            byPriority[task.getPriorityLevel().ordinal()]++;
+            byCategory[CategoryRegistry.keyOf(task.getCategoryId()) & 63]++;
+        }
+        return completed + byPriority[0] + byCategory[1];
+    }
+    
+    @Benchmark
+    public TaskStatistics statisticsFromColumns() {
+        return columns.statistics(statistics);
+    }
+    
+    @Benchmark
+    public int filterObjects() {
+        int matches = 0;
+        for (Task task : objects) {
+            if (filter.matches(task)) {
+                matches++;
+            }
+        }
+        return matches;
+    }
+    
+    @Benchmark
+    public int filterColumns() {
+        return columns.count(filter);
+    }
+}
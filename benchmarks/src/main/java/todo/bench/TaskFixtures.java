@@ -0,0 +1,67 @@
+package todo.bench;
+
+import todo.ConcurrentTaskManager;
+import todo.Task;
+import todo.TaskFileFormat;
+import todo.TaskManager;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+
+/**
+ * Builds task data sets for the benchmarks
+ */
+final class TaskFixtures {
+    static final String[] PRIORITIES = {"High", "Medium", "Low"};
+    static final String[] WORDS = {"review", "report", "milk", "deploy", "invoice", "meeting", "garden", "refactor"};
+    
+    private TaskFixtures() {
+    }
+    
+    // A deterministic task list of the given size
+    static ArrayList<Task> tasks(int size) {
+        ArrayList<Task> tasks = new ArrayList<>(size);
+        for (int i = 1; i <= size; i++) {
+            Task task = new Task(i,
+                    "Task " + i + " " + WORDS[i % WORDS.length],
+                    "Details about " + WORDS[(i * 7) % WORDS.length] + " number " + i,
+                    PRIORITIES[i % PRIORITIES.length],
+                    i % 4 == 0 ? "No due date" : "2025-" + (1 + i % 12) + "-" + (1 + i % 28),
+                    "Category" + (i % 10));
+            task.setCompleted(i % 3 == 0);
+            tasks.add(task);
+        }
+        return tasks;
+    }
+    
+    // A scratch directory for a benchmark's task files
+    static File tempDir() throws IOException {
+        return Files.createTempDirectory("todo-bench").toFile();
+    }
+    
+    // Write a snapshot of the given size and open a TaskManager over it
+    static TaskManager manager(File dir, int size) throws IOException {
+        File file = new File(dir, "tasks.dat");
+        TaskFileFormat.write(file, tasks(size), size + 1, 0);
+        return new TaskManager(file.getPath());
+    }
+    
+    // Write a snapshot of the given size and open a ConcurrentTaskManager over it
+    static ConcurrentTaskManager concurrentManager(File dir, int size) throws IOException {
+        File file = new File(dir, "tasks.dat");
+        TaskFileFormat.write(file, tasks(size), size + 1, 0);
+        return new ConcurrentTaskManager(file.getPath());
+    }
+    
+    static void delete(File dir) {
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        dir.delete();
+    }
+}
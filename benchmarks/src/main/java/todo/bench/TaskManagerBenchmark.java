@@ -0,0 +1,92 @@
+package todo.bench;
+
+import org.openjdk.jmh.annotations.*;
+import todo.Task;
+import todo.TaskFilter;
+import todo.TaskManager;
+import todo.TaskQuery;
+import todo.TaskSort;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks the TaskManager operations the GUI and reports call most
+ * The store is opened over a snapshot of the given size; the indexes are
+ * warmed up in setup so queries are measured in steady state
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TaskManagerBenchmark {
+    @Param({"1000", "10000", "100000", "1000000"})
+    public int size;
+    
+    private File dir;
+    private TaskManager manager;
+    private int nextToggle;
+    private int lastAdded;
+    private final TaskQuery<Task> topDue = TaskQuery.where(new TaskFilter(false, "category7", null))
+            .sortedBy(TaskSort.DUE_DATE).limit(10);
+    
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        dir = TaskFixtures.tempDir();
+        manager = TaskFixtures.manager(dir, size);
+        manager.getTasksByCategory("Category1");
+        lastAdded = manager.addTask("Benchmark task", "Added in setup", "Medium", "No due date", "Bench").getId();
+    }
+    
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        manager.close();
+        TaskFixtures.delete(dir);
+    }
+    
+    @Benchmark
+    public Task addTask() {
+        return manager.addTask("New task", "Added by the benchmark", "High", "2025-08-01", "Bench");
+    }
+    
+    // Remove the task added last time and add a fresh one, so the store keeps its size
+    @Benchmark
+    public boolean removeTask() {
+        boolean removed = manager.removeTask(lastAdded);
+        lastAdded = manager.addTask("Benchmark task", "Added again", "Medium", "No due date", "Bench").getId();
+        return removed;
+    }
+    
+    @Benchmark
+    public boolean toggleTaskCompletion() {
+        nextToggle = nextToggle % size + 1;
+        return manager.toggleTaskCompletion(nextToggle);
+    }
+    
+    @Benchmark
+    public ArrayList<Task> searchTasks() {
+        return manager.searchTasks("invoice number 4");
+    }
+    
+    @Benchmark
+    public ArrayList<Task> getTasksByCategory() {
+        return manager.getTasksByCategory("category7");
+    }
+    
+    // Ten soonest-due pending tasks of a category, scanned across the common pool at the larger sizes
+    @Benchmark
+    public List<Task> query() {
+        return manager.query(topDue);
+    }
+    
+    @Benchmark
+    public Map<String, Integer> getTaskStatistics() {
+        return manager.getTaskStatistics();
+    }
+}